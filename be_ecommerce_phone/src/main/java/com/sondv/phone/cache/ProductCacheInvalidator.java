@@ -0,0 +1,98 @@
+package com.sondv.phone.cache;
+
+import com.sondv.phone.config.CacheConfig;
+import com.sondv.phone.event.ProductChangedEvent;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.nio.charset.StandardCharsets;
+import java.util.stream.Collectors;
+
+// Xóa cache sản phẩm sau khi ghi và báo cho các node khác qua Redis pub/sub để bỏ L1 cũ
+@Component
+@RequiredArgsConstructor
+public class ProductCacheInvalidator implements MessageListener {
+
+    private static final Logger logger = LoggerFactory.getLogger(ProductCacheInvalidator.class);
+    private static final String CHANNEL = "cache:product:invalidate";
+    private static final String ALL = "*";
+    // Tiền tố thông điệp cho thay đổi chỉ về tồn kho: node nhận không xóa danh sách
+    private static final String STOCK_PREFIX = "stock:";
+
+    private final TwoLevelCacheManager cacheManager;
+    private final RedisTemplate<String, String> redisTemplate;
+    private final RedisMessageListenerContainer listenerContainer;
+
+    @PostConstruct
+    public void subscribe() {
+        listenerContainer.addMessageListener(this, new ChannelTopic(CHANNEL));
+    }
+
+    // Chạy sau khi transaction commit để không cache lại dữ liệu chưa commit
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onProductChanged(ProductChangedEvent event) {
+        TwoLevelCache products = cacheManager.getCache(CacheConfig.PRODUCT);
+        TwoLevelCache lists = cacheManager.getCache(CacheConfig.PRODUCT_LISTS);
+
+        if (event.isAll()) {
+            products.clear();
+            lists.clear();
+            publish(ALL);
+            return;
+        }
+        event.productIds().forEach(products::evict);
+        String ids = event.productIds().stream().map(String::valueOf).collect(Collectors.joining(","));
+        // Đặt/hủy đơn phát STOCK liên tục: không xóa danh sách mỗi lần, tồn kho trên trang danh sách
+        // chỉ cũ tối đa bằng TTL của cache (trang chi tiết luôn đúng vì đã xóa ở trên)
+        if (event.type() == ProductChangedEvent.ChangeType.STOCK) {
+            publish(STOCK_PREFIX + ids);
+            return;
+        }
+        // Các danh sách nổi bật/mới/bán chạy có thể chứa sản phẩm vừa đổi nên xóa hết
+        lists.clear();
+        publish(ids);
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        String body = new String(message.getBody(), StandardCharsets.UTF_8);
+        TwoLevelCache products = cacheManager.getCache(CacheConfig.PRODUCT);
+        TwoLevelCache lists = cacheManager.getCache(CacheConfig.PRODUCT_LISTS);
+        boolean stockOnly = body.startsWith(STOCK_PREFIX);
+        if (stockOnly) {
+            body = body.substring(STOCK_PREFIX.length());
+        }
+        if (ALL.equals(body)) {
+            products.clearLocal();
+        } else {
+            try {
+                for (String id : body.split(",")) {
+                    products.evictLocal(Long.valueOf(id));
+                }
+            } catch (NumberFormatException e) {
+                logger.warn("Thông điệp xóa cache không hợp lệ: {}", body);
+                products.clearLocal();
+            }
+        }
+        if (!stockOnly) {
+            lists.clearLocal();
+        }
+    }
+
+    private void publish(String body) {
+        try {
+            redisTemplate.convertAndSend(CHANNEL, body);
+        } catch (Exception e) {
+            logger.warn("Không gửi được thông báo xóa cache qua Redis: {}", e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package com.sondv.phone.cache;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.cache.Cache;
+import org.springframework.cache.support.AbstractValueAdaptingCache;
+
+import java.util.concurrent.Callable;
+
+// Cache 2 tầng: L1 Caffeine (trong từng node) phía trước L2 Redis (dùng chung giữa các node)
+public class TwoLevelCache extends AbstractValueAdaptingCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(TwoLevelCache.class);
+
+    private final String name;
+    private final com.github.benmanes.caffeine.cache.Cache<Object, Object> local;
+    private final Cache remote;
+
+    public TwoLevelCache(String name, com.github.benmanes.caffeine.cache.Cache<Object, Object> local, Cache remote) {
+        super(false);
+        this.name = name;
+        this.local = local;
+        this.remote = remote;
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public Object getNativeCache() {
+        return local;
+    }
+
+    @Override
+    protected Object lookup(Object key) {
+        Object value = local.getIfPresent(key);
+        if (value != null) {
+            return value;
+        }
+        value = remoteGet(key);
+        if (value != null) {
+            local.put(key, value);
+        }
+        return value;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T get(Object key, Callable<T> valueLoader) {
+        return (T) local.get(key, k -> {
+            Object value = remoteGet(k);
+            if (value != null) {
+                return value;
+            }
+            try {
+                value = valueLoader.call();
+            } catch (Exception e) {
+                throw new ValueRetrievalException(k, valueLoader, e);
+            }
+            if (value != null) {
+                remotePut(k, value);
+            }
+            return value;
+        });
+    }
+
+    @Override
+    public void put(Object key, Object value) {
+        if (value == null) {
+            return;
+        }
+        local.put(key, value);
+        remotePut(key, value);
+    }
+
+    @Override
+    public void evict(Object key) {
+        try {
+            remote.evict(key);
+        } catch (Exception e) {
+            logger.warn("Không thể xóa key {} khỏi Redis cache {}: {}", key, name, e.getMessage());
+        }
+        local.invalidate(key);
+    }
+
+    @Override
+    public void clear() {
+        try {
+            remote.clear();
+        } catch (Exception e) {
+            logger.warn("Không thể xóa Redis cache {}: {}", name, e.getMessage());
+        }
+        local.invalidateAll();
+    }
+
+    // Chỉ xóa L1 (dùng khi node khác báo thay đổi qua Redis pub/sub)
+    public void evictLocal(Object key) {
+        local.invalidate(key);
+    }
+
+    public void clearLocal() {
+        local.invalidateAll();
+    }
+
+    // Redis lỗi thì chỉ dùng L1, không làm hỏng request
+    private Object remoteGet(Object key) {
+        try {
+            ValueWrapper wrapper = remote.get(key);
+            return wrapper != null ? wrapper.get() : null;
+        } catch (Exception e) {
+            logger.warn("Không đọc được Redis cache {}: {}", name, e.getMessage());
+            return null;
+        }
+    }
+
+    private void remotePut(Object key, Object value) {
+        try {
+            remote.put(key, value);
+        } catch (Exception e) {
+            logger.warn("Không ghi được Redis cache {}: {}", name, e.getMessage());
+        }
+    }
+}
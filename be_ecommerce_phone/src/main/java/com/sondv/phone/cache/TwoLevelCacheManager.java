@@ -0,0 +1,39 @@
+package com.sondv.phone.cache;
+
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.data.redis.cache.RedisCacheManager;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+public class TwoLevelCacheManager implements CacheManager {
+
+    private final RedisCacheManager redisCacheManager;
+    private final Caffeine<Object, Object> localSpec;
+    private final ConcurrentMap<String, TwoLevelCache> caches = new ConcurrentHashMap<>();
+
+    public TwoLevelCacheManager(RedisCacheManager redisCacheManager, Caffeine<Object, Object> localSpec) {
+        this.redisCacheManager = redisCacheManager;
+        this.localSpec = localSpec;
+    }
+
+    @Override
+    public TwoLevelCache getCache(String name) {
+        return caches.computeIfAbsent(name, n -> {
+            Cache remote = redisCacheManager.getCache(n);
+            if (remote == null) {
+                throw new IllegalArgumentException("Chưa cấu hình Redis cache: " + n);
+            }
+            return new TwoLevelCache(n, localSpec.build(), remote);
+        });
+    }
+
+    @Override
+    public Collection<String> getCacheNames() {
+        return Collections.unmodifiableSet(caches.keySet());
+    }
+}
@@ -0,0 +1,297 @@
+package com.sondv.phone.chat;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sondv.phone.event.UserChatStateChangedEvent;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.connection.ReturnType;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.CloseStatus;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.UUID;
+
+// Chuyển tin chat giữa các node qua Redis để chạy nhiều node chat sau load balancer (không cần sticky session).
+// - Presence: key chat:presence:{email} = id node đang giữ kết nối của user, có TTL và được gia hạn định kỳ.
+// - Mỗi node nghe kênh riêng chat:node:{nodeId} (tin gửi cho một user, cập nhật vai trò/khóa chat, đóng session trùng)
+//   và kênh chung chat:staff (tin gửi cho mọi admin/staff), chat:history (cập nhật vòng đệm lịch sử chat của các node).
+// Người nhận ở node hiện tại thì gửi thẳng, không qua Redis; Redis lỗi thì vẫn gửi được trong node.
+@Component
+public class ChatClusterRelay implements MessageListener {
+
+    private static final Logger logger = LoggerFactory.getLogger(ChatClusterRelay.class);
+    private static final String PRESENCE_PREFIX = "chat:presence:";
+    private static final String NODE_CHANNEL_PREFIX = "chat:node:";
+    private static final String STAFF_CHANNEL = "chat:staff";
+    private static final String HISTORY_CHANNEL = "chat:history";
+    // Chỉ xóa presence nếu vẫn trỏ về node này (user có thể đã kết nối lại ở node khác)
+    private static final DefaultRedisScript<Long> RELEASE_PRESENCE = new DefaultRedisScript<>(
+            "if redis.call('get', KEYS[1]) == ARGV[1] then return redis.call('del', KEYS[1]) else return 0 end", Long.class);
+    // Gia hạn presence khi key vẫn thuộc node này, hoặc đặt lại nếu key đã hết hạn (Redis gián đoạn lâu hơn TTL);
+    // key đang thuộc node khác (user vừa kết nối lại ở đó) thì giữ nguyên
+    private static final byte[] REFRESH_PRESENCE = (
+            "local owner = redis.call('get', KEYS[1]) " +
+            "if owner == ARGV[1] then return redis.call('pexpire', KEYS[1], ARGV[2]) end " +
+            "if not owner then redis.call('set', KEYS[1], ARGV[1], 'PX', ARGV[2]) return 1 end " +
+            "return 0").getBytes(StandardCharsets.UTF_8);
+
+    public enum Kind {
+        DELIVER, // Gửi payload cho user `to`
+        STAFF,   // Gửi payload cho mọi admin/staff
+        STATE,   // Cập nhật vai trò / khóa chat của user `to`
+        KICK,    // User `to` đã kết nối ở node khác: đóng session cũ
+        HISTORY  // Cuộc hội thoại `to` có tin mới (payload) hoặc đổi trạng thái đã đọc (payload null)
+    }
+
+    public record RelayMessage(String origin, Kind kind, String to, String payload, UserChatStateChangedEvent state) {
+    }
+
+    private final ChatSessionRegistry sessionRegistry;
+    private final ConversationHistoryCache historyCache;
+    private final RedisTemplate<String, String> redisTemplate;
+    private final RedisMessageListenerContainer listenerContainer;
+    private final ObjectMapper objectMapper;
+    private final String nodeId;
+    private final Duration presenceTtl;
+
+    public ChatClusterRelay(ChatSessionRegistry sessionRegistry,
+                            ConversationHistoryCache historyCache,
+                            RedisTemplate<String, String> redisTemplate,
+                            RedisMessageListenerContainer listenerContainer,
+                            ObjectMapper objectMapper,
+                            @Value("${chat.cluster.node-id:}") String nodeId,
+                            @Value("${chat.cluster.presence-ttl:90s}") Duration presenceTtl) {
+        this.sessionRegistry = sessionRegistry;
+        this.historyCache = historyCache;
+        this.redisTemplate = redisTemplate;
+        this.listenerContainer = listenerContainer;
+        this.objectMapper = objectMapper;
+        this.nodeId = nodeId.isBlank() ? UUID.randomUUID().toString() : nodeId;
+        this.presenceTtl = presenceTtl;
+    }
+
+    @PostConstruct
+    public void subscribe() {
+        listenerContainer.addMessageListener(this, List.of(new ChannelTopic(NODE_CHANNEL_PREFIX + nodeId), new ChannelTopic(STAFF_CHANNEL),
+                new ChannelTopic(HISTORY_CHANNEL)));
+        logger.info("Chat node {} đã đăng ký kênh relay", nodeId);
+    }
+
+    // Ghi presence của user về node này; nếu user còn session ở node khác thì yêu cầu node đó đóng lại
+    public void online(String email) {
+        try {
+            String previousNode = redisTemplate.opsForValue().getAndSet(presenceKey(email), nodeId);
+            redisTemplate.expire(presenceKey(email), presenceTtl);
+            if (previousNode != null && !previousNode.equals(nodeId)) {
+                publish(NODE_CHANNEL_PREFIX + previousNode, new RelayMessage(nodeId, Kind.KICK, email, null, null));
+            }
+        } catch (Exception e) {
+            logger.warn("Không ghi được presence chat của {}: {}", email, e.getMessage());
+        }
+    }
+
+    public void offline(String email) {
+        try {
+            redisTemplate.execute(RELEASE_PRESENCE, List.of(presenceKey(email)), nodeId);
+        } catch (Exception e) {
+            logger.warn("Không xóa được presence chat của {}: {}", email, e.getMessage());
+        }
+    }
+
+    // Gửi cho một user dù user kết nối ở node nào; false nếu user không online ở đâu cả
+    public boolean sendToUser(String email, String payload) {
+        ChatSession local = sessionRegistry.get(email);
+        if (local != null && local.isOpen()) {
+            return local.send(payload);
+        }
+        String node = findNode(email);
+        if (node == null || node.equals(nodeId)) {
+            return false;
+        }
+        return publish(NODE_CHANNEL_PREFIX + node, new RelayMessage(nodeId, Kind.DELIVER, email, payload, null));
+    }
+
+    // Gửi cho admin/staff ở node này và mọi node khác
+    public void broadcastToStaff(String payload) {
+        deliverToLocalStaff(payload);
+        publish(STAFF_CHANNEL, new RelayMessage(nodeId, Kind.STAFF, null, payload, null));
+    }
+
+    // Tin mới của một cuộc hội thoại: thêm vào vòng đệm lịch sử của node này và các node khác
+    public void historyAppended(com.sondv.phone.model.Message message) {
+        historyCache.append(message);
+        try {
+            publish(HISTORY_CHANNEL, new RelayMessage(nodeId, Kind.HISTORY, message.getConversationId().toString(),
+                    objectMapper.writeValueAsString(message), null));
+        } catch (IOException e) {
+            logger.warn("Không tuần tự hóa được tin {}: {}", message.getId(), e.getMessage());
+        }
+    }
+
+    // Trạng thái đã đọc thay đổi: node này đã tự cập nhật vòng đệm, các node khác bỏ vòng đệm để nạp lại từ DB
+    public void historyChanged(Long conversationId) {
+        publish(HISTORY_CHANNEL, new RelayMessage(nodeId, Kind.HISTORY, conversationId.toString(), null, null));
+    }
+
+    // Vai trò hoặc thời hạn khóa chat thay đổi: áp dụng cho session ở node này hoặc chuyển tới node đang giữ session
+    @EventListener
+    public void onUserChatStateChanged(UserChatStateChangedEvent event) {
+        if (sessionRegistry.get(event.email()) != null) {
+            applyState(event);
+            return;
+        }
+        String node = findNode(event.email());
+        if (node != null && !node.equals(nodeId)) {
+            publish(NODE_CHANNEL_PREFIX + node, new RelayMessage(nodeId, Kind.STATE, event.email(), null, event));
+        }
+    }
+
+    // Gia hạn presence cho mọi session ở node này trong một pipeline, so khớp node trước khi gia hạn (REFRESH_PRESENCE)
+    @Scheduled(fixedDelayString = "${chat.cluster.heartbeat-ms:30000}")
+    public void refreshPresence() {
+        if (sessionRegistry.size() == 0) {
+            return;
+        }
+        byte[] node = nodeId.getBytes(StandardCharsets.UTF_8);
+        byte[] ttl = String.valueOf(presenceTtl.toMillis()).getBytes(StandardCharsets.UTF_8);
+        try {
+            redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                for (ChatSession chatSession : sessionRegistry.all()) {
+                    connection.scriptingCommands().eval(REFRESH_PRESENCE, ReturnType.INTEGER, 1,
+                            presenceKey(chatSession.email()).getBytes(StandardCharsets.UTF_8), node, ttl);
+                }
+                return null;
+            });
+        } catch (Exception e) {
+            logger.warn("Không gia hạn được presence chat: {}", e.getMessage());
+        }
+    }
+
+    @PreDestroy
+    public void releaseAll() {
+        for (ChatSession chatSession : sessionRegistry.all()) {
+            offline(chatSession.email());
+        }
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        RelayMessage relay;
+        try {
+            relay = objectMapper.readValue(message.getBody(), RelayMessage.class);
+        } catch (IOException e) {
+            logger.warn("Thông điệp relay chat không hợp lệ: {}", e.getMessage());
+            return;
+        }
+        if (nodeId.equals(relay.origin())) {
+            return;
+        }
+        switch (relay.kind()) {
+            case DELIVER -> {
+                ChatSession local = sessionRegistry.get(relay.to());
+                if (local != null && local.isOpen()) {
+                    local.send(relay.payload());
+                }
+            }
+            case STAFF -> deliverToLocalStaff(relay.payload());
+            case STATE -> {
+                if (relay.state() != null) {
+                    applyState(relay.state());
+                }
+            }
+            case KICK -> kick(relay.to());
+            case HISTORY -> applyHistory(relay);
+        }
+    }
+
+    private void deliverToLocalStaff(String payload) {
+        for (ChatSession staffSession : sessionRegistry.staffSessions()) {
+            if (staffSession.isOpen()) {
+                staffSession.send(payload);
+            }
+        }
+    }
+
+    private void applyHistory(RelayMessage relay) {
+        if (relay.payload() == null) {
+            historyCache.invalidate(Long.valueOf(relay.to()));
+            return;
+        }
+        try {
+            historyCache.append(objectMapper.readValue(relay.payload(), com.sondv.phone.model.Message.class));
+        } catch (IOException e) {
+            logger.warn("Tin lịch sử chat relay không hợp lệ: {}", e.getMessage());
+        }
+    }
+
+    private void applyState(UserChatStateChangedEvent event) {
+        ChatSession chatSession = sessionRegistry.get(event.email());
+        if (chatSession == null) {
+            return;
+        }
+        boolean wasStaff = chatSession.staff();
+        chatSession.principal().update(event.roles(), event.chatBanUntil());
+        if (wasStaff != chatSession.staff()) {
+            sessionRegistry.reindex(event.email());
+        }
+        if (chatSession.isOpen()) {
+            boolean banned = chatSession.principal().isBanned(LocalDateTime.now());
+            chatSession.send("{\"type\":\"chat-state\",\"banned\":" + banned
+                    + (banned ? ",\"banUntil\":\"" + event.chatBanUntil() + "\"" : "")
+                    + ",\"staff\":" + chatSession.staff() + "}");
+        }
+    }
+
+    private void kick(String email) {
+        ChatSession chatSession = sessionRegistry.get(email);
+        if (chatSession == null) {
+            return;
+        }
+        sessionRegistry.unregister(email, chatSession);
+        chatSession.outbound().close();
+        try {
+            chatSession.session().close(CloseStatus.POLICY_VIOLATION.withReason("Connected from another node"));
+        } catch (IOException ignored) {
+            // Session đã đóng
+        }
+    }
+
+    private String findNode(String email) {
+        try {
+            return redisTemplate.opsForValue().get(presenceKey(email));
+        } catch (Exception e) {
+            logger.warn("Không đọc được presence chat của {}: {}", email, e.getMessage());
+            return null;
+        }
+    }
+
+    private boolean publish(String channel, RelayMessage relay) {
+        try {
+            redisTemplate.convertAndSend(channel, objectMapper.writeValueAsString(relay));
+            return true;
+        } catch (Exception e) {
+            logger.warn("Không gửi được thông điệp relay chat qua Redis: {}", e.getMessage());
+            return false;
+        }
+    }
+
+    private static String presenceKey(String email) {
+        return PRESENCE_PREFIX + email;
+    }
+}
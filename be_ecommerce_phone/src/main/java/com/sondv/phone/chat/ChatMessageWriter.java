@@ -0,0 +1,191 @@
+package com.sondv.phone.chat;
+
+import com.sondv.phone.model.Message;
+import com.sondv.phone.repository.MessageJdbcRepository;
+import com.sondv.phone.util.SnowflakeIdGenerator;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Ghi tin nhắn chat kiểu write-behind: tin được giao cho người nhận ngay, còn việc ghi DB
+// được gom lại và chạy trên thread nền theo lô (đủ batch-size hoặc hết flush-interval).
+// Tin chỉ rời hàng đợi khi đang giữ flushLock, nên sau flushNow() mọi tin đã gửi trước đó đều nằm trong DB.
+@Component
+public class ChatMessageWriter {
+
+    private static final Logger logger = LoggerFactory.getLogger(ChatMessageWriter.class);
+
+    private final MessageJdbcRepository messageJdbcRepository;
+    private final SnowflakeIdGenerator idGenerator;
+    private final int batchSize;
+    private final long flushIntervalMs;
+    private final BlockingQueue<Message> queue;
+    private final ReentrantLock flushLock = new ReentrantLock();
+    private final Object signal = new Object();
+    // Lô ghi lỗi, giữ lại để thử lại ở lần flush sau (chỉ truy cập khi giữ flushLock)
+    private final List<Message> retry = new ArrayList<>();
+
+    private volatile boolean running = false;
+    private volatile boolean failing = false;
+    private Thread flusher;
+
+    public ChatMessageWriter(MessageJdbcRepository messageJdbcRepository,
+                             SnowflakeIdGenerator idGenerator,
+                             @Value("${chat.writer.capacity:10000}") int capacity,
+                             @Value("${chat.writer.batch-size:200}") int batchSize,
+                             @Value("${chat.writer.flush-interval-ms:200}") long flushIntervalMs) {
+        this.messageJdbcRepository = messageJdbcRepository;
+        this.idGenerator = idGenerator;
+        this.batchSize = batchSize;
+        this.flushIntervalMs = flushIntervalMs;
+        this.queue = new ArrayBlockingQueue<>(capacity);
+    }
+
+    @PostConstruct
+    public void start() {
+        running = true;
+        flusher = new Thread(this::runFlusher, "chat-writer-flush");
+        flusher.setDaemon(true);
+        flusher.start();
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        running = false;
+        synchronized (signal) {
+            signal.notifyAll();
+        }
+        if (flusher != null) {
+            flusher.join(TimeUnit.SECONDS.toMillis(10));
+        }
+    }
+
+    public void write(Message message) {
+        if (!queue.offer(message)) {
+            // Hàng đợi đầy (DB chậm hoặc đang lỗi): ghi thẳng trên thread hiện tại thay vì bỏ tin
+            logger.warn("Hàng đợi ghi tin nhắn chat đầy, ghi trực tiếp tin {}", message.getId());
+            messageJdbcRepository.insertAll(List.of(message));
+            return;
+        }
+        if (queue.size() >= batchSize) {
+            synchronized (signal) {
+                signal.notifyAll();
+            }
+        }
+    }
+
+    // Ghi ngay mọi tin đang chờ (dùng trước khi đọc / cập nhật tin nhắn trong DB)
+    public void flushNow() {
+        flushLock.lock();
+        try {
+            if (retryPending()) {
+                List<Message> batch = new ArrayList<>();
+                queue.drainTo(batch);
+                insert(batch);
+            }
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    private void runFlusher() {
+        while (running || !queue.isEmpty()) {
+            try {
+                synchronized (signal) {
+                    // DB đang lỗi thì luôn chờ một nhịp trước khi thử lại
+                    if (running && (queue.size() < batchSize || failing)) {
+                        signal.wait(flushIntervalMs);
+                    }
+                }
+            } catch (InterruptedException e) {
+                running = false;
+            }
+            flushLock.lock();
+            try {
+                boolean ok = retryPending();
+                if (ok) {
+                    List<Message> batch = new ArrayList<>();
+                    queue.drainTo(batch, batchSize);
+                    ok = insert(batch);
+                }
+                if (!ok && !running) {
+                    logger.error("Dừng ghi tin nhắn chat khi DB đang lỗi, {} tin chưa được ghi", retry.size() + queue.size());
+                    return;
+                }
+            } finally {
+                flushLock.unlock();
+            }
+        }
+    }
+
+    // Thử ghi lại lô lỗi trước; chưa ghi được thì không lấy thêm tin mới (hàng đợi đầy sẽ chuyển sang ghi trực tiếp)
+    private boolean retryPending() {
+        if (retry.isEmpty()) {
+            return true;
+        }
+        List<Message> batch = new ArrayList<>(retry);
+        return insert(batch);
+    }
+
+    // Gọi khi đang giữ flushLock; lô lỗi được giữ lại trong retry
+    private boolean insert(List<Message> batch) {
+        if (batch.isEmpty()) {
+            return true;
+        }
+        try {
+            try {
+                messageJdbcRepository.insertAll(batch);
+            } catch (DuplicateKeyException e) {
+                messageJdbcRepository.insertAll(resolveDuplicates(batch));
+            }
+            retry.clear();
+            failing = false;
+            return true;
+        } catch (Exception e) {
+            logger.error("Lỗi khi ghi {} tin nhắn chat, sẽ thử lại: {}", batch.size(), e.getMessage());
+            retry.clear();
+            retry.addAll(batch);
+            failing = true;
+            return false;
+        }
+    }
+
+    // Lô bị trùng khóa (cả lô đã rollback): tin đã có trong DB với cùng nội dung là do lần ghi trước đã commit
+    // mà không nhận được phản hồi, bỏ qua; trùng id với tin khác là worker id bị trùng, báo lỗi và cấp id mới để không mất tin
+    private List<Message> resolveDuplicates(List<Message> batch) {
+        Map<Long, Message> stored = messageJdbcRepository.findByIds(batch.stream().map(Message::getId).toList());
+        List<Message> remaining = new ArrayList<>();
+        for (Message message : batch) {
+            Message existing = stored.get(message.getId());
+            if (existing == null) {
+                remaining.add(message);
+            } else if (!sameMessage(existing, message)) {
+                long newId = idGenerator.nextId();
+                logger.error("Trùng id tin nhắn chat {} với tin khác trong DB, ghi lại với id {}", message.getId(), newId);
+                message.setId(newId);
+                remaining.add(message);
+            }
+        }
+        return remaining;
+    }
+
+    private static boolean sameMessage(Message a, Message b) {
+        return Objects.equals(a.getSenderId(), b.getSenderId())
+                && Objects.equals(a.getReceiverId(), b.getReceiverId())
+                && Objects.equals(a.getConversationId(), b.getConversationId())
+                && Objects.equals(a.getContent(), b.getContent());
+    }
+}
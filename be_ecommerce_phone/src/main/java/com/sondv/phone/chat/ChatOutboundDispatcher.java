@@ -0,0 +1,108 @@
+package com.sondv.phone.chat;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import jakarta.websocket.RemoteEndpoint;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.adapter.standard.StandardWebSocketSession;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Thread pool dùng chung để gửi tin WebSocket cho mọi session (chỉ lấy tin khỏi hàng đợi và gọi async send,
+// không chờ client nên vài client treo không chiếm hết thread), kèm metrics:
+// chat.outbound.send (thời gian gửi xong một frame), chat.outbound.queue.depth (độ dài hàng đợi lúc đẩy tin),
+// chat.outbound.dropped / chat.outbound.disconnected (số tin bị bỏ / client bị ngắt do quá tải), chat.sessions.
+@Component
+public class ChatOutboundDispatcher {
+
+    private static final Logger logger = LoggerFactory.getLogger(ChatOutboundDispatcher.class);
+    // Thuộc tính của Tomcat: thời gian tối đa một lần gửi blocking (frame đóng kết nối) được phép chờ client
+    private static final String BLOCKING_SEND_TIMEOUT = "org.apache.tomcat.websocket.BLOCKING_SEND_TIMEOUT";
+
+    private final ExecutorService executor;
+    private final int capacity;
+    private final OverflowPolicy policy;
+    private final long sendTimeoutMs;
+    private final Timer sendTimer;
+    private final DistributionSummary queueDepth;
+    private final Counter dropped;
+    private final Counter disconnected;
+
+    public ChatOutboundDispatcher(MeterRegistry meterRegistry,
+                                  ChatSessionRegistry sessionRegistry,
+                                  @Value("${chat.outbound.writer-threads:4}") int writerThreads,
+                                  @Value("${chat.outbound.queue-capacity:256}") int capacity,
+                                  @Value("${chat.outbound.overflow-policy:DROP_OLDEST}") OverflowPolicy policy,
+                                  @Value("${chat.outbound.send-timeout-ms:5000}") long sendTimeoutMs) {
+        AtomicInteger threadCount = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(writerThreads, r -> {
+            Thread thread = new Thread(r, "chat-writer-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.capacity = capacity;
+        this.policy = policy;
+        this.sendTimeoutMs = sendTimeoutMs;
+        this.sendTimer = Timer.builder("chat.outbound.send").register(meterRegistry);
+        this.queueDepth = DistributionSummary.builder("chat.outbound.queue.depth").register(meterRegistry);
+        this.dropped = Counter.builder("chat.outbound.dropped").register(meterRegistry);
+        this.disconnected = Counter.builder("chat.outbound.disconnected").register(meterRegistry);
+        Gauge.builder("chat.sessions", sessionRegistry, ChatSessionRegistry::size).register(meterRegistry);
+    }
+
+    public SessionOutbound create(WebSocketSession session) {
+        // Giới hạn thời gian gửi: frame chưa gửi xong sau sendTimeoutMs thì coi là lỗi và đóng kết nối
+        RemoteEndpoint.Async async = null;
+        if (session instanceof StandardWebSocketSession standardSession) {
+            jakarta.websocket.Session nativeSession = standardSession.getNativeSession(jakarta.websocket.Session.class);
+            if (nativeSession != null) {
+                nativeSession.getUserProperties().put(BLOCKING_SEND_TIMEOUT, sendTimeoutMs);
+                async = nativeSession.getAsyncRemote();
+                async.setSendTimeout(sendTimeoutMs);
+            }
+        }
+        return new SessionOutbound(session, async, this, capacity, policy);
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        executor.shutdown();
+        executor.awaitTermination(5, TimeUnit.SECONDS);
+    }
+
+    void execute(Runnable task) {
+        try {
+            executor.execute(task);
+        } catch (RejectedExecutionException e) {
+            logger.debug("Bỏ qua tác vụ gửi chat vì executor đã dừng");
+        }
+    }
+
+    void recordSend(long nanos) {
+        sendTimer.record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    void recordQueueDepth(int depth) {
+        queueDepth.record(depth);
+    }
+
+    void recordDrop() {
+        dropped.increment();
+    }
+
+    void recordDisconnect() {
+        disconnected.increment();
+    }
+}
@@ -0,0 +1,46 @@
+package com.sondv.phone.chat;
+
+import com.sondv.phone.model.RoleName;
+import com.sondv.phone.model.User;
+import lombok.Getter;
+
+import java.time.LocalDateTime;
+import java.util.Set;
+
+// Thông tin người dùng gắn vào session lúc bắt tay: xử lý tin nhắn và broadcast không cần query lại DB.
+// Vai trò và thời hạn khóa chat được cập nhật tại chỗ khi có UserChatStateChangedEvent.
+@Getter
+public class ChatPrincipal {
+    private final Long userId;
+    private final String email;
+    private volatile Set<RoleName> roles;
+    private volatile LocalDateTime chatBanUntil;
+
+    public ChatPrincipal(Long userId, String email, Set<RoleName> roles, LocalDateTime chatBanUntil) {
+        this.userId = userId;
+        this.email = email;
+        this.roles = Set.copyOf(roles);
+        this.chatBanUntil = chatBanUntil;
+    }
+
+    public static ChatPrincipal of(User user) {
+        return new ChatPrincipal(user.getId(), user.getEmail(), user.getRoles(), user.getChatBanUntil());
+    }
+
+    public boolean isStaff() {
+        return roles.contains(RoleName.ADMIN) || roles.contains(RoleName.STAFF);
+    }
+
+    public boolean isCustomer() {
+        return roles.contains(RoleName.CUSTOMER);
+    }
+
+    public boolean isBanned(LocalDateTime now) {
+        return chatBanUntil != null && now.isBefore(chatBanUntil);
+    }
+
+    public void update(Set<RoleName> roles, LocalDateTime chatBanUntil) {
+        this.roles = Set.copyOf(roles);
+        this.chatBanUntil = chatBanUntil;
+    }
+}
@@ -0,0 +1,25 @@
+package com.sondv.phone.chat;
+
+import com.sondv.phone.ratelimit.SpamState;
+import org.springframework.web.socket.WebSocketSession;
+
+// Một kết nối chat đang mở: người dùng (đã xác thực lúc bắt tay), session, hàng đợi gửi và trạng thái chống spam của user
+public record ChatSession(ChatPrincipal principal, WebSocketSession session, SessionOutbound outbound, SpamState spamState) {
+
+    public String email() {
+        return principal.getEmail();
+    }
+
+    public boolean staff() {
+        return principal.isStaff();
+    }
+
+    public boolean isOpen() {
+        return session.isOpen();
+    }
+
+    // Đẩy tin vào hàng đợi gửi của session, không chặn caller
+    public boolean send(String payload) {
+        return outbound.offer(payload);
+    }
+}
@@ -0,0 +1,78 @@
+package com.sondv.phone.chat;
+
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Danh bạ session chat dùng chung giữa các thread của Tomcat.
+// Bảng chính theo email, thêm hai bảng phụ theo vai trò để gửi cho admin/staff chỉ phải duyệt các session staff.
+// ConcurrentHashMap chia khóa theo bucket nên đăng ký / hủy / duyệt không chặn nhau.
+@Component
+public class ChatSessionRegistry {
+
+    private final Map<String, ChatSession> sessions = new ConcurrentHashMap<>();
+    private final Map<String, ChatSession> staffSessions = new ConcurrentHashMap<>();
+    private final Map<String, ChatSession> customerSessions = new ConcurrentHashMap<>();
+
+    // Đăng ký session mới cho user, trả về session cũ (nếu có) để caller đóng.
+    // compute khóa theo key nên hai lần đăng ký của cùng một user không làm lệch bảng phụ.
+    public ChatSession register(ChatSession chatSession) {
+        ChatSession[] previous = new ChatSession[1];
+        sessions.compute(chatSession.email(), (email, existing) -> {
+            if (existing != null) {
+                roleIndex(existing).remove(email, existing);
+            }
+            roleIndex(chatSession).put(email, chatSession);
+            previous[0] = existing;
+            return chatSession;
+        });
+        return previous[0];
+    }
+
+    // Chỉ gỡ nếu đúng là session này: session cũ đóng muộn không được gỡ mất session mới của cùng user
+    public void unregister(String email, ChatSession chatSession) {
+        sessions.computeIfPresent(email, (key, existing) -> {
+            if (existing != chatSession) {
+                return existing;
+            }
+            roleIndex(existing).remove(key, existing);
+            return null;
+        });
+    }
+
+    // Vai trò của user vừa đổi: chuyển session sang bảng phụ tương ứng
+    public void reindex(String email) {
+        sessions.computeIfPresent(email, (key, existing) -> {
+            staffSessions.remove(key, existing);
+            customerSessions.remove(key, existing);
+            roleIndex(existing).put(key, existing);
+            return existing;
+        });
+    }
+
+    public ChatSession get(String email) {
+        return email != null ? sessions.get(email) : null;
+    }
+
+    public Collection<ChatSession> all() {
+        return sessions.values();
+    }
+
+    public Collection<ChatSession> staffSessions() {
+        return staffSessions.values();
+    }
+
+    public Collection<ChatSession> customerSessions() {
+        return customerSessions.values();
+    }
+
+    public int size() {
+        return sessions.size();
+    }
+
+    private Map<String, ChatSession> roleIndex(ChatSession chatSession) {
+        return chatSession.staff() ? staffSessions : customerSessions;
+    }
+}
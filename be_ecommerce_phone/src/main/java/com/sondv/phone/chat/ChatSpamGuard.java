@@ -0,0 +1,118 @@
+package com.sondv.phone.chat;
+
+import com.sondv.phone.event.UserChatStateChangedEvent;
+import com.sondv.phone.ratelimit.BanStore;
+import com.sondv.phone.ratelimit.SpamLimiter;
+import com.sondv.phone.ratelimit.SpamPolicy;
+import com.sondv.phone.ratelimit.SpamState;
+import com.sondv.phone.repository.UserRepository;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+// Chống spam cho chat: đếm tần suất và tin lặp qua SpamLimiter (Redis, dùng chung cả cụm), vi phạm thì khóa chat.
+// Lượt khóa có hiệu lực ngay qua BanStore và principal của session; chỉ việc ghi users.chat_ban_until chạy trên thread nền.
+@Component
+public class ChatSpamGuard {
+
+    private static final Logger logger = LoggerFactory.getLogger(ChatSpamGuard.class);
+
+    private final SpamLimiter spamLimiter;
+    private final BanStore banStore;
+    private final UserRepository userRepository;
+    private final ApplicationEventPublisher eventPublisher;
+    private final SpamPolicy policy;
+    private final Duration banDuration;
+    private final ThreadPoolExecutor persister;
+
+    public ChatSpamGuard(SpamLimiter spamLimiter,
+                         BanStore banStore,
+                         UserRepository userRepository,
+                         ApplicationEventPublisher eventPublisher,
+                         @Value("${chat.spam.rate-limit:5}") int rateLimit,
+                         @Value("${chat.spam.window:10s}") Duration window,
+                         @Value("${chat.spam.duplicate-threshold:3}") int duplicateThreshold,
+                         @Value("${chat.spam.duplicate-ttl:10m}") Duration duplicateTtl,
+                         @Value("${chat.spam.ban-duration:5m}") Duration banDuration) {
+        this.spamLimiter = spamLimiter;
+        this.banStore = banStore;
+        this.userRepository = userRepository;
+        this.eventPublisher = eventPublisher;
+        this.policy = new SpamPolicy(rateLimit, window, duplicateThreshold, duplicateTtl);
+        this.banDuration = banDuration;
+        // Một thread ghi DB; hàng đợi đầy thì ghi trên thread gọi thay vì bỏ lượt khóa
+        this.persister = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(1000), r -> {
+            Thread thread = new Thread(r, "chat-ban-persist");
+            thread.setDaemon(true);
+            return thread;
+        }, new ThreadPoolExecutor.CallerRunsPolicy());
+    }
+
+    // Trạng thái dự phòng cho từng session, chỉ dùng khi Redis lỗi
+    public SpamState newLocalState() {
+        return new SpamState(policy);
+    }
+
+    // true nếu tin bị chặn: user đang bị khóa, hoặc tin này vượt ngưỡng và user vừa bị khóa
+    public boolean isBlocked(ChatSession chatSession, String message) {
+        ChatPrincipal principal = chatSession.principal();
+        if (principal.isBanned(LocalDateTime.now())) {
+            return true;
+        }
+        if (spamLimiter.check(subject(principal.getUserId()), policy, message, chatSession.spamState()) != SpamState.Verdict.OK) {
+            ban(chatSession);
+            return true;
+        }
+        return false;
+    }
+
+    // Lúc kết nối: lượt khóa mới nhất có thể chỉ mới nằm trong Redis (DB chưa kịp ghi)
+    public void applyCurrentBan(ChatPrincipal principal) {
+        LocalDateTime until = banStore.bannedUntil(subject(principal.getUserId()));
+        if (until != null && (principal.getChatBanUntil() == null || until.isAfter(principal.getChatBanUntil()))) {
+            principal.update(principal.getRoles(), until);
+        }
+    }
+
+    // Mọi thay đổi thời hạn khóa (do spam hoặc admin khóa / gỡ khóa) đều đi qua sự kiện này
+    @EventListener
+    public void onUserChatStateChanged(UserChatStateChangedEvent event) {
+        banStore.set(subject(event.userId()), event.chatBanUntil());
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        persister.shutdown();
+        persister.awaitTermination(5, TimeUnit.SECONDS);
+    }
+
+    private void ban(ChatSession chatSession) {
+        ChatPrincipal principal = chatSession.principal();
+        LocalDateTime banUntil = LocalDateTime.now().plus(banDuration);
+        spamLimiter.resetDuplicates(subject(principal.getUserId()), chatSession.spamState());
+        eventPublisher.publishEvent(new UserChatStateChangedEvent(principal.getUserId(), principal.getEmail(),
+                principal.getRoles(), banUntil));
+        persister.execute(() -> {
+            try {
+                userRepository.updateChatBanUntil(principal.getUserId(), banUntil);
+            } catch (Exception e) {
+                // Redis vẫn giữ lượt khóa tới khi hết hạn, chỉ mất bản ghi trong DB
+                logger.error("Không ghi được thời hạn khóa chat của user {}: {}", principal.getUserId(), e.getMessage());
+            }
+        });
+    }
+
+    private static String subject(Long userId) {
+        return "chat:" + userId;
+    }
+}
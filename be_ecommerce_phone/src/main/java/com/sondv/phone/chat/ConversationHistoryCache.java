@@ -0,0 +1,108 @@
+package com.sondv.phone.chat;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.sondv.phone.model.Message;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+// Giữ N tin mới nhất của mỗi cuộc hội thoại đang hoạt động trong bộ nhớ: khách kết nối lại có lịch sử ngay, không query DB.
+// Số cuộc hội thoại có giới hạn (Caffeine), cuộc hội thoại lâu không ai xem hay nhắn sẽ bị loại.
+// Vòng đệm chỉ được tạo khi nạp từ DB, nên khi đã có thì nó luôn chứa đúng các tin mới nhất của cuộc hội thoại.
+@Component
+public class ConversationHistoryCache {
+
+    private final int capacity;
+    private final Cache<Long, Ring> rings;
+
+    public ConversationHistoryCache(@Value("${chat.history.recent-size:100}") int capacity,
+                                    @Value("${chat.history.max-conversations:10000}") long maxConversations,
+                                    @Value("${chat.history.expire-after-access:30m}") Duration expireAfterAccess) {
+        this.capacity = capacity;
+        this.rings = Caffeine.newBuilder()
+                .maximumSize(maxConversations)
+                .expireAfterAccess(expireAfterAccess)
+                .build();
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+
+    // Tối đa limit tin mới nhất (mới nhất trước); lần đầu thì nạp bằng loader (tối đa capacity tin, mới nhất trước)
+    public List<Message> latest(Long conversationId, int limit, Supplier<List<Message>> loader) {
+        return rings.get(conversationId, id -> new Ring(loader.get(), capacity)).newest(limit);
+    }
+
+    // Chỉ thêm vào vòng đệm đã nạp; computeIfPresent chờ lượt nạp đang chạy của cùng cuộc hội thoại nên không mất tin
+    public void append(Message message) {
+        rings.asMap().computeIfPresent(message.getConversationId(), (id, ring) -> {
+            ring.add(message);
+            return ring;
+        });
+    }
+
+    public void markReadUpTo(Long conversationId, Long upToId) {
+        Ring ring = rings.getIfPresent(conversationId);
+        if (ring != null) {
+            ring.markRead(message -> conversationId.equals(message.getSenderId()) && message.getId() <= upToId);
+        }
+    }
+
+    public void markRead(Long conversationId, Long messageId) {
+        Ring ring = rings.getIfPresent(conversationId);
+        if (ring != null) {
+            ring.markRead(message -> messageId.equals(message.getId()));
+        }
+    }
+
+    public void invalidate(Long conversationId) {
+        rings.invalidate(conversationId);
+    }
+
+    // Các tin sắp theo id tăng dần; chỉ vài chục phần tử nên chèn / tìm tuyến tính là đủ
+    private static final class Ring {
+        private final int capacity;
+        private final List<Message> messages;
+
+        Ring(List<Message> newestFirst, int capacity) {
+            this.capacity = capacity;
+            this.messages = new ArrayList<>(newestFirst);
+            this.messages.sort(Comparator.comparing(Message::getId));
+        }
+
+        synchronized void add(Message message) {
+            int index = messages.size();
+            while (index > 0 && messages.get(index - 1).getId() >= message.getId()) {
+                if (messages.get(index - 1).getId().equals(message.getId())) {
+                    // Tin đã có (nạp từ DB sau khi flush, hoặc nhận lại qua relay)
+                    return;
+                }
+                index--;
+            }
+            messages.add(index, message);
+            if (messages.size() > capacity) {
+                messages.remove(0);
+            }
+        }
+
+        synchronized List<Message> newest(int limit) {
+            List<Message> result = new ArrayList<>(Math.min(limit, messages.size()));
+            for (int i = messages.size() - 1; i >= 0 && result.size() < limit; i--) {
+                result.add(messages.get(i));
+            }
+            return result;
+        }
+
+        synchronized void markRead(Predicate<Message> filter) {
+            messages.stream().filter(filter).forEach(message -> message.setRead(true));
+        }
+    }
+}
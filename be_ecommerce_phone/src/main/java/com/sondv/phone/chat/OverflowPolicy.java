@@ -0,0 +1,7 @@
+package com.sondv.phone.chat;
+
+// Cách xử lý khi hàng đợi gửi của một session đầy (client đọc chậm hơn tốc độ tin đến)
+public enum OverflowPolicy {
+    DROP_OLDEST, // Bỏ tin cũ nhất trong hàng đợi để nhận tin mới
+    DISCONNECT   // Đóng kết nối của client chậm, client tự kết nối lại và tải lịch sử
+}
@@ -0,0 +1,172 @@
+package com.sondv.phone.chat;
+
+import jakarta.websocket.RemoteEndpoint;
+import jakarta.websocket.SendResult;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+// Hàng đợi gửi có giới hạn của một session. offer() không bao giờ chặn caller:
+// tin được đẩy vào hàng đợi và ChatOutboundDispatcher gửi lần lượt từng frame bằng async send của container,
+// nên một client chậm chỉ làm đầy hàng đợi của chính nó, không giữ thread gửi dùng chung và không làm chậm người khác.
+public class SessionOutbound {
+
+    private final WebSocketSession session;
+    // Async remote của session JSR-356 (Tomcat); null thì gửi blocking trên thread của dispatcher
+    private final RemoteEndpoint.Async async;
+    private final ChatOutboundDispatcher dispatcher;
+    private final int capacity;
+    private final OverflowPolicy policy;
+    private final Deque<String> queue = new ArrayDeque<>();
+    // true khi đã có một lượt gửi được lên lịch / đang chạy: mỗi session chỉ một thread gửi tại một thời điểm
+    private final AtomicBoolean draining = new AtomicBoolean(false);
+    private volatile boolean closed = false;
+
+    SessionOutbound(WebSocketSession session, RemoteEndpoint.Async async, ChatOutboundDispatcher dispatcher,
+                    int capacity, OverflowPolicy policy) {
+        this.session = session;
+        this.async = async;
+        this.dispatcher = dispatcher;
+        this.capacity = capacity;
+        this.policy = policy;
+    }
+
+    // Trả về false nếu tin không được nhận (session đã đóng hoặc bị ngắt vì quá tải)
+    public boolean offer(String payload) {
+        if (closed || !session.isOpen()) {
+            return false;
+        }
+        int depth;
+        synchronized (queue) {
+            if (queue.size() >= capacity) {
+                if (policy == OverflowPolicy.DISCONNECT) {
+                    closed = true;
+                    queue.clear();
+                    dispatcher.recordDisconnect();
+                    dispatcher.execute(() -> closeSession("Slow consumer"));
+                    return false;
+                }
+                queue.pollFirst();
+                dispatcher.recordDrop();
+            }
+            queue.addLast(payload);
+            depth = queue.size();
+        }
+        dispatcher.recordQueueDepth(depth);
+        scheduleDrain();
+        return true;
+    }
+
+    public void close() {
+        closed = true;
+        synchronized (queue) {
+            queue.clear();
+        }
+    }
+
+    private void scheduleDrain() {
+        if (draining.compareAndSet(false, true)) {
+            dispatcher.execute(async != null ? this::sendNext : this::drain);
+        }
+    }
+
+    // Gửi một frame bằng async send; frame kế tiếp chỉ được gửi khi frame trước xong (container chỉ cho một lần
+    // async send đang chạy mỗi session). Callback chạy trên thread của container nên chuyển lại sang dispatcher.
+    private void sendNext() {
+        String payload = poll();
+        if (payload == null) {
+            draining.set(false);
+            rescheduleIfPending();
+            return;
+        }
+        if (closed || !session.isOpen()) {
+            close();
+            draining.set(false);
+            return;
+        }
+        long startedAt = System.nanoTime();
+        try {
+            async.sendText(payload, result -> {
+                dispatcher.recordSend(System.nanoTime() - startedAt);
+                onSent(result);
+            });
+        } catch (IllegalStateException e) {
+            dispatcher.recordSend(System.nanoTime() - startedAt);
+            failSend();
+        }
+    }
+
+    private void onSent(SendResult result) {
+        if (result.isOK()) {
+            dispatcher.execute(this::sendNext);
+        } else {
+            // Gửi lỗi hoặc quá send-timeout-ms
+            dispatcher.execute(this::failSend);
+        }
+    }
+
+    private void failSend() {
+        close();
+        draining.set(false);
+        closeSession("Send failed");
+    }
+
+    private void drain() {
+        try {
+            String payload;
+            while ((payload = poll()) != null) {
+                if (closed || !session.isOpen()) {
+                    close();
+                    return;
+                }
+                long startedAt = System.nanoTime();
+                try {
+                    session.sendMessage(new TextMessage(payload));
+                } catch (IOException | IllegalStateException e) {
+                    // Gửi lỗi hoặc quá thời gian gửi: đóng hẳn kết nối để afterConnectionClosed gỡ session khỏi registry,
+                    // thay vì chỉ đóng hàng đợi và để session "sống" nhưng không nhận được tin
+                    close();
+                    closeSession("Send failed");
+                    return;
+                } finally {
+                    dispatcher.recordSend(System.nanoTime() - startedAt);
+                }
+            }
+        } finally {
+            draining.set(false);
+        }
+        rescheduleIfPending();
+    }
+
+    // Tin đến giữa lúc poll() trả null và draining = false: lên lịch lại để không bị bỏ sót
+    private void rescheduleIfPending() {
+        if (!isEmpty() && !closed) {
+            scheduleDrain();
+        }
+    }
+
+    private String poll() {
+        synchronized (queue) {
+            return queue.pollFirst();
+        }
+    }
+
+    private boolean isEmpty() {
+        synchronized (queue) {
+            return queue.isEmpty();
+        }
+    }
+
+    private void closeSession(String reason) {
+        try {
+            session.close(CloseStatus.SESSION_NOT_RELIABLE.withReason(reason));
+        } catch (IOException | IllegalStateException ignored) {
+            // Session đã đóng
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package com.sondv.phone.config;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.sondv.phone.cache.TwoLevelCacheManager;
+import com.sondv.phone.dto.ProductDTO;
+import com.sondv.phone.dto.ProductSummaryDTO;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.redis.cache.BatchStrategies;
+import org.springframework.data.redis.cache.RedisCacheConfiguration;
+import org.springframework.data.redis.cache.RedisCacheManager;
+import org.springframework.data.redis.cache.RedisCacheWriter;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.serializer.Jackson2JsonRedisSerializer;
+import org.springframework.data.redis.serializer.RedisSerializationContext;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+
+@Configuration
+public class CacheConfig {
+
+    public static final String PRODUCT = "product";
+    public static final String PRODUCT_LISTS = "productLists";
+
+    @Value("${cache.product.l1.maximum-size:2000}")
+    private long localMaximumSize;
+
+    @Value("${cache.product.l1.ttl:60s}")
+    private Duration localTtl;
+
+    @Value("${cache.product.l2.ttl:10m}")
+    private Duration remoteTtl;
+
+    @Bean
+    public TwoLevelCacheManager cacheManager(RedisConnectionFactory connectionFactory, ObjectMapper objectMapper) {
+        ObjectMapper mapper = objectMapper.copy()
+                .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+        JavaType productType = mapper.getTypeFactory().constructType(ProductDTO.class);
+        JavaType productListType = mapper.getTypeFactory().constructCollectionType(List.class, ProductSummaryDTO.class);
+
+        // Mỗi cache có serializer riêng theo kiểu dữ liệu, không lưu tên class vào Redis
+        RedisCacheManager redisCacheManager = RedisCacheManager
+                .builder(RedisCacheWriter.nonLockingRedisCacheWriter(connectionFactory, BatchStrategies.scan(1000)))
+                .withInitialCacheConfigurations(Map.of(
+                        PRODUCT, redisCacheConfiguration(new Jackson2JsonRedisSerializer<>(mapper, productType)),
+                        PRODUCT_LISTS, redisCacheConfiguration(new Jackson2JsonRedisSerializer<>(mapper, productListType))))
+                .disableCreateOnMissingCache()
+                .build();
+        redisCacheManager.afterPropertiesSet();
+
+        Caffeine<Object, Object> localSpec = Caffeine.newBuilder()
+                .maximumSize(localMaximumSize)
+                .expireAfterWrite(localTtl);
+        return new TwoLevelCacheManager(redisCacheManager, localSpec);
+    }
+
+    private RedisCacheConfiguration redisCacheConfiguration(Jackson2JsonRedisSerializer<?> serializer) {
+        return RedisCacheConfiguration.defaultCacheConfig()
+                .entryTtl(remoteTtl)
+                .disableCachingNullValues()
+                .serializeValuesWith(RedisSerializationContext.SerializationPair.fromSerializer(serializer));
+    }
+}
@@ -1,5 +1,12 @@
 package com.sondv.phone.config;
 
+import com.sondv.phone.chat.ChatClusterRelay;
+import com.sondv.phone.chat.ChatOutboundDispatcher;
+import com.sondv.phone.chat.ChatPrincipal;
+import com.sondv.phone.chat.ChatSession;
+import com.sondv.phone.chat.ChatSessionRegistry;
+import com.sondv.phone.chat.ChatSpamGuard;
+import com.sondv.phone.event.ReportJobFinishedEvent;
 import com.sondv.phone.model.Message;
 import com.sondv.phone.model.RoleName;
 import com.sondv.phone.model.User;
@@ -11,36 +18,30 @@ import io.jsonwebtoken.io.Decoders;
 import io.jsonwebtoken.security.Keys;
 import lombok.RequiredArgsConstructor;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
 import org.springframework.stereotype.Component;
 import org.springframework.web.socket.CloseStatus;
 import org.springframework.web.socket.TextMessage;
 import org.springframework.web.socket.WebSocketSession;
 import org.springframework.web.socket.handler.TextWebSocketHandler;
 
-import java.io.IOException;
 import java.nio.charset.StandardCharsets;
-import java.time.Duration;
-import java.time.LocalDateTime;
 import java.util.*;
-import java.util.concurrent.LinkedBlockingQueue;
 
 @Component
 @RequiredArgsConstructor
 public class ChatWebSocketHandler extends TextWebSocketHandler {
     private final UserRepository userRepository;
     private final MessageService messageService;
+    private final ChatSessionRegistry sessionRegistry;
+    private final ChatOutboundDispatcher outboundDispatcher;
+    private final ChatClusterRelay clusterRelay;
+    private final ChatSpamGuard spamGuard;
 
     @Value("${jwt.secret}")
     private String secretKey;
 
-    private final Map<String, WebSocketSession> sessions = new HashMap<>();
-    private final Map<String, Queue<LocalDateTime>> messageTimestamps = new HashMap<>();
-    private final Map<String, Integer> duplicateMessageCount = new HashMap<>();
-    private final Map<String, String> lastMessages = new HashMap<>();
-    private static final int RATE_LIMIT = 5; // Số tin nhắn tối đa
-    private static final int TIME_WINDOW = 10; // Giây
-    private static final int DUPLICATE_THRESHOLD = 3; // Số lần lặp lại trước khi bị khóa
-    private static final int BAN_DURATION = 5; // Phút
+    private static final String CHAT_SESSION_ATTRIBUTE = "chatSession";
 
     @Override
     public void afterConnectionEstablished(WebSocketSession session) throws Exception {
@@ -68,109 +69,76 @@ public class ChatWebSocketHandler extends TextWebSocketHandler {
             return;
         }
 
-        if (sessions.containsKey(email)) {
-            sessions.get(email).close();
+        // Lưu principal vào session: các frame sau không cần query lại user
+        ChatPrincipal principal = ChatPrincipal.of(user);
+        spamGuard.applyCurrentBan(principal);
+        ChatSession chatSession = new ChatSession(principal, session, outboundDispatcher.create(session),
+                spamGuard.newLocalState());
+        session.getAttributes().put("email", email);
+        session.getAttributes().put(CHAT_SESSION_ATTRIBUTE, chatSession);
+
+        ChatSession previous = sessionRegistry.register(chatSession);
+        if (previous != null) {
+            previous.outbound().close();
+            previous.session().close();
             System.out.println("⚠ Đóng session cũ của " + email);
         }
-
-        sessions.put(email, session);
-        session.getAttributes().put("email", email);
+        clusterRelay.online(email);
 
         System.out.println("✅ WebSocket connected for user: " + email);
     }
 
     @Override
     protected void handleTextMessage(WebSocketSession session, TextMessage message) {
-        String email = (String) session.getAttributes().get("email");
+        ChatSession chatSession = (ChatSession) session.getAttributes().get(CHAT_SESSION_ATTRIBUTE);
 
-        if (email == null) {
-            System.out.println("⚠ Lỗi: Không tìm thấy email từ session.");
+        if (chatSession == null) {
+            System.out.println("⚠ Lỗi: Không tìm thấy thông tin người dùng từ session.");
             return;
         }
 
         try {
-            User user = userRepository.findByEmail(email).orElseThrow(() -> new RuntimeException("Không tìm thấy user!"));
+            ChatPrincipal principal = chatSession.principal();
             String payload = message.getPayload();
 
-            System.out.println("📩 Nhận tin nhắn từ " + email + ": " + payload);
+            System.out.println("📩 Nhận tin nhắn từ " + principal.getEmail() + ": " + payload);
 
-            if (isSpamming(user, payload)) {
-                session.sendMessage(new TextMessage("{\"type\":\"error\",\"content\":\"Bạn bị khóa chat!\"}"));
+            if (spamGuard.isBlocked(chatSession, payload)) {
+                send(chatSession, "{\"type\":\"error\",\"content\":\"Bạn bị khóa chat!\"}");
                 return;
             }
 
-            if (user.getRoles().contains(RoleName.CUSTOMER)) {
-                handleCustomerMessage(user, payload);
-            } else if (user.getRoles().contains(RoleName.ADMIN) || user.getRoles().contains(RoleName.STAFF)) {
-                handleAdminMessage(session, user, payload);
+            if (principal.isCustomer()) {
+                handleCustomerMessage(principal, payload);
+            } else if (principal.isStaff()) {
+                handleAdminMessage(chatSession, payload);
             }
         } catch (Exception e) {
             System.err.println("❌ Lỗi xử lý tin nhắn: " + e.getMessage());
             e.printStackTrace();
-            try {
-                session.sendMessage(new TextMessage("{\"type\":\"error\",\"content\":\"Lỗi hệ thống, vui lòng thử lại sau!\"}"));
-            } catch (IOException ioException) {
-                System.err.println("❌ Lỗi khi gửi thông báo lỗi: " + ioException.getMessage());
-            }
-        }
-    }
-
-
-    private boolean isSpamming(User user, String message) {
-        String email = user.getEmail();
-
-        // Kiểm tra nếu user đang bị cấm chat
-        if (user.getChatBanUntil() != null && LocalDateTime.now().isBefore(user.getChatBanUntil())) {
-            return true;
-        }
-
-        // Kiểm tra tần suất gửi tin nhắn
-        messageTimestamps.putIfAbsent(email, new LinkedBlockingQueue<>(RATE_LIMIT));
-        Queue<LocalDateTime> timestamps = messageTimestamps.get(email);
-        if (timestamps.size() >= RATE_LIMIT) {
-            if (Duration.between(timestamps.peek(), LocalDateTime.now()).getSeconds() < TIME_WINDOW) {
-                banUser(user);
-                return true;
-            }
-            timestamps.poll();
-        }
-        timestamps.offer(LocalDateTime.now());
-
-        // Kiểm tra tin nhắn lặp lại nhiều lần
-        String lastMessageKey = email + "_last";
-        String lastMessage = lastMessages.getOrDefault(lastMessageKey, "");
-        if (message.equals(lastMessage)) {
-            duplicateMessageCount.put(email, duplicateMessageCount.getOrDefault(email, 0) + 1);
-            if (duplicateMessageCount.get(email) >= DUPLICATE_THRESHOLD) {
-                banUser(user);
-                return true;
-            }
-        } else {
-            duplicateMessageCount.put(email, 0);
+            send(chatSession, "{\"type\":\"error\",\"content\":\"Lỗi hệ thống, vui lòng thử lại sau!\"}");
         }
-        lastMessages.put(lastMessageKey, message);
-
-        return false;
     }
 
-    private void banUser(User user) {
-        user.setChatBanUntil(LocalDateTime.now().plusMinutes(BAN_DURATION));
-        userRepository.save(user);
-        duplicateMessageCount.put(user.getEmail(), 0);
-    }
 
     @Override
     public void afterConnectionClosed(WebSocketSession session, CloseStatus status) {
         String email = (String) session.getAttributes().get("email");
-        if (email != null) {
-            sessions.remove(email);
+        ChatSession chatSession = (ChatSession) session.getAttributes().get(CHAT_SESSION_ATTRIBUTE);
+        if (email != null && chatSession != null) {
+            // Session có thể đã bị gỡ (đóng vì user kết nối ở node khác): chỉ xóa presence khi vẫn là session hiện tại
+            if (sessionRegistry.get(email) == chatSession) {
+                sessionRegistry.unregister(email, chatSession);
+                clusterRelay.offline(email);
+            }
+            chatSession.outbound().close();
         }
     }
 
-    private void handleCustomerMessage(User user, String payload) throws Exception {
+    private void handleCustomerMessage(ChatPrincipal sender, String payload) {
         try {
-            Message savedMessage = messageService.saveMessage(user.getId(), 0L, payload);
-            String jsonMessage = "{\"type\":\"message\",\"id\":" + savedMessage.getId() + ",\"from\":\"" + user.getEmail() + "\",\"content\":\"" + payload + "\",\"read\":" + savedMessage.isRead() + "}";
+            Message savedMessage = messageService.saveMessage(sender.getUserId(), 0L, payload);
+            String jsonMessage = "{\"type\":\"message\",\"id\":\"" + savedMessage.getId() + "\",\"from\":\"" + sender.getEmail() + "\",\"content\":\"" + payload + "\",\"read\":" + savedMessage.isRead() + "}";
 
             System.out.println("💾 Tin nhắn được lưu vào DB: " + jsonMessage);
             broadcastToAdminsOrStaff(jsonMessage);
@@ -180,48 +148,58 @@ public class ChatWebSocketHandler extends TextWebSocketHandler {
         }
     }
 
-    private void handleAdminMessage(WebSocketSession session, User user, String payload) throws Exception {
+    private void handleAdminMessage(ChatSession chatSession, String payload) {
+        ChatPrincipal sender = chatSession.principal();
         String[] parts = payload.split(":", 3);
         if (parts.length == 3 && parts[0].equals("to")) {
             String targetEmail = parts[1];
             String content = parts[2];
-            User target = userRepository.findByEmail(targetEmail).orElse(null);
-            if (target == null) {
-                session.sendMessage(new TextMessage("{\"type\":\"error\",\"content\":\"Email không tồn tại\"}"));
+            // Người nhận đang online thì lấy id từ registry, chỉ query DB khi người nhận offline
+            ChatSession targetSession = sessionRegistry.get(targetEmail);
+            Long targetId = targetSession != null
+                    ? targetSession.principal().getUserId()
+                    : userRepository.findByEmail(targetEmail).map(User::getId).orElse(null);
+            if (targetId == null) {
+                send(chatSession, "{\"type\":\"error\",\"content\":\"Email không tồn tại\"}");
                 return;
             }
-            Message savedMessage = messageService.saveMessage(user.getId(), target.getId(), content);
-            WebSocketSession targetSession = sessions.get(targetEmail);
-            if (targetSession != null && targetSession.isOpen()) {
-                String jsonMessage = "{\"type\":\"message\",\"id\":" + savedMessage.getId() + ",\"from\":\"" + user.getEmail() + "\",\"content\":\"" + content + "\",\"read\":" + savedMessage.isRead() + "}";
-                targetSession.sendMessage(new TextMessage(jsonMessage));
-            }
+            Message savedMessage = messageService.saveMessage(sender.getUserId(), targetId, content);
+            // Người nhận có thể đang kết nối ở node khác: relay tìm node qua presence trong Redis
+            String jsonMessage = "{\"type\":\"message\",\"id\":\"" + savedMessage.getId() + "\",\"from\":\"" + sender.getEmail() + "\",\"content\":\"" + content + "\",\"read\":" + savedMessage.isRead() + "}";
+            clusterRelay.sendToUser(targetEmail, jsonMessage);
         } else {
-            session.sendMessage(new TextMessage("{\"type\":\"error\",\"content\":\"Định dạng không đúng. Dùng: to:email:nội dung\"}"));
+            send(chatSession, "{\"type\":\"error\",\"content\":\"Định dạng không đúng. Dùng: to:email:nội dung\"}");
         }
     }
 
     private void sendWelcomeMessage(WebSocketSession session, Long userId) throws Exception {
         String welcomeMsg = "Chào bạn! Cửa hàng điện thoại sẵn sàng hỗ trợ!";
         Message savedMessage = messageService.saveMessage(0L, userId, welcomeMsg);
-        session.sendMessage(new TextMessage("{\"type\":\"message\",\"id\":" + savedMessage.getId() + ",\"content\":\"" + welcomeMsg + "\",\"read\":" + savedMessage.isRead() + "}"));
+        session.sendMessage(new TextMessage("{\"type\":\"message\",\"id\":\"" + savedMessage.getId() + "\",\"content\":\"" + welcomeMsg + "\",\"read\":" + savedMessage.isRead() + "}"));
     }
 
-    private void broadcastToAdminsOrStaff(String jsonMessage) throws Exception {
-        for (WebSocketSession s : sessions.values()) {
-            User target = userRepository.findByEmail((String) s.getAttributes().get("email")).orElseThrow();
-            if (s.isOpen() && (target.getRoles().contains(RoleName.ADMIN) || target.getRoles().contains(RoleName.STAFF))) {
-                s.sendMessage(new TextMessage(jsonMessage));
-            }
+    // Gửi cho admin/staff ở mọi node
+    private void broadcastToAdminsOrStaff(String jsonMessage) {
+        clusterRelay.broadcastToStaff(jsonMessage);
+    }
+
+    private void broadcastNotificationToAdminsOrStaff(String notification) {
+        broadcastToAdminsOrStaff(notification);
+    }
+
+    // Gửi qua hàng đợi riêng của session: vòng broadcast không bị chặn bởi client chậm
+    private void send(ChatSession chatSession, String payload) {
+        if (!chatSession.send(payload)) {
+            System.out.println("⚠ Không gửi được tin cho " + chatSession.email() + " (session đã đóng hoặc quá tải)");
         }
     }
 
-    private void broadcastNotificationToAdminsOrStaff(String notification) throws Exception {
-        for (WebSocketSession s : sessions.values()) {
-            User target = userRepository.findByEmail((String) s.getAttributes().get("email")).orElseThrow();
-            if (s.isOpen() && (target.getRoles().contains(RoleName.ADMIN) || target.getRoles().contains(RoleName.STAFF))) {
-                s.sendMessage(new TextMessage(notification));
-            }
+    // Báo cho người đang chờ biết job xuất báo cáo đã xong
+    @EventListener
+    public void onReportJobFinished(ReportJobFinishedEvent event) {
+        String notification = "{\"type\":\"report\",\"jobId\":\"" + event.jobId() + "\",\"status\":\"" + event.status() + "\"}";
+        for (String email : event.recipients()) {
+            clusterRelay.sendToUser(email, notification);
         }
     }
 
@@ -1,5 +1,6 @@
 package com.sondv.phone.controller;
 
+import com.sondv.phone.dto.CursorPage;
 import com.sondv.phone.model.Message;
 import com.sondv.phone.model.User;
 import com.sondv.phone.repository.UserRepository;
@@ -19,30 +20,36 @@ public class ChatController {
 
     @GetMapping("/history")
     @PreAuthorize("hasAnyRole('ADMIN', 'STAFF')")
-    public List<Message> getChatHistoryForAdmin(@RequestParam Long customerId) {
-        return messageService.getChatHistory(customerId);
+    public List<Message> getChatHistoryForAdmin(@RequestParam Long customerId,
+                                                @RequestParam(defaultValue = "50") int size) {
+        return messageService.getChatHistory(customerId, size);
+    }
+
+    // Phân trang keyset, mới nhất trước: truyền nextCursor của trang trước vào "after" để lấy tin cũ hơn
+    @GetMapping("/history/cursor")
+    @PreAuthorize("hasAnyRole('ADMIN', 'STAFF')")
+    public CursorPage<Message> getChatHistoryPageForAdmin(@RequestParam Long customerId,
+                                                          @RequestParam(required = false) String after,
+                                                          @RequestParam(defaultValue = "20") int size) {
+        return messageService.getChatHistoryPage(customerId, after, size);
     }
 
     @GetMapping("/my-history")
     @PreAuthorize("hasRole('CUSTOMER') or hasRole('ADMIN') or hasRole('STAFF')")
-    public List<Message> getChatHistoryForUser(@RequestHeader("Authorization") String authHeader) {
-        if (authHeader == null || !authHeader.startsWith("Bearer ")) {
-            System.err.println("❌ API Error: Missing or invalid Authorization header!");
-            throw new IllegalArgumentException("Invalid Token!");
-        }
-
-        String token = authHeader.substring(7);
-        String email = jwtUtil.extractUsername(token);
-        if (email == null) {
-            System.err.println("❌ API Error: Cannot extract email from token!");
-            throw new IllegalArgumentException("Invalid Token!");
-        }
-
-        User user = userRepository.findByEmail(email)
-                .orElseThrow(() -> new IllegalArgumentException("User not found!"));
+    public List<Message> getChatHistoryForUser(@RequestHeader("Authorization") String authHeader,
+                                               @RequestParam(defaultValue = "50") int size) {
+        User user = currentUser(authHeader);
+        System.out.println("✅ Fetching chat history for user: " + user.getEmail());
+        return messageService.getChatHistory(user.getId(), size);
+    }
 
-        System.out.println("✅ Fetching chat history for user: " + email);
-        return messageService.getChatHistory(user.getId());
+    @GetMapping("/my-history/cursor")
+    @PreAuthorize("hasRole('CUSTOMER') or hasRole('ADMIN') or hasRole('STAFF')")
+    public CursorPage<Message> getChatHistoryPageForUser(@RequestHeader("Authorization") String authHeader,
+                                                         @RequestParam(required = false) String after,
+                                                         @RequestParam(defaultValue = "20") int size) {
+        User user = currentUser(authHeader);
+        return messageService.getChatHistoryPage(user.getId(), after, size);
     }
 
     @PostMapping("/mark-as-read")
@@ -57,4 +64,21 @@ public class ChatController {
     private String extractEmailFromToken(String token) {
         return jwtUtil.extractUsername(token); // Dùng JwtUtil để lấy email từ token
     }
-}
\ No newline at end of file
+
+    private User currentUser(String authHeader) {
+        if (authHeader == null || !authHeader.startsWith("Bearer ")) {
+            System.err.println("❌ API Error: Missing or invalid Authorization header!");
+            throw new IllegalArgumentException("Invalid Token!");
+        }
+
+        String token = authHeader.substring(7);
+        String email = jwtUtil.extractUsername(token);
+        if (email == null) {
+            System.err.println("❌ API Error: Cannot extract email from token!");
+            throw new IllegalArgumentException("Invalid Token!");
+        }
+
+        return userRepository.findByEmail(email)
+                .orElseThrow(() -> new IllegalArgumentException("User not found!"));
+    }
+}
@@ -1,5 +1,6 @@
 package com.sondv.phone.controller;
 
+import com.sondv.phone.dto.CursorPage;
 import com.sondv.phone.dto.InventoryReportDTO;
 import com.sondv.phone.model.Inventory;
 import com.sondv.phone.model.InventoryLog;
@@ -7,6 +8,8 @@ import com.sondv.phone.model.User;
 import com.sondv.phone.repository.InventoryLogRepository;
 import com.sondv.phone.repository.InventoryRepository;
 import com.sondv.phone.repository.UserRepository;
+import com.sondv.phone.search.ProductSearchIndex;
+import com.sondv.phone.util.CursorUtil;
 import com.sondv.phone.service.InventoryService;
 import jakarta.transaction.Transactional;
 import lombok.RequiredArgsConstructor;
@@ -36,6 +39,7 @@ public class InventoryController {
     private final UserRepository userRepository;
     private final InventoryLogRepository inventoryLogRepository;
     private final InventoryRepository inventoryRepository;
+    private final ProductSearchIndex productSearchIndex;
 
     // Xem tồn kho
     @GetMapping("/{productId}")
@@ -60,28 +64,7 @@ public class InventoryController {
                 logs = inventoryLogRepository.findByTimestampBetween(startDate, endDate, pageable);
             }
 
-            // Chuyển đổi dữ liệu để trả về cả thông tin sản phẩm
-            Page<Map<String, Object>> response = logs.map(log -> {
-                Map<String, Object> logWithProduct = new HashMap<>();
-                logWithProduct.put("id", log.getId());
-                logWithProduct.put("oldQuantity", log.getOldQuantity());
-                logWithProduct.put("newQuantity", log.getNewQuantity());
-                logWithProduct.put("reason", log.getReason());
-                logWithProduct.put("userId", log.getUserId());
-                logWithProduct.put("timestamp", log.getTimestamp());
-
-                // Thêm thông tin sản phẩm nếu có
-                if (log.getProduct() != null) {
-                    logWithProduct.put("productId", log.getProduct().getId());
-                    logWithProduct.put("productName", log.getProduct().getName());
-                } else {
-                    logWithProduct.put("productId", "Không có ID");
-                    logWithProduct.put("productName", "Không xác định");
-                }
-
-                return logWithProduct;
-            });
-
+            Page<Map<String, Object>> response = logs.map(this::toLogResponse);
             return ResponseEntity.ok(response);
         } catch (Exception e) {
             System.out.println("❌ Lỗi khi lấy lịch sử tồn kho: " + e.getMessage());
@@ -89,16 +72,64 @@ public class InventoryController {
         }
     }
 
+    // Phân trang keyset theo (timestamp, id): bảng log tăng không giới hạn nên trang sâu vẫn rẻ như trang đầu
+    @GetMapping("/logs/cursor")
+    @PreAuthorize("hasAnyRole('ADMIN', 'STAFF')")
+    public ResponseEntity<CursorPage<Map<String, Object>>> getInventoryLogsAfter(
+            @RequestParam(required = false) Long productId,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime startDate,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime endDate,
+            @RequestParam(required = false) String after,
+            @RequestParam(defaultValue = "20") int size) {
+        CursorUtil.Cursor cursor = CursorUtil.decode(after);
+        List<InventoryLog> logs = inventoryLogRepository.findPageAfter(productId, startDate, endDate,
+                cursor != null ? cursor.keyAsDateTime() : null,
+                cursor != null ? cursor.id() : null,
+                CursorUtil.limitFor(size));
+        CursorPage<InventoryLog> page = CursorUtil.toPage(logs, size,
+                log -> CursorUtil.encode(log.getTimestamp(), log.getId()));
+        return ResponseEntity.ok(page.map(this::toLogResponse));
+    }
+
     @GetMapping("/report")
     @PreAuthorize("hasRole('ADMIN')")
     public ResponseEntity<Page<InventoryReportDTO>> getInventoryReport(
             @RequestParam(required = false) String searchKeyword,
             @RequestParam(required = false) String status,
             Pageable pageable) {
-        Page<InventoryReportDTO> report = inventoryRepository.findInventoryReport(searchKeyword, status, pageable);
+        Page<InventoryReportDTO> report;
+        if (searchKeyword != null && !searchKeyword.isBlank() && productSearchIndex.isReady()) {
+            List<Long> productIds = productSearchIndex.search(searchKeyword);
+            report = productIds.isEmpty()
+                    ? Page.empty(pageable)
+                    : inventoryRepository.findInventoryReportByProductIds(productIds, status, pageable);
+        } else {
+            report = inventoryRepository.findInventoryReport(searchKeyword, status, pageable);
+        }
         return ResponseEntity.ok(report);
     }
 
+    @GetMapping("/report/cursor")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<CursorPage<InventoryReportDTO>> getInventoryReportAfter(
+            @RequestParam(required = false) String searchKeyword,
+            @RequestParam(required = false) String status,
+            @RequestParam(required = false) String after,
+            @RequestParam(defaultValue = "20") int size) {
+        CursorUtil.Cursor cursor = CursorUtil.decode(after);
+        Long afterProductId = cursor != null ? cursor.id() : null;
+        List<InventoryReportDTO> rows;
+        if (searchKeyword != null && !searchKeyword.isBlank() && productSearchIndex.isReady()) {
+            List<Long> productIds = productSearchIndex.search(searchKeyword);
+            rows = productIds.isEmpty()
+                    ? List.of()
+                    : inventoryRepository.findInventoryReportByProductIdsAfter(productIds, status, afterProductId, CursorUtil.limitFor(size));
+        } else {
+            rows = inventoryRepository.findInventoryReportAfter(searchKeyword, status, afterProductId, CursorUtil.limitFor(size));
+        }
+        return ResponseEntity.ok(CursorUtil.toPage(rows, size, row -> CursorUtil.encode(null, row.getProductId())));
+    }
+
     @GetMapping("/summary")
     @PreAuthorize("hasRole('ADMIN')")
     public ResponseEntity<?> getInventorySummary() {
@@ -143,4 +174,26 @@ public class InventoryController {
 
     // Định nghĩa ErrorResponse như record
     record ErrorResponse(String error) {}
-}
\ No newline at end of file
+
+    // Chuyển đổi dữ liệu để trả về cả thông tin sản phẩm
+    private Map<String, Object> toLogResponse(InventoryLog log) {
+        Map<String, Object> logWithProduct = new HashMap<>();
+        logWithProduct.put("id", log.getId());
+        logWithProduct.put("oldQuantity", log.getOldQuantity());
+        logWithProduct.put("newQuantity", log.getNewQuantity());
+        logWithProduct.put("reason", log.getReason());
+        logWithProduct.put("userId", log.getUserId());
+        logWithProduct.put("timestamp", log.getTimestamp());
+
+        // Thêm thông tin sản phẩm nếu có
+        if (log.getProduct() != null) {
+            logWithProduct.put("productId", log.getProduct().getId());
+            logWithProduct.put("productName", log.getProduct().getName());
+        } else {
+            logWithProduct.put("productId", "Không có ID");
+            logWithProduct.put("productName", "Không xác định");
+        }
+
+        return logWithProduct;
+    }
+}
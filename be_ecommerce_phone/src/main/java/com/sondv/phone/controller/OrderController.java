@@ -1,12 +1,13 @@
 package com.sondv.phone.controller;
 
+import com.sondv.phone.dto.CursorPage;
 import com.sondv.phone.dto.OrderDetailResponse;
 import com.sondv.phone.dto.OrderRequest;
 import com.sondv.phone.dto.OrderResponse;
 import com.sondv.phone.model.*;
 import com.sondv.phone.repository.*;
-import com.sondv.phone.service.InventoryService;
 import com.sondv.phone.service.OrderService;
+import com.sondv.phone.util.CursorUtil;
 import lombok.RequiredArgsConstructor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -30,7 +31,6 @@ public class OrderController {
     private final ProductRepository productRepository;
     private final OrderDetailRepository orderDetailRepository;
     private final OrderService orderService;
-    private final InventoryService inventoryService;
 
     // Khai báo Logger
     private static final Logger logger = LoggerFactory.getLogger(OrderController.class);
@@ -66,6 +66,38 @@ public class OrderController {
         return ResponseEntity.ok(response);
     }
 
+    // Phân trang keyset theo (createdAt, id): khách hàng chỉ thấy đơn của mình, ADMIN/STAFF thấy tất cả
+    @GetMapping("/cursor")
+    @PreAuthorize("hasAnyAuthority('ROLE_CUSTOMER', 'ROLE_ADMIN', 'ROLE_STAFF')")
+    public ResponseEntity<?> getOrdersAfter(
+            @RequestParam(required = false) String after,
+            @RequestParam(defaultValue = "20") int size,
+            Authentication authentication) {
+        if (authentication == null || !authentication.isAuthenticated()) {
+            return ResponseEntity.status(401).body(Collections.singletonMap("message", "Chưa đăng nhập!"));
+        }
+
+        User user = (User) authentication.getPrincipal();
+        Optional<Customer> customer = customerRepository.findByUserId(user.getId());
+        Long customerId;
+        if (customer.isPresent()) {
+            customerId = customer.get().getId();
+        } else if (user.getRoles().stream().anyMatch(role -> role == RoleName.ADMIN || role == RoleName.STAFF)) {
+            customerId = null;
+        } else {
+            return ResponseEntity.status(403).body(Collections.singletonMap("message", "Không có quyền truy cập!"));
+        }
+
+        CursorUtil.Cursor cursor = CursorUtil.decode(after);
+        List<Order> orders = orderRepository.findPageAfter(customerId,
+                cursor != null ? cursor.keyAsDateTime() : null,
+                cursor != null ? cursor.id() : null,
+                CursorUtil.limitFor(size));
+        CursorPage<Order> page = CursorUtil.toPage(orders, size,
+                order -> CursorUtil.encode(order.getCreatedAt(), order.getId()));
+        return ResponseEntity.ok(page.map(this::mapToOrderResponse));
+    }
+
     @GetMapping("/{id}")
     @PreAuthorize("hasAnyAuthority('ROLE_CUSTOMER', 'ROLE_ADMIN', 'ROLE_STAFF')")
     public ResponseEntity<?> getOrderById(@PathVariable Long id, Authentication authentication) {
@@ -94,27 +126,14 @@ public class OrderController {
     @PutMapping("/{id}/status")
     @PreAuthorize("hasAnyAuthority('ROLE_ADMIN', 'ROLE_STAFF')")
     public ResponseEntity<Order> updateOrderStatus(@PathVariable Long id, @RequestBody String newStatus) {
-        Order order = orderRepository.findById(id)
-                .orElseThrow(() -> new RuntimeException("Không tìm thấy đơn hàng!"));
-
         OrderStatus status = OrderStatus.valueOf(newStatus.toUpperCase());
-
-        if (status == OrderStatus.COMPLETED) {
-            for (OrderDetail detail : order.getOrderDetails()) {
-                inventoryService.adjustInventory(detail.getProduct().getId(), -detail.getQuantity(), "Hoàn thành đơn hàng", null);
-            }
-        }
-
-        order.setStatus(status);
-        return ResponseEntity.ok(orderRepository.save(order));
+        return ResponseEntity.ok(orderService.updateStatus(id, status));
     }
 
     @DeleteMapping("/{id}")
     @PreAuthorize("hasAnyAuthority('ROLE_ADMIN', 'ROLE_STAFF')")
     public ResponseEntity<Void> deleteOrder(@PathVariable Long id) {
-        Order order = orderRepository.findById(id)
-                .orElseThrow(() -> new RuntimeException("Không tìm thấy đơn hàng!"));
-        orderRepository.delete(order);
+        orderService.deleteOrder(id);
         return ResponseEntity.noContent().build();
     }
 
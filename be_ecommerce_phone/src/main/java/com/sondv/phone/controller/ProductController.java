@@ -1,8 +1,14 @@
 package com.sondv.phone.controller;
 
+import com.sondv.phone.dto.CursorPage;
+import com.sondv.phone.dto.FacetedProductsDTO;
 import com.sondv.phone.dto.ProductDTO;
 import com.sondv.phone.dto.ProductImageDTO;
+import com.sondv.phone.dto.ProductSummaryDTO;
+import com.sondv.phone.dto.SuggestionDTO;
 import com.sondv.phone.model.*;
+import com.sondv.phone.search.FacetSelection;
+import com.sondv.phone.search.PriceBand;
 import com.sondv.phone.service.ProductService;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
@@ -19,6 +25,7 @@ import java.math.BigDecimal;
 import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Optional;
+import java.util.Set;
 import java.util.stream.Collectors;
 
 @RestController
@@ -29,29 +36,44 @@ public class ProductController {
     private final ProductService productService;
 
     @GetMapping
-    public ResponseEntity<Page<ProductDTO>> getAllProducts(
+    public ResponseEntity<Page<ProductSummaryDTO>> getAllProducts(
             @RequestParam(required = false, defaultValue = "") String searchKeyword,
             Pageable pageable) {
         return ResponseEntity.ok(productService.getAllProducts(searchKeyword, pageable));
     }
 
+    // Phân trang keyset: truyền nextCursor của trang trước vào "after"
+    @GetMapping("/cursor")
+    public ResponseEntity<CursorPage<ProductSummaryDTO>> getProductsAfter(
+            @RequestParam(required = false) String after,
+            @RequestParam(defaultValue = "20") int size) {
+        return ResponseEntity.ok(productService.getProductsAfter(after, size));
+    }
+
+    @GetMapping("/suggest")
+    public ResponseEntity<List<SuggestionDTO>> suggest(
+            @RequestParam(defaultValue = "") String q,
+            @RequestParam(defaultValue = "8") int limit) {
+        return ResponseEntity.ok(productService.suggest(q, limit));
+    }
+
     @GetMapping("/featured")
-    public ResponseEntity<List<ProductDTO>> getFeaturedProducts(@RequestParam(defaultValue = "5") int limit) {
+    public ResponseEntity<List<ProductSummaryDTO>> getFeaturedProducts(@RequestParam(defaultValue = "5") int limit) {
         return ResponseEntity.ok(productService.getFeaturedProducts());
     }
 
     @GetMapping("/newest")
-    public ResponseEntity<List<ProductDTO>> getNewestProducts(@RequestParam(defaultValue = "5") int limit) {
+    public ResponseEntity<List<ProductSummaryDTO>> getNewestProducts(@RequestParam(defaultValue = "5") int limit) {
         return ResponseEntity.ok(productService.getNewestProducts(limit));
     }
 
     @GetMapping("/bestselling")
-    public ResponseEntity<List<ProductDTO>> getBestSellingProducts(@RequestParam(defaultValue = "5") int limit) {
+    public ResponseEntity<List<ProductSummaryDTO>> getBestSellingProducts(@RequestParam(defaultValue = "5") int limit) {
         return ResponseEntity.ok(productService.getBestSellingProducts(limit));
     }
 
     @GetMapping("/filtered")
-    public ResponseEntity<Page<ProductDTO>> getFilteredProducts(
+    public ResponseEntity<Page<ProductSummaryDTO>> getFilteredProducts(
             @RequestParam(required = false) String searchKeyword,
             @RequestParam(required = false) BigDecimal minPrice,
             @RequestParam(required = false) BigDecimal maxPrice,
@@ -60,6 +82,17 @@ public class ProductController {
         return ResponseEntity.ok(productService.getFilteredProducts(searchKeyword, minPrice, maxPrice, sortBy, pageable));
     }
 
+    @GetMapping("/faceted")
+    public ResponseEntity<FacetedProductsDTO> getFacetedProducts(
+            @RequestParam(required = false) String searchKeyword,
+            @RequestParam(required = false) Set<Long> categoryIds,
+            @RequestParam(required = false) Set<Long> supplierIds,
+            @RequestParam(required = false) Set<PriceBand> priceBands,
+            Pageable pageable) {
+        FacetSelection selection = new FacetSelection(categoryIds, supplierIds, priceBands);
+        return ResponseEntity.ok(productService.getFacetedProducts(searchKeyword, selection, pageable));
+    }
+
     @GetMapping("/{id}")
     public ResponseEntity<ProductDTO> getProductById(@PathVariable Long id) {
         Optional<ProductDTO> productDTO = productService.getProductById(id);
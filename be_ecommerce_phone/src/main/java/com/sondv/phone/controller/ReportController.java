@@ -1,11 +1,24 @@
 package com.sondv.phone.controller;
 
+import com.sondv.phone.dto.ReportJobDTO;
+import com.sondv.phone.dto.ReportJobRequest;
+import com.sondv.phone.dto.TopSellingProductDTO;
+import com.sondv.phone.model.OrderStatus;
 import com.sondv.phone.model.Product;
+import com.sondv.phone.model.User;
+import com.sondv.phone.report.ReportJob;
+import com.sondv.phone.report.ReportJobService;
+import com.sondv.phone.report.ReportSpec;
 import com.sondv.phone.service.ReportService;
 import lombok.RequiredArgsConstructor;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.security.core.Authentication;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
@@ -16,7 +29,10 @@ import java.util.Map;
 @RequestMapping("/api/reports")
 @RequiredArgsConstructor
 public class ReportController {
+    private static final String EXCEL_CONTENT_TYPE = "application/vnd.openxmlformats-officedocument.spreadsheetml.sheet";
+
     private final ReportService reportService;
+    private final ReportJobService reportJobService;
 
     @PreAuthorize("hasAuthority('ADMIN')")
     @GetMapping("/revenue")
@@ -28,7 +44,7 @@ public class ReportController {
 
     @PreAuthorize("hasAuthority('ADMIN')")
     @GetMapping("/top-products")
-    public ResponseEntity<List<Map<String, Object>>> getTopSellingProducts(
+    public ResponseEntity<List<TopSellingProductDTO>> getTopSellingProducts(
             @RequestParam LocalDateTime startDate,
             @RequestParam LocalDateTime endDate,
             @RequestParam(defaultValue = "5") int limit) {
@@ -61,4 +77,59 @@ public class ReportController {
             return ResponseEntity.internalServerError().body(null);
         }
     }
+
+    // Xuất toàn bộ đơn hàng: workbook được ghi thẳng ra response, không dựng byte[] trong bộ nhớ
+    @PreAuthorize("hasAuthority('ADMIN')")
+    @GetMapping("/export/orders")
+    public ResponseEntity<StreamingResponseBody> exportOrders(
+            @RequestParam LocalDateTime startDate,
+            @RequestParam LocalDateTime endDate,
+            @RequestParam(required = false) OrderStatus status) {
+        StreamingResponseBody body = out -> reportService.exportOrders(startDate, endDate, status, out);
+        return excelAttachment("Orders_Report.xlsx", body);
+    }
+
+    @PreAuthorize("hasAuthority('ADMIN')")
+    @GetMapping("/export/order-lines")
+    public ResponseEntity<StreamingResponseBody> exportOrderLines(
+            @RequestParam LocalDateTime startDate,
+            @RequestParam LocalDateTime endDate,
+            @RequestParam(required = false) OrderStatus status) {
+        StreamingResponseBody body = out -> reportService.exportOrderLines(startDate, endDate, status, out);
+        return excelAttachment("Order_Lines_Report.xlsx", body);
+    }
+
+    // Báo cáo nặng chạy nền: gửi spec, nhận job id, chờ thông báo WebSocket (type=report) hoặc hỏi trạng thái, rồi tải file
+    @PreAuthorize("hasAuthority('ADMIN')")
+    @PostMapping("/jobs")
+    public ResponseEntity<ReportJobDTO> submitReportJob(@RequestBody ReportJobRequest request, Authentication authentication) {
+        String requestedBy = authentication != null && authentication.getPrincipal() instanceof User user ? user.getEmail() : null;
+        ReportJob job = reportJobService.submit(
+                new ReportSpec(request.getType(), request.getStartDate(), request.getEndDate(), request.getStatus()), requestedBy);
+        return ResponseEntity.accepted().body(ReportJobDTO.from(job));
+    }
+
+    @PreAuthorize("hasAuthority('ADMIN')")
+    @GetMapping("/jobs/{id}")
+    public ResponseEntity<ReportJobDTO> getReportJob(@PathVariable String id) {
+        return ResponseEntity.ok(ReportJobDTO.from(reportJobService.getJob(id)));
+    }
+
+    @PreAuthorize("hasAuthority('ADMIN')")
+    @GetMapping("/jobs/{id}/download")
+    public ResponseEntity<Resource> downloadReportJob(@PathVariable String id) {
+        ReportJob job = reportJobService.getJob(id);
+        Resource file = new FileSystemResource(reportJobService.getResult(id));
+        return ResponseEntity.ok()
+                .header("Content-Disposition", "attachment; filename=" + job.getSpec().type().getFilename())
+                .contentType(MediaType.parseMediaType(EXCEL_CONTENT_TYPE))
+                .body(file);
+    }
+
+    private static ResponseEntity<StreamingResponseBody> excelAttachment(String filename, StreamingResponseBody body) {
+        return ResponseEntity.ok()
+                .header("Content-Disposition", "attachment; filename=" + filename)
+                .contentType(MediaType.parseMediaType(EXCEL_CONTENT_TYPE))
+                .body(body);
+    }
 }
\ No newline at end of file
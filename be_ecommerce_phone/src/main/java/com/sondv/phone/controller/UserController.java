@@ -1,13 +1,19 @@
 package com.sondv.phone.controller;
 
+import com.sondv.phone.dto.CursorPage;
 import com.sondv.phone.dto.UpdateUserRequestDTO;
 import com.sondv.phone.dto.UserResponseDTO;
+import com.sondv.phone.event.UserChatStateChangedEvent;
+import com.sondv.phone.exception.ApiException;
 import com.sondv.phone.model.Customer;
+import com.sondv.phone.model.RoleName;
 import com.sondv.phone.model.User;
 import com.sondv.phone.repository.CustomerRepository;
 import com.sondv.phone.repository.UserRepository;
+import com.sondv.phone.util.CursorUtil;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.http.ResponseEntity;
@@ -19,8 +25,10 @@ import org.springframework.web.bind.annotation.*;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import java.security.Principal;
+import java.time.LocalDateTime;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 import java.util.stream.Collectors;
 
 @RestController
@@ -30,6 +38,7 @@ public class UserController {
 
     private final UserRepository userRepository;
     private final CustomerRepository customerRepository;
+    private final ApplicationEventPublisher eventPublisher;
     private static final Logger logger = LoggerFactory.getLogger(UserController.class);
 
     @GetMapping("/me")
@@ -94,6 +103,20 @@ public class UserController {
         return ResponseEntity.ok(userDTOs);
     }
 
+    // Phân trang keyset: truyền nextCursor của trang trước vào "after"
+    @GetMapping("/cursor")
+    @PreAuthorize("hasAuthority('ROLE_ADMIN')")
+    public ResponseEntity<CursorPage<UserResponseDTO>> getUsersAfter(
+            @RequestParam(required = false) String after,
+            @RequestParam(defaultValue = "20") int size) {
+        CursorUtil.Cursor cursor = CursorUtil.decode(after);
+        List<User> users = cursor == null
+                ? userRepository.findAllByOrderByIdDesc(CursorUtil.limitFor(size))
+                : userRepository.findByIdLessThanOrderByIdDesc(cursor.id(), CursorUtil.limitFor(size));
+        CursorPage<User> page = CursorUtil.toPage(users, size, user -> CursorUtil.encode(null, user.getId()));
+        return ResponseEntity.ok(page.map(this::mapToUserResponseDTO));
+    }
+
     // Lấy danh sách tất cả khách hàng (chỉ dành cho ADMIN)
     @GetMapping("/customers")
     @PreAuthorize("hasAuthority('ROLE_ADMIN')")
@@ -112,6 +135,34 @@ public class UserController {
         return ResponseEntity.noContent().build();
     }
 
+    // Cập nhật vai trò người dùng (chỉ dành cho ADMIN); session chat đang mở nhận vai trò mới ngay
+    @PutMapping("/{id}/roles")
+    @PreAuthorize("hasAuthority('ROLE_ADMIN')")
+    public ResponseEntity<UserResponseDTO> updateRoles(@PathVariable Long id, @RequestBody Set<RoleName> roles) {
+        if (roles == null || roles.isEmpty()) {
+            throw new ApiException(400, "Người dùng phải có ít nhất một vai trò!");
+        }
+        User user = userRepository.findById(id)
+                .orElseThrow(() -> new RuntimeException("Người dùng không tồn tại!"));
+        user.getRoles().clear();
+        user.getRoles().addAll(roles);
+        userRepository.save(user);
+        eventPublisher.publishEvent(UserChatStateChangedEvent.of(user));
+        return ResponseEntity.ok(mapToUserResponseDTO(user));
+    }
+
+    // Khóa chat trong số phút chỉ định, 0 để mở khóa (chỉ dành cho ADMIN)
+    @PutMapping("/{id}/chat-ban")
+    @PreAuthorize("hasAuthority('ROLE_ADMIN')")
+    public ResponseEntity<UserResponseDTO> updateChatBan(@PathVariable Long id, @RequestParam(defaultValue = "0") int minutes) {
+        User user = userRepository.findById(id)
+                .orElseThrow(() -> new RuntimeException("Người dùng không tồn tại!"));
+        user.setChatBanUntil(minutes > 0 ? LocalDateTime.now().plusMinutes(minutes) : null);
+        userRepository.save(user);
+        eventPublisher.publishEvent(UserChatStateChangedEvent.of(user));
+        return ResponseEntity.ok(mapToUserResponseDTO(user));
+    }
+
     // Cập nhật điểm tích lũy khách hàng (chỉ dành cho ADMIN)
     @PutMapping("/customers/{id}/loyalty-points")
     @PreAuthorize("hasAuthority('ROLE_ADMIN')")
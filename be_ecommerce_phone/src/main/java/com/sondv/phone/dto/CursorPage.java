@@ -0,0 +1,20 @@
+package com.sondv.phone.dto;
+
+import lombok.*;
+
+import java.util.List;
+import java.util.function.Function;
+
+// Một trang theo kiểu keyset: không có tổng số bản ghi, chỉ có cursor để lấy trang tiếp theo
+@Getter
+@AllArgsConstructor
+public class CursorPage<T> {
+    private List<T> content;
+    private String nextCursor;
+    private boolean hasNext;
+
+    public <R> CursorPage<R> map(Function<? super T, ? extends R> mapper) {
+        List<R> mapped = content.stream().<R>map(mapper).toList();
+        return new CursorPage<>(mapped, nextCursor, hasNext);
+    }
+}
@@ -0,0 +1,13 @@
+package com.sondv.phone.dto;
+
+import lombok.*;
+
+// Một giá trị facet (danh mục, nhà cung cấp hoặc khoảng giá) kèm số sản phẩm khớp
+@Getter
+@AllArgsConstructor
+public class FacetCountDTO {
+    private String value;
+    private String label;
+    private int count;
+    private boolean selected;
+}
@@ -0,0 +1,16 @@
+package com.sondv.phone.dto;
+
+import lombok.*;
+import org.springframework.data.domain.Page;
+
+import java.util.List;
+
+// Kết quả tìm kiếm có facet: trang sản phẩm và số lượng theo từng danh mục, nhà cung cấp, khoảng giá
+@Getter
+@AllArgsConstructor
+public class FacetedProductsDTO {
+    private Page<ProductSummaryDTO> products;
+    private List<FacetCountDTO> categories;
+    private List<FacetCountDTO> suppliers;
+    private List<FacetCountDTO> priceBands;
+}
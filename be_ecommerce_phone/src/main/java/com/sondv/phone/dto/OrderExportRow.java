@@ -0,0 +1,19 @@
+package com.sondv.phone.dto;
+
+import com.sondv.phone.model.OrderStatus;
+import lombok.*;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+// Một dòng của file xuất đơn hàng, đọc thẳng từ truy vấn projection (không nạp entity)
+@Getter
+@AllArgsConstructor
+public class OrderExportRow {
+    private Long orderId;
+    private LocalDateTime createdAt;
+    private OrderStatus status;
+    private String customerName;
+    private String customerEmail;
+    private BigDecimal totalPrice;
+}
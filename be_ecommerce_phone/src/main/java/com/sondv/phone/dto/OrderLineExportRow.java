@@ -0,0 +1,20 @@
+package com.sondv.phone.dto;
+
+import com.sondv.phone.model.OrderStatus;
+import lombok.*;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+// Một dòng chi tiết đơn hàng trong file xuất
+@Getter
+@AllArgsConstructor
+public class OrderLineExportRow {
+    private Long orderId;
+    private LocalDateTime createdAt;
+    private OrderStatus status;
+    private Long productId;
+    private String productName;
+    private Integer quantity;
+    private BigDecimal price;
+}
@@ -0,0 +1,12 @@
+package com.sondv.phone.dto;
+
+import com.sondv.phone.model.OrderStatus;
+import lombok.*;
+
+@Getter
+@Setter
+@AllArgsConstructor
+public class OrderStatusCountDTO {
+    private OrderStatus status;
+    private Long count;
+}
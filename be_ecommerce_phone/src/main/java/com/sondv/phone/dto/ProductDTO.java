@@ -3,7 +3,6 @@ package com.sondv.phone.dto;
 import com.fasterxml.jackson.annotation.JsonFormat;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import com.sondv.phone.model.Inventory;
-import com.sondv.phone.model.InventoryLog;
 import lombok.*;
 
 import java.math.BigDecimal;
@@ -39,6 +38,6 @@ public class ProductDTO {
     private SupplierDTO supplier;
     private List<ProductImageDTO> images;
 
+    // Không kèm lịch sử tồn kho: DTO này được cache và log tăng không giới hạn, xem /api/inventory/logs (có phân trang)
     private Inventory inventory;
-    private List<InventoryLog> inventoryLogs;
 }
\ No newline at end of file
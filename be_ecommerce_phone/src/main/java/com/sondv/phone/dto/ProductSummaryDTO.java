@@ -0,0 +1,40 @@
+package com.sondv.phone.dto;
+
+import com.fasterxml.jackson.annotation.JsonFormat;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.*;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.List;
+
+// Dữ liệu sản phẩm cho các trang danh sách: không kèm tồn kho và lịch sử tồn kho
+@Getter
+@Setter
+@ToString
+@EqualsAndHashCode(of = "id")
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+public class ProductSummaryDTO {
+    private Long id;
+    private String name;
+    private String description;
+    private BigDecimal costPrice;
+    private BigDecimal sellingPrice;
+    private BigDecimal discountedPrice;
+
+    @JsonFormat(shape = JsonFormat.Shape.STRING, pattern = "yyyy-MM-dd'T'HH:mm:ss")
+    private LocalDateTime discountStartDate;
+
+    @JsonFormat(shape = JsonFormat.Shape.STRING, pattern = "yyyy-MM-dd'T'HH:mm:ss")
+    private LocalDateTime discountEndDate;
+
+    @JsonProperty("isFeatured")
+    private boolean isFeatured;
+    private Integer stock;
+    private Integer soldQuantity;
+    private CategoryDTO category;
+    private SupplierDTO supplier;
+    private List<ProductImageDTO> images;
+}
@@ -0,0 +1,26 @@
+package com.sondv.phone.dto;
+
+import com.sondv.phone.report.ReportJob;
+import com.sondv.phone.report.ReportType;
+import lombok.*;
+
+import java.time.LocalDateTime;
+
+@Getter
+@AllArgsConstructor
+public class ReportJobDTO {
+    private String id;
+    private ReportType type;
+    private ReportJob.Status status;
+    private LocalDateTime createdAt;
+    private LocalDateTime completedAt;
+    private LocalDateTime expiresAt;
+    private String downloadUrl;
+    private String error;
+
+    public static ReportJobDTO from(ReportJob job) {
+        String downloadUrl = job.getStatus() == ReportJob.Status.DONE ? "/api/reports/jobs/" + job.getId() + "/download" : null;
+        return new ReportJobDTO(job.getId(), job.getSpec().type(), job.getStatus(), job.getCreatedAt(),
+                job.getCompletedAt(), job.getExpiresAt(), downloadUrl, job.getError());
+    }
+}
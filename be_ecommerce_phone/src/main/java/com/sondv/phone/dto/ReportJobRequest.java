@@ -0,0 +1,15 @@
+package com.sondv.phone.dto;
+
+import com.sondv.phone.model.OrderStatus;
+import com.sondv.phone.report.ReportType;
+import lombok.Data;
+
+import java.time.LocalDateTime;
+
+@Data
+public class ReportJobRequest {
+    private ReportType type;
+    private LocalDateTime startDate;
+    private LocalDateTime endDate;
+    private OrderStatus status; // Không bắt buộc, chỉ dùng cho ORDERS / ORDER_LINES
+}
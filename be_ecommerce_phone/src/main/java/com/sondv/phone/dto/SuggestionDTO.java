@@ -0,0 +1,12 @@
+package com.sondv.phone.dto;
+
+import lombok.*;
+
+// Gợi ý cho ô tìm kiếm: chỉ id, tên và loại (PRODUCT / CATEGORY)
+@Getter
+@AllArgsConstructor
+public class SuggestionDTO {
+    private Long id;
+    private String name;
+    private String type;
+}
@@ -0,0 +1,15 @@
+package com.sondv.phone.dto;
+
+import lombok.*;
+
+import java.math.BigDecimal;
+
+@Getter
+@Setter
+@AllArgsConstructor
+public class TopSellingProductDTO {
+    private Long productId;
+    private String name;
+    private Long quantitySold;
+    private BigDecimal revenue;
+}
@@ -0,0 +1,5 @@
+package com.sondv.phone.event;
+
+// Sự kiện phát ra khi một đơn hàng mới được tạo (đã trừ kho)
+public record OrderPlacedEvent(Long orderId) {
+}
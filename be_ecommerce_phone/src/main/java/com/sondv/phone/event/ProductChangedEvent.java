@@ -0,0 +1,42 @@
+package com.sondv.phone.event;
+
+import java.util.Collection;
+import java.util.Set;
+
+// Sự kiện phát ra sau mỗi lần thay đổi sản phẩm; productIds = null nghĩa là áp dụng cho toàn bộ sản phẩm
+public record ProductChangedEvent(Set<Long> productIds, ChangeType type) {
+
+    public enum ChangeType {
+        UPDATED,    // Thay đổi thông tin/giá/ảnh sản phẩm
+        STOCK,      // Chỉ thay đổi tồn kho
+        DELETED     // Sản phẩm bị xóa
+    }
+
+    public static ProductChangedEvent updated(Long productId) {
+        return new ProductChangedEvent(Set.of(productId), ChangeType.UPDATED);
+    }
+
+    public static ProductChangedEvent updated(Collection<Long> productIds) {
+        return new ProductChangedEvent(Set.copyOf(productIds), ChangeType.UPDATED);
+    }
+
+    public static ProductChangedEvent stockChanged(Long productId) {
+        return new ProductChangedEvent(Set.of(productId), ChangeType.STOCK);
+    }
+
+    public static ProductChangedEvent stockChanged(Collection<Long> productIds) {
+        return new ProductChangedEvent(Set.copyOf(productIds), ChangeType.STOCK);
+    }
+
+    public static ProductChangedEvent deleted(Long productId) {
+        return new ProductChangedEvent(Set.of(productId), ChangeType.DELETED);
+    }
+
+    public static ProductChangedEvent all() {
+        return new ProductChangedEvent(null, ChangeType.UPDATED);
+    }
+
+    public boolean isAll() {
+        return productIds == null;
+    }
+}
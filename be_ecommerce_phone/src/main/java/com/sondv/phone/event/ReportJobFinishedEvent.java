@@ -0,0 +1,7 @@
+package com.sondv.phone.event;
+
+import java.util.Set;
+
+// Sự kiện phát ra khi một job xuất báo cáo chạy xong (thành công hoặc lỗi); recipients là email những người đang chờ
+public record ReportJobFinishedEvent(String jobId, String status, Set<String> recipients) {
+}
@@ -0,0 +1,15 @@
+package com.sondv.phone.event;
+
+import com.sondv.phone.model.RoleName;
+import com.sondv.phone.model.User;
+
+import java.time.LocalDateTime;
+import java.util.Set;
+
+// Sự kiện phát ra khi vai trò hoặc thời hạn khóa chat của user thay đổi, để cập nhật các session chat đang mở
+public record UserChatStateChangedEvent(Long userId, String email, Set<RoleName> roles, LocalDateTime chatBanUntil) {
+
+    public static UserChatStateChangedEvent of(User user) {
+        return new UserChatStateChangedEvent(user.getId(), user.getEmail(), Set.copyOf(user.getRoles()), user.getChatBanUntil());
+    }
+}
@@ -0,0 +1,32 @@
+package com.sondv.phone.model;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+
+// Số liệu bán hàng cộng dồn theo ngày cho dashboard, cập nhật tăng dần khi có đơn mới / đơn bị hủy / người dùng đăng ký
+@Entity
+@Table(name = "daily_sales_rollup")
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+public class DailySalesRollup {
+    @Id
+    @Column(name = "rollup_date")
+    private LocalDate date;
+
+    @Column(nullable = false, precision = 19, scale = 2)
+    private BigDecimal revenue = BigDecimal.ZERO;
+
+    @Column(nullable = false)
+    private long orderCount;
+
+    @Column(nullable = false)
+    private long itemsSold;
+
+    @Column(nullable = false)
+    private long newUsers;
+}
@@ -8,7 +8,10 @@ import lombok.*;
 import java.time.LocalDateTime;
 
 @Entity
-@Table(name = "inventory_logs")
+@Table(name = "inventory_logs", indexes = {
+        @Index(name = "idx_inventory_logs_timestamp_id", columnList = "timestamp, id"),
+        @Index(name = "idx_inventory_logs_product_timestamp_id", columnList = "product_id, timestamp, id")
+})
 @Getter
 @Setter
 @NoArgsConstructor
@@ -30,6 +33,10 @@ public class InventoryLog {
     @Column(nullable = false)
     private Long userId; // Người thực hiện thay đổi
 
+    // Id do InventoryJournal sinh ra, dùng để bỏ qua bản ghi trùng khi phát lại WAL
+    @Column(name = "journal_id", unique = true, length = 36)
+    private String journalId;
+
     @JsonFormat(shape = JsonFormat.Shape.STRING, pattern = "yyyy-MM-dd'T'HH:mm:ss")
     private LocalDateTime timestamp = LocalDateTime.now();
 }
\ No newline at end of file
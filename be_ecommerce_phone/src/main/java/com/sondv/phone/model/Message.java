@@ -1,15 +1,22 @@
 package com.sondv.phone.model;
 
+import com.fasterxml.jackson.annotation.JsonFormat;
 import jakarta.persistence.*;
 import lombok.Data;
 import java.time.LocalDateTime;
 
 @Entity
-@Table(name = "messages")
+// Mỗi cuộc hội thoại là giữa một khách hàng và nhóm hỗ trợ: conversationId = id khách hàng,
+// lịch sử được phân trang theo (conversation_id, id) mới nhất trước
+@Table(name = "messages", indexes = {
+        @Index(name = "idx_messages_conversation_id_id", columnList = "conversation_id, id")
+})
 @Data
 public class Message {
+    // Id kiểu Snowflake sinh trong bộ nhớ (SnowflakeIdGenerator) trước khi ghi DB theo lô.
+    // Trả về JSON dạng chuỗi vì id vượt quá số nguyên an toàn của JavaScript (2^53)
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @JsonFormat(shape = JsonFormat.Shape.STRING)
     private Long id;
 
     @Column(nullable = false)
@@ -18,6 +25,9 @@ public class Message {
     @Column(nullable = false)
     private Long receiverId;
 
+    // Có thể null với dữ liệu cũ cho tới khi MessageService điền xong lúc khởi động
+    private Long conversationId;
+
     @Column(nullable = false, columnDefinition = "TEXT")
     private String content;
 
@@ -3,13 +3,18 @@ package com.sondv.phone.model;
 import com.fasterxml.jackson.annotation.JsonManagedReference;
 import jakarta.persistence.*;
 import lombok.*;
+import org.hibernate.annotations.BatchSize;
 
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
 import java.util.List;
 
 @Entity
-@Table(name = "orders")
+@Table(name = "orders", indexes = {
+        @Index(name = "idx_orders_created_at_id", columnList = "created_at, id"),
+        @Index(name = "idx_orders_customer_created_at_id", columnList = "customer_id, created_at, id"),
+        @Index(name = "idx_orders_status_created_at", columnList = "status, created_at")
+})
 @Getter
 @Setter
 @NoArgsConstructor
@@ -35,6 +40,7 @@ public class Order {
 
     @OneToMany(mappedBy = "order", cascade = CascadeType.ALL, orphanRemoval = true)
     @JsonManagedReference
+    @BatchSize(size = 50)
     private List<OrderDetail> orderDetails;
 
     @ManyToOne
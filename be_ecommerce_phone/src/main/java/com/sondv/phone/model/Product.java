@@ -6,12 +6,17 @@ import com.fasterxml.jackson.annotation.JsonFormat;
 import jakarta.persistence.*;
 import jakarta.validation.constraints.Min;
 import lombok.*;
+import org.hibernate.annotations.BatchSize;
 
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
 import java.util.List;
 
-@Table(name = "products")
+@Table(name = "products", indexes = {
+        @Index(name = "idx_products_effective_price", columnList = "effective_price"),
+        @Index(name = "idx_products_discount_start_date", columnList = "discount_start_date"),
+        @Index(name = "idx_products_discount_end_date", columnList = "discount_end_date")
+})
 @Getter
 @Setter
 @Entity
@@ -38,6 +43,10 @@ public class Product {
     @JsonFormat(shape = JsonFormat.Shape.STRING, pattern = "yyyy-MM-dd'T'HH:mm:ss")
     private LocalDateTime discountEndDate;
 
+    // Giá đang áp dụng, được tính lại mỗi khi lưu và khi tới mốc bắt đầu/kết thúc giảm giá
+    @Column(name = "effective_price")
+    private BigDecimal effectivePrice;
+
     @Column(name = "is_featured", nullable = false, columnDefinition = "BOOLEAN DEFAULT FALSE")
     private boolean isFeatured = false;
 
@@ -52,8 +61,10 @@ public class Product {
     @JsonBackReference
     private Category category;
 
+    // Nạp ảnh theo lô (IN) cho cả trang sản phẩm thay vì mỗi sản phẩm một query
     @OneToMany(mappedBy = "product", cascade = CascadeType.ALL, fetch = FetchType.LAZY)
     @JsonManagedReference
+    @BatchSize(size = 50)
     private List<ProductImage> images;
 
     @ManyToOne(fetch = FetchType.LAZY)
@@ -68,4 +79,22 @@ public class Product {
     @OneToMany(mappedBy = "product", cascade = CascadeType.ALL, fetch = FetchType.LAZY)
     @JsonManagedReference("product-inventoryLogs")
     private List<InventoryLog> inventoryLogs;
-}
\ No newline at end of file
+
+    @PrePersist
+    @PreUpdate
+    protected void updateEffectivePrice() {
+        this.effectivePrice = resolvePrice(LocalDateTime.now());
+    }
+
+    // Giá hiện tại: discountedPrice nếu đang trong thời gian giảm giá, ngược lại là sellingPrice
+    public BigDecimal resolvePrice(LocalDateTime now) {
+        if (discountedPrice != null &&
+                discountStartDate != null &&
+                discountEndDate != null &&
+                !now.isBefore(discountStartDate) &&
+                !now.isAfter(discountEndDate)) {
+            return discountedPrice;
+        }
+        return sellingPrice;
+    }
+}
@@ -0,0 +1,78 @@
+package com.sondv.phone.ratelimit;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.Optional;
+
+// Thời hạn khóa dùng chung cho cả cụm: key ban:{subject} trong Redis tự hết hạn cùng lượt khóa,
+// phía trước là near-cache Caffeine (TTL ngắn) để đọc lặp lại không tốn round trip.
+// Redis là nguồn có hiệu lực ngay; DB chỉ là bản ghi lâu dài và có thể được ghi chậm hơn.
+@Component
+public class BanStore {
+
+    private static final Logger logger = LoggerFactory.getLogger(BanStore.class);
+    private static final String PREFIX = "ban:";
+
+    private final RedisTemplate<String, String> redisTemplate;
+    private final Cache<String, Optional<LocalDateTime>> nearCache;
+
+    public BanStore(RedisTemplate<String, String> redisTemplate,
+                    @Value("${ratelimit.ban.near-cache-size:10000}") long nearCacheSize,
+                    @Value("${ratelimit.ban.near-cache-ttl:30s}") Duration nearCacheTtl) {
+        this.redisTemplate = redisTemplate;
+        this.nearCache = Caffeine.newBuilder()
+                .maximumSize(nearCacheSize)
+                .expireAfterWrite(nearCacheTtl)
+                .build();
+    }
+
+    // until null hoặc đã qua nghĩa là gỡ khóa
+    public void set(String subject, LocalDateTime until) {
+        long ttlMillis = until == null ? 0 : Duration.between(LocalDateTime.now(), until).toMillis();
+        nearCache.put(subject, ttlMillis > 0 ? Optional.of(until) : Optional.empty());
+        try {
+            if (ttlMillis > 0) {
+                redisTemplate.opsForValue().set(PREFIX + subject, String.valueOf(toEpochMillis(until)), Duration.ofMillis(ttlMillis));
+            } else {
+                redisTemplate.delete(PREFIX + subject);
+            }
+        } catch (Exception e) {
+            logger.warn("Không ghi được thời hạn khóa của {} vào Redis: {}", subject, e.getMessage());
+        }
+    }
+
+    // null nếu không bị khóa (hoặc không đọc được Redis)
+    public LocalDateTime bannedUntil(String subject) {
+        Optional<LocalDateTime> until = nearCache.get(subject, this::load);
+        if (until == null || until.isEmpty() || !until.get().isAfter(LocalDateTime.now())) {
+            return null;
+        }
+        return until.get();
+    }
+
+    // Trả về null khi Redis lỗi để Caffeine không lưu kết quả, lần sau đọc lại
+    private Optional<LocalDateTime> load(String subject) {
+        try {
+            String value = redisTemplate.opsForValue().get(PREFIX + subject);
+            return value == null ? Optional.empty()
+                    : Optional.of(LocalDateTime.ofInstant(Instant.ofEpochMilli(Long.parseLong(value)), ZoneId.systemDefault()));
+        } catch (Exception e) {
+            logger.warn("Không đọc được thời hạn khóa của {} từ Redis: {}", subject, e.getMessage());
+            return null;
+        }
+    }
+
+    private static long toEpochMillis(LocalDateTime time) {
+        return time.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+}
@@ -0,0 +1,187 @@
+package com.sondv.phone.ratelimit;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.sondv.phone.ratelimit.RateLimitProperties.Local;
+import com.sondv.phone.ratelimit.RateLimitProperties.Policy;
+import com.sondv.phone.ratelimit.TokenBucketLimiter.Decision;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+// Giới hạn request 2 tầng: mỗi node lấy token từ bucket chung trong Redis theo lô (lease) rồi tiêu dần trong bộ nhớ,
+// nên đa số request được quyết định tại chỗ và chỉ tốn một round trip Redis cho mỗi lô.
+// Tổng số token vẫn do Redis cấp nên giới hạn giữ đúng cho cả cụm. Lease chưa dùng hết sau lease-ttl không dùng tại chỗ nữa,
+// phần còn lại được trả về Redis ở lần lấy lô kế tiếp, nên key thưa request không đốt cả lô cho vài request.
+// Redis lỗi thì mỗi node tự giới hạn bằng token bucket cục bộ (cùng limit/window) cho tới khi Redis dùng lại được.
+@Component
+public class HybridRateLimiter {
+
+    private static final Logger logger = LoggerFactory.getLogger(HybridRateLimiter.class);
+
+    private final TokenBucketLimiter tokenBucketLimiter;
+    private final Local config;
+    private final Cache<String, LocalBucket> buckets;
+    private volatile long redisRetryAt = 0;
+
+    public HybridRateLimiter(TokenBucketLimiter tokenBucketLimiter, RateLimitProperties properties) {
+        this.tokenBucketLimiter = tokenBucketLimiter;
+        this.config = properties.getLocal();
+        // Bucket cục bộ chỉ có ý nghĩa trong một window: key không dùng lâu hơn thì bỏ
+        Duration idle = properties.getRoutes().stream()
+                .map(Policy::getWindow)
+                .reduce(properties.getDefaultPolicy().getWindow(), (a, b) -> a.compareTo(b) >= 0 ? a : b);
+        this.buckets = Caffeine.newBuilder()
+                .maximumSize(config.getMaxKeys())
+                .expireAfterAccess(idle)
+                .build();
+    }
+
+    public Decision tryAcquire(String key, Policy policy) {
+        LocalBucket bucket = buckets.get(key, k -> new LocalBucket());
+        long now;
+        while (true) {
+            now = System.currentTimeMillis();
+            Decision local = bucket.takeLeased(now);
+            if (local != null) {
+                return local;
+            }
+            if (now < redisRetryAt) {
+                return bucket.takeFallback(policy, now);
+            }
+            // Mỗi key chỉ một request gọi Redis lấy lô mới, các request khác chờ lô đó thay vì cùng gọi Redis
+            if (bucket.claimRefill()) {
+                break;
+            }
+            if (!bucket.awaitRefill(config.getRefillWait().toMillis())) {
+                return bucket.takeFallback(policy, now);
+            }
+        }
+
+        long returned = bucket.takeExpired();
+        try {
+            Decision grant = tokenBucketLimiter.acquire(key, policy.getLimit(), policy.getWindow(), leaseSize(policy), returned);
+            return bucket.lease(grant, now, now + config.getLeaseTtl().toMillis());
+        } catch (Exception e) {
+            // Chưa trả được thì giữ lại, trả ở lần gọi Redis thành công sau
+            bucket.keepExpired(returned);
+            if (redisRetryAt <= now) {
+                logger.warn("Redis không dùng được cho giới hạn request, chỉ giới hạn cục bộ trong {}: {}",
+                        config.getRedisRetryBackoff(), e.getMessage());
+            }
+            redisRetryAt = now + config.getRedisRetryBackoff().toMillis();
+            return bucket.takeFallback(policy, now);
+        } finally {
+            bucket.finishRefill();
+        }
+    }
+
+    private long leaseSize(Policy policy) {
+        if (!config.isEnabled()) {
+            return 1;
+        }
+        return Math.max(1, Math.min(config.getMaxLease(), (long) (policy.getLimit() * config.getLeaseFraction())));
+    }
+
+    // Trạng thái của một key trên node này; các request cùng key chỉ khóa trên chính object này
+    private static final class LocalBucket {
+        // Token đã lấy từ Redis, còn dùng được tới leaseExpiresAt
+        private long leased = 0;
+        private long leaseExpiresAt = 0;
+        // Token của lô đã hết hạn mà chưa dùng, chờ trả về Redis
+        private long expired = 0;
+        private long sharedRemaining = 0;
+        // Redis đã từ chối: từ chối tại chỗ tới blockedUntil, không gọi Redis lại
+        private long blockedUntil = 0;
+        // Token bucket cục bộ, chỉ dùng khi Redis lỗi
+        private double fallbackTokens = -1;
+        private long fallbackRefilledAt = 0;
+        // true khi đang có một request gọi Redis lấy lô mới cho key này
+        private boolean refilling = false;
+
+        synchronized Decision takeLeased(long now) {
+            if (now < blockedUntil) {
+                return new Decision(0, 0, blockedUntil - now);
+            }
+            if (leased > 0 && now < leaseExpiresAt) {
+                leased--;
+                return new Decision(1, leased + sharedRemaining, 0);
+            }
+            expired += leased;
+            leased = 0;
+            return null;
+        }
+
+        // Gọi khi đang giữ lượt lấy lô mới (refilling)
+        synchronized long takeExpired() {
+            long tokens = expired;
+            expired = 0;
+            return tokens;
+        }
+
+        synchronized void keepExpired(long tokens) {
+            expired += tokens;
+        }
+
+        synchronized boolean claimRefill() {
+            if (refilling) {
+                return false;
+            }
+            refilling = true;
+            return true;
+        }
+
+        // Chờ lượt lấy lô đang chạy kết thúc; false nếu quá thời gian chờ
+        synchronized boolean awaitRefill(long timeoutMs) {
+            long deadline = System.currentTimeMillis() + timeoutMs;
+            try {
+                while (refilling) {
+                    long remaining = deadline - System.currentTimeMillis();
+                    if (remaining <= 0) {
+                        return false;
+                    }
+                    wait(remaining);
+                }
+                return true;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+
+        synchronized void finishRefill() {
+            refilling = false;
+            notifyAll();
+        }
+
+        // Request hiện tại dùng một token của lô vừa lấy, phần còn lại để dành cho các request sau
+        synchronized Decision lease(Decision grant, long now, long expiresAt) {
+            sharedRemaining = grant.remaining();
+            if (!grant.allowed()) {
+                blockedUntil = now + grant.retryAfterMillis();
+                return grant;
+            }
+            leased += grant.granted() - 1;
+            leaseExpiresAt = expiresAt;
+            return new Decision(1, leased + sharedRemaining, 0);
+        }
+
+        synchronized Decision takeFallback(Policy policy, long now) {
+            double capacity = policy.getLimit();
+            double ratePerMs = capacity / policy.getWindow().toMillis();
+            if (fallbackTokens < 0) {
+                fallbackTokens = capacity;
+            } else {
+                fallbackTokens = Math.min(capacity, fallbackTokens + (now - fallbackRefilledAt) * ratePerMs);
+            }
+            fallbackRefilledAt = now;
+            if (fallbackTokens >= 1) {
+                fallbackTokens--;
+                return new Decision(1, (long) fallbackTokens, 0);
+            }
+            return new Decision(0, 0, (long) Math.ceil((1 - fallbackTokens) / ratePerMs));
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package com.sondv.phone.ratelimit;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+// Chính sách giới hạn request theo route (ratelimit.http.*): route đầu tiên khớp với đường dẫn được áp dụng,
+// không khớp route nào thì dùng default-policy. Mỗi chính sách cho phép tối đa `limit` request trong `window`.
+@Getter
+@Setter
+@Component
+@ConfigurationProperties(prefix = "ratelimit.http")
+public class RateLimitProperties {
+
+    private boolean enabled = true;
+    private Policy defaultPolicy = new Policy("default", "/**", 50000, Duration.ofMinutes(1));
+    private List<Policy> routes = new ArrayList<>();
+    private Local local = new Local();
+
+    @Getter
+    @Setter
+    public static class Policy {
+        private String name;
+        // Mẫu đường dẫn kiểu Ant, ví dụ /api/auth/login hoặc /**/checkout/**
+        private String pattern;
+        private long limit;
+        private Duration window = Duration.ofMinutes(1);
+
+        public Policy() {
+        }
+
+        public Policy(String name, String pattern, long limit, Duration window) {
+            this.name = name;
+            this.pattern = pattern;
+            this.limit = limit;
+            this.window = window;
+        }
+    }
+
+    // Tầng token bucket trong bộ nhớ của từng node (HybridRateLimiter)
+    @Getter
+    @Setter
+    public static class Local {
+        private boolean enabled = true;
+        // Số key (client + route) giữ bucket cục bộ, key ít dùng bị loại trước
+        private long maxKeys = 100000;
+        // Mỗi lần lấy từ Redis: lease-fraction * limit token, tối đa max-lease
+        private double leaseFraction = 0.05;
+        private long maxLease = 100;
+        // Token lấy về chưa dùng hết sau khoảng này thì trả lại Redis (ở lần lấy lô kế tiếp), để node không giữ quota quá lâu
+        private Duration leaseTtl = Duration.ofSeconds(5);
+        // Redis lỗi thì chỉ dùng bucket cục bộ trong khoảng này rồi mới thử lại
+        private Duration redisRetryBackoff = Duration.ofSeconds(5);
+        // Request chờ tối đa khoảng này khi một request khác cùng key đang lấy lô mới, quá hạn thì giới hạn cục bộ
+        private Duration refillWait = Duration.ofMillis(200);
+    }
+}
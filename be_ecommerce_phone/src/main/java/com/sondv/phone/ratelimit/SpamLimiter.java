@@ -0,0 +1,102 @@
+package com.sondv.phone.ratelimit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.stereotype.Component;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.List;
+import java.util.UUID;
+
+// Chống spam dùng chung cho cả cụm: sliding log (sorted set các thời điểm gửi) và hash tin nhắn cuối nằm trong Redis,
+// kiểm tra cả hai trong một lần gọi Lua nên user đổi node vẫn bị tính chung một cửa sổ.
+// Chỉ so sánh hash 64 bit của nội dung, không giữ chuỗi tin nhắn. Redis lỗi thì dùng SpamState cục bộ của caller.
+@Component
+public class SpamLimiter {
+
+    private static final Logger logger = LoggerFactory.getLogger(SpamLimiter.class);
+
+    // Trả về 0 = OK, 1 = gửi quá nhanh, 2 = lặp lại quá nhiều lần. Dùng giờ của Redis để các node không lệch đồng hồ.
+    private static final DefaultRedisScript<Long> CHECK_SCRIPT = new DefaultRedisScript<>(
+            "local t = redis.call('TIME') " +
+            "local now = tonumber(t[1]) * 1000 + math.floor(tonumber(t[2]) / 1000) " +
+            "local window = tonumber(ARGV[1]) " +
+            "redis.call('ZREMRANGEBYSCORE', KEYS[1], '-inf', now - window) " +
+            "if redis.call('ZCARD', KEYS[1]) >= tonumber(ARGV[2]) then return 1 end " +
+            "redis.call('ZADD', KEYS[1], now, ARGV[3]) " +
+            "redis.call('PEXPIRE', KEYS[1], window) " +
+            "local repeats = 0 " +
+            "if redis.call('HGET', KEYS[2], 'hash') == ARGV[4] then " +
+            "  repeats = redis.call('HINCRBY', KEYS[2], 'repeats', 1) " +
+            "else " +
+            "  redis.call('HSET', KEYS[2], 'hash', ARGV[4], 'repeats', 0) " +
+            "end " +
+            "redis.call('PEXPIRE', KEYS[2], ARGV[6]) " +
+            "if repeats >= tonumber(ARGV[5]) then return 2 end " +
+            "return 0",
+            Long.class);
+
+    private final RedisTemplate<String, String> redisTemplate;
+
+    public SpamLimiter(RedisTemplate<String, String> redisTemplate) {
+        this.redisTemplate = redisTemplate;
+    }
+
+    public SpamState.Verdict check(String subject, SpamPolicy policy, String message, SpamState local) {
+        long fingerprint = fingerprint(message);
+        try {
+            Long result = redisTemplate.execute(CHECK_SCRIPT, List.of(logKey(subject), duplicateKey(subject)),
+                    String.valueOf(policy.window().toMillis()),
+                    String.valueOf(policy.rateLimit()),
+                    UUID.randomUUID().toString(),
+                    Long.toHexString(fingerprint),
+                    String.valueOf(policy.duplicateThreshold()),
+                    String.valueOf(policy.duplicateTtl().toMillis()));
+            if (result == null) {
+                return SpamState.Verdict.OK;
+            }
+            return switch (result.intValue()) {
+                case 1 -> SpamState.Verdict.RATE_LIMITED;
+                case 2 -> SpamState.Verdict.DUPLICATE;
+                default -> SpamState.Verdict.OK;
+            };
+        } catch (Exception e) {
+            logger.warn("Không kiểm tra được spam của {} qua Redis, dùng trạng thái cục bộ: {}", subject, e.getMessage());
+            return local.check(fingerprint, System.currentTimeMillis());
+        }
+    }
+
+    // Sau khi bị khóa thì đếm lại số lần lặp từ đầu
+    public void resetDuplicates(String subject, SpamState local) {
+        local.resetDuplicates();
+        try {
+            redisTemplate.opsForHash().put(duplicateKey(subject), "repeats", "0");
+        } catch (Exception e) {
+            logger.warn("Không đặt lại bộ đếm tin lặp của {}: {}", subject, e.getMessage());
+        }
+    }
+
+    // 8 byte đầu của SHA-256: đủ để phân biệt các tin liên tiếp của một user
+    public static long fingerprint(String message) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(message.getBytes(StandardCharsets.UTF_8));
+            return ByteBuffer.wrap(digest).getLong();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    // Hash tag {subject} để hai key của cùng một user nằm cùng slot khi chạy Redis Cluster
+    private static String logKey(String subject) {
+        return "spam:{" + subject + "}:log";
+    }
+
+    private static String duplicateKey(String subject) {
+        return "spam:{" + subject + "}:dup";
+    }
+}
@@ -0,0 +1,8 @@
+package com.sondv.phone.ratelimit;
+
+import java.time.Duration;
+
+// Ngưỡng chống spam: tối đa rateLimit tin trong window, và bị chặn khi gửi lặp lại cùng nội dung duplicateThreshold lần liên tiếp.
+// duplicateTtl là thời gian nhớ hash tin nhắn cuối trong Redis.
+public record SpamPolicy(int rateLimit, Duration window, int duplicateThreshold, Duration duplicateTtl) {
+}
@@ -0,0 +1,52 @@
+package com.sondv.phone.ratelimit;
+
+// Trạng thái chống spam cục bộ của một user: vòng thời điểm gửi gần nhất, hash tin nhắn cuối và số lần lặp.
+// Là tầng dự phòng của SpamLimiter khi Redis không dùng được; chỉ khóa trên chính object này.
+public class SpamState {
+
+    public enum Verdict {
+        OK, RATE_LIMITED, DUPLICATE
+    }
+
+    private final long[] sentAt;
+    private final long windowMillis;
+    private final int duplicateThreshold;
+    private int head = 0;
+    private int count = 0;
+    private long lastFingerprint;
+    private boolean hasLast = false;
+    private int duplicateCount = 0;
+
+    public SpamState(SpamPolicy policy) {
+        this.sentAt = new long[policy.rateLimit()];
+        this.windowMillis = policy.window().toMillis();
+        this.duplicateThreshold = policy.duplicateThreshold();
+    }
+
+    public synchronized Verdict check(long fingerprint, long now) {
+        // Đã đủ rateLimit tin trong vòng: tin cũ nhất còn trong cửa sổ thời gian nghĩa là gửi quá nhanh
+        if (count == sentAt.length && now - sentAt[head] < windowMillis) {
+            return Verdict.RATE_LIMITED;
+        }
+        sentAt[head] = now;
+        head = (head + 1) % sentAt.length;
+        count = Math.min(count + 1, sentAt.length);
+
+        if (hasLast && fingerprint == lastFingerprint) {
+            duplicateCount++;
+            if (duplicateCount >= duplicateThreshold) {
+                return Verdict.DUPLICATE;
+            }
+        } else {
+            duplicateCount = 0;
+        }
+        lastFingerprint = fingerprint;
+        hasLast = true;
+        return Verdict.OK;
+    }
+
+    // Sau khi bị khóa thì đếm lại số lần lặp từ đầu
+    public synchronized void resetDuplicates() {
+        duplicateCount = 0;
+    }
+}
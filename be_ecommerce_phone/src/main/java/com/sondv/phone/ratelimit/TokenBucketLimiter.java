@@ -0,0 +1,63 @@
+package com.sondv.phone.ratelimit;
+
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.List;
+
+// Token bucket trong Redis, kiểm tra và trừ token trong một lần gọi Lua (một round trip, nguyên tử giữa các node).
+// Bucket đầy `limit` token và nạp lại đều limit token mỗi `window`, nên client gửi đều đặn không bị khóa mãi
+// như bộ đếm INCR + EXPIRE (gia hạn TTL ở mỗi request).
+// Có thể lấy nhiều token một lần (HybridRateLimiter lấy theo lô rồi tiêu dần trong bộ nhớ).
+@Component
+public class TokenBucketLimiter {
+
+    // Trả lại ARGV[4] token chưa dùng (lô cũ đã hết hạn) rồi lấy tối đa ARGV[3] token (ít nhất 1).
+    // Trả về {số token lấy được, số token còn lại, số ms phải chờ nếu không lấy được}. Dùng giờ của Redis cho mọi node.
+    @SuppressWarnings("unchecked")
+    private static final DefaultRedisScript<List<Long>> CONSUME_SCRIPT = new DefaultRedisScript<>(
+            "local capacity = tonumber(ARGV[1]) " +
+            "local rate = capacity / tonumber(ARGV[2]) " +
+            "local wanted = tonumber(ARGV[3]) " +
+            "local returned = tonumber(ARGV[4]) " +
+            "local t = redis.call('TIME') " +
+            "local now = tonumber(t[1]) * 1000 + math.floor(tonumber(t[2]) / 1000) " +
+            "local state = redis.call('HMGET', KEYS[1], 'tokens', 'ts') " +
+            "local tokens = tonumber(state[1]) " +
+            "local ts = tonumber(state[2]) " +
+            "if tokens == nil or ts == nil then tokens = capacity ts = now end " +
+            "tokens = math.min(capacity, tokens + math.max(0, now - ts) * rate + returned) " +
+            "local granted = math.min(math.floor(tokens), wanted) " +
+            "local wait = 0 " +
+            "if granted >= 1 then tokens = tokens - granted " +
+            "else granted = 0 wait = math.ceil((1 - tokens) / rate) end " +
+            "redis.call('HSET', KEYS[1], 'tokens', tostring(tokens), 'ts', now) " +
+            "redis.call('PEXPIRE', KEYS[1], ARGV[2]) " +
+            "return {granted, math.floor(tokens), wait}",
+            (Class<List<Long>>) (Class<?>) List.class);
+
+    public record Decision(long granted, long remaining, long retryAfterMillis) {
+        public boolean allowed() {
+            return granted > 0;
+        }
+    }
+
+    private final RedisTemplate<String, String> redisTemplate;
+
+    public TokenBucketLimiter(RedisTemplate<String, String> redisTemplate) {
+        this.redisTemplate = redisTemplate;
+    }
+
+    // returned: số token của lô trước chưa dùng tới, cộng lại vào bucket (không vượt limit) trước khi lấy lô mới
+    public Decision acquire(String key, long limit, Duration window, long maxTokens, long returned) {
+        List<Long> result = redisTemplate.execute(CONSUME_SCRIPT, List.of(key),
+                String.valueOf(limit), String.valueOf(window.toMillis()), String.valueOf(maxTokens),
+                String.valueOf(returned));
+        if (result == null || result.size() < 3) {
+            return new Decision(maxTokens, limit, 0);
+        }
+        return new Decision(result.get(0), result.get(1), result.get(2));
+    }
+}
@@ -0,0 +1,60 @@
+package com.sondv.phone.report;
+
+import lombok.Getter;
+
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Trạng thái của một job xuất báo cáo; các trường thay đổi được ghi bởi thread chạy job và đọc bởi thread request
+@Getter
+public class ReportJob {
+
+    public enum Status {
+        QUEUED, RUNNING, DONE, FAILED
+    }
+
+    private final String id;
+    private final ReportSpec spec;
+    private final LocalDateTime createdAt = LocalDateTime.now();
+    // Email những người đang chờ job này (nhận thông báo qua WebSocket khi xong)
+    private final Set<String> subscribers = ConcurrentHashMap.newKeySet();
+
+    private volatile Status status = Status.QUEUED;
+    private volatile LocalDateTime completedAt;
+    private volatile LocalDateTime expiresAt;
+    private volatile Path file;
+    private volatile String error;
+
+    public ReportJob(String id, ReportSpec spec) {
+        this.id = id;
+        this.spec = spec;
+    }
+
+    void markRunning() {
+        status = Status.RUNNING;
+    }
+
+    void markDone(Path file, LocalDateTime expiresAt) {
+        this.file = file;
+        this.completedAt = LocalDateTime.now();
+        this.expiresAt = expiresAt;
+        this.status = Status.DONE;
+    }
+
+    void markFailed(String error, LocalDateTime expiresAt) {
+        this.error = error;
+        this.completedAt = LocalDateTime.now();
+        this.expiresAt = expiresAt;
+        this.status = Status.FAILED;
+    }
+
+    public boolean isFinished() {
+        return status == Status.DONE || status == Status.FAILED;
+    }
+
+    public boolean isExpired(LocalDateTime now) {
+        return expiresAt != null && now.isAfter(expiresAt);
+    }
+}
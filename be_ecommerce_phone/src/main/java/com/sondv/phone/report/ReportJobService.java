@@ -0,0 +1,184 @@
+package com.sondv.phone.report;
+
+import com.sondv.phone.event.ReportJobFinishedEvent;
+import com.sondv.phone.exception.ApiException;
+import com.sondv.phone.service.ReportService;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.*;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+// Chạy báo cáo nặng ngoài thread request: job chạy trên executor riêng có giới hạn số luồng và hàng đợi,
+// kết quả ghi ra file trên đĩa cục bộ và giữ trong TTL. Các yêu cầu cùng spec (loại + khoảng ngày + trạng thái)
+// dùng chung một job đang chạy hoặc file đã có.
+@Service
+public class ReportJobService {
+
+    private static final Logger logger = LoggerFactory.getLogger(ReportJobService.class);
+    // Job lỗi chỉ giữ lại ngắn để client kịp đọc trạng thái
+    private static final Duration FAILED_TTL = Duration.ofMinutes(5);
+
+    private final ReportService reportService;
+    private final ApplicationEventPublisher eventPublisher;
+    private final Path dir;
+    private final Duration ttl;
+    private final ThreadPoolExecutor executor;
+
+    private final Map<String, ReportJob> jobsById = new ConcurrentHashMap<>();
+    private final Map<String, ReportJob> jobsBySpec = new ConcurrentHashMap<>();
+
+    public ReportJobService(ReportService reportService,
+                            ApplicationEventPublisher eventPublisher,
+                            @Value("${report.jobs.dir:data/reports}") String dir,
+                            @Value("${report.jobs.ttl:30m}") Duration ttl,
+                            @Value("${report.jobs.concurrency:2}") int concurrency,
+                            @Value("${report.jobs.queue-capacity:20}") int queueCapacity) {
+        this.reportService = reportService;
+        this.eventPublisher = eventPublisher;
+        this.dir = Paths.get(dir);
+        this.ttl = ttl;
+        AtomicInteger threadCount = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(concurrency, concurrency, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), r -> {
+            Thread thread = new Thread(r, "report-job-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    // File của lần chạy trước không còn metadata trong bộ nhớ nên xóa đi
+    @PostConstruct
+    public void init() throws IOException {
+        Files.createDirectories(dir);
+        try (Stream<Path> files = Files.list(dir)) {
+            files.forEach(ReportJobService::deleteQuietly);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    public ReportJob submit(ReportSpec spec, String requestedBy) {
+        validate(spec);
+        ReportJob job = jobsBySpec.compute(spec.key(), (key, existing) -> {
+            LocalDateTime now = LocalDateTime.now();
+            if (existing != null && existing.getStatus() != ReportJob.Status.FAILED && !existing.isExpired(now)) {
+                return existing;
+            }
+            if (existing != null) {
+                discard(existing);
+            }
+            ReportJob created = new ReportJob(UUID.randomUUID().toString(), spec);
+            try {
+                executor.execute(() -> run(created));
+            } catch (RejectedExecutionException e) {
+                throw new ApiException(503, "Hệ thống đang xử lý quá nhiều báo cáo, vui lòng thử lại sau!");
+            }
+            jobsById.put(created.getId(), created);
+            return created;
+        });
+        if (requestedBy != null && !job.isFinished()) {
+            job.getSubscribers().add(requestedBy);
+        }
+        return job;
+    }
+
+    public ReportJob getJob(String jobId) {
+        ReportJob job = jobsById.get(jobId);
+        if (job == null) {
+            throw new ApiException(404, "Không tìm thấy báo cáo hoặc báo cáo đã hết hạn!");
+        }
+        return job;
+    }
+
+    // Trả về file kết quả của job đã xong
+    public Path getResult(String jobId) {
+        ReportJob job = getJob(jobId);
+        if (job.getStatus() != ReportJob.Status.DONE) {
+            throw new ApiException(409, "Báo cáo chưa sẵn sàng!");
+        }
+        if (!Files.exists(job.getFile())) {
+            throw new ApiException(404, "Không tìm thấy báo cáo hoặc báo cáo đã hết hạn!");
+        }
+        return job.getFile();
+    }
+
+    @Scheduled(fixedDelayString = "${report.jobs.eviction-interval-ms:60000}")
+    public void evictExpired() {
+        LocalDateTime now = LocalDateTime.now();
+        jobsBySpec.values().removeIf(job -> {
+            if (!job.isExpired(now)) {
+                return false;
+            }
+            discard(job);
+            return true;
+        });
+    }
+
+    private void run(ReportJob job) {
+        job.markRunning();
+        ReportSpec spec = job.getSpec();
+        Path partial = dir.resolve(job.getId() + ".part");
+        Path target = dir.resolve(job.getId() + ".xlsx");
+        long startedAt = System.currentTimeMillis();
+        try {
+            try (OutputStream out = Files.newOutputStream(partial)) {
+                switch (spec.type()) {
+                    case REVENUE -> out.write(reportService.exportRevenueReport(spec.startDate(), spec.endDate()));
+                    case ORDERS -> reportService.exportOrders(spec.startDate(), spec.endDate(), spec.status(), out);
+                    case ORDER_LINES -> reportService.exportOrderLines(spec.startDate(), spec.endDate(), spec.status(), out);
+                }
+            }
+            Files.move(partial, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            job.markDone(target, LocalDateTime.now().plus(ttl));
+            logger.info("Báo cáo {} ({}) xong sau {} ms", job.getId(), spec.key(), System.currentTimeMillis() - startedAt);
+        } catch (Exception e) {
+            deleteQuietly(partial);
+            job.markFailed(e.getMessage(), LocalDateTime.now().plus(FAILED_TTL));
+            logger.error("Lỗi khi tạo báo cáo {} ({}): {}", job.getId(), spec.key(), e.getMessage(), e);
+        }
+        eventPublisher.publishEvent(new ReportJobFinishedEvent(job.getId(), job.getStatus().name(), Set.copyOf(job.getSubscribers())));
+    }
+
+    private void discard(ReportJob job) {
+        jobsById.remove(job.getId());
+        if (job.getFile() != null) {
+            deleteQuietly(job.getFile());
+        }
+    }
+
+    private static void validate(ReportSpec spec) {
+        if (spec.type() == null || spec.startDate() == null || spec.endDate() == null) {
+            throw new ApiException(400, "Thiếu loại báo cáo hoặc khoảng thời gian!");
+        }
+        if (spec.endDate().isBefore(spec.startDate())) {
+            throw new ApiException(400, "Ngày kết thúc phải sau ngày bắt đầu!");
+        }
+    }
+
+    private static void deleteQuietly(Path path) {
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            logger.warn("Không xóa được file báo cáo {}: {}", path, e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,13 @@
+package com.sondv.phone.report;
+
+import com.sondv.phone.model.OrderStatus;
+
+import java.time.LocalDateTime;
+
+// Tham số của một báo cáo; hai yêu cầu có cùng spec dùng chung một job / một file kết quả
+public record ReportSpec(ReportType type, LocalDateTime startDate, LocalDateTime endDate, OrderStatus status) {
+
+    public String key() {
+        return type + "|" + startDate + "|" + endDate + "|" + (status != null ? status : "ALL");
+    }
+}
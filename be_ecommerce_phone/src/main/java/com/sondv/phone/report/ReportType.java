@@ -0,0 +1,16 @@
+package com.sondv.phone.report;
+
+import lombok.Getter;
+
+@Getter
+public enum ReportType {
+    REVENUE("Revenue_Report.xlsx"),         // Tổng doanh thu + top sản phẩm
+    ORDERS("Orders_Report.xlsx"),           // Toàn bộ đơn hàng
+    ORDER_LINES("Order_Lines_Report.xlsx"); // Toàn bộ chi tiết đơn hàng
+
+    private final String filename;
+
+    ReportType(String filename) {
+        this.filename = filename;
+    }
+}
@@ -0,0 +1,49 @@
+package com.sondv.phone.repository;
+
+import com.sondv.phone.model.DailySalesRollup;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.List;
+
+public interface DailySalesRollupRepository extends JpaRepository<DailySalesRollup, LocalDate> {
+
+    List<DailySalesRollup> findByDateBetweenOrderByDateAsc(LocalDate startDate, LocalDate endDate);
+
+    // Cộng dồn nguyên tử trong DB: hai node cập nhật cùng ngày không ghi đè lẫn nhau
+    @Modifying
+    @Query(value = "INSERT INTO daily_sales_rollup (rollup_date, revenue, order_count, items_sold, new_users) " +
+            "VALUES (:date, :revenue, :orders, :items, :users) " +
+            "ON DUPLICATE KEY UPDATE revenue = revenue + VALUES(revenue), order_count = order_count + VALUES(order_count), " +
+            "items_sold = items_sold + VALUES(items_sold), new_users = new_users + VALUES(new_users)",
+            nativeQuery = true)
+    void increment(@Param("date") LocalDate date,
+                   @Param("revenue") BigDecimal revenue,
+                   @Param("orders") long orders,
+                   @Param("items") long items,
+                   @Param("users") long users);
+
+    // Dựng lại phần đơn hàng từ bảng orders (bỏ đơn đã hủy); ghi đè nên chạy lại nhiều lần vẫn cho cùng kết quả
+    @Modifying
+    @Query(value = "INSERT INTO daily_sales_rollup (rollup_date, revenue, order_count, items_sold, new_users) " +
+            "SELECT DATE(o.created_at), COALESCE(SUM(d.price * d.quantity), 0), COUNT(DISTINCT o.id), COALESCE(SUM(d.quantity), 0), 0 " +
+            "FROM orders o LEFT JOIN order_details d ON d.order_id = o.id " +
+            "WHERE o.status <> 'CANCELLED' " +
+            "GROUP BY DATE(o.created_at) " +
+            "ON DUPLICATE KEY UPDATE revenue = VALUES(revenue), order_count = VALUES(order_count), items_sold = VALUES(items_sold)",
+            nativeQuery = true)
+    int backfillOrders();
+
+    @Modifying
+    @Query(value = "INSERT INTO daily_sales_rollup (rollup_date, revenue, order_count, items_sold, new_users) " +
+            "SELECT DATE(u.created_at), 0, 0, 0, COUNT(*) FROM users u " +
+            "WHERE u.created_at IS NOT NULL " +
+            "GROUP BY DATE(u.created_at) " +
+            "ON DUPLICATE KEY UPDATE new_users = VALUES(new_users)",
+            nativeQuery = true)
+    int backfillUsers();
+}
@@ -0,0 +1,120 @@
+package com.sondv.phone.repository;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.LocalDateTime;
+import java.util.*;
+
+// Các thao tác tồn kho theo lô bằng JDBC batch: cả giỏ hàng chỉ tốn vài round trip thay vì vài câu lệnh cho mỗi dòng
+@Repository
+@RequiredArgsConstructor
+public class InventoryJdbcRepository {
+
+    private static final String RESERVE_SQL =
+            "UPDATE inventory SET quantity = quantity - ?, last_updated = ? WHERE product_id = ? AND quantity >= ?";
+    private static final String RELEASE_SQL =
+            "UPDATE inventory SET quantity = quantity + ?, last_updated = ? WHERE product_id = ?";
+    private static final String UPDATE_PRODUCT_STOCK_SQL =
+            "UPDATE products SET stock = ? WHERE id = ?";
+    // journal_id là khóa duy nhất: ghi lại cùng một bản ghi từ WAL sẽ không tạo dòng trùng
+    private static final String INSERT_LOG_SQL =
+            "INSERT INTO inventory_logs (journal_id, product_id, old_quantity, new_quantity, reason, user_id, timestamp) " +
+            "VALUES (?, ?, ?, ?, ?, ?, ?) ON DUPLICATE KEY UPDATE id = id";
+
+    public record LogRow(String journalId, Long productId, int oldQuantity, int newQuantity, String reason,
+                         Long userId, LocalDateTime timestamp) {
+
+        public LogRow(Long productId, int oldQuantity, int newQuantity, String reason, Long userId, LocalDateTime timestamp) {
+            this(null, productId, oldQuantity, newQuantity, reason, userId, timestamp);
+        }
+
+        public LogRow withJournalId(String id) {
+            return new LogRow(id, productId, oldQuantity, newQuantity, reason, userId, timestamp);
+        }
+    }
+
+    private final JdbcTemplate jdbcTemplate;
+    private final NamedParameterJdbcTemplate namedParameterJdbcTemplate;
+
+    // Trừ kho có điều kiện cho nhiều sản phẩm trong một batch; phần tử i = true nếu dòng i trừ được
+    public boolean[] reserveAll(List<Long> productIds, List<Integer> quantities, LocalDateTime now) {
+        Timestamp timestamp = Timestamp.valueOf(now);
+        int[] counts = jdbcTemplate.batchUpdate(RESERVE_SQL, new BatchPreparedStatementSetter() {
+            @Override
+            public void setValues(PreparedStatement ps, int i) throws SQLException {
+                ps.setInt(1, quantities.get(i));
+                ps.setTimestamp(2, timestamp);
+                ps.setLong(3, productIds.get(i));
+                ps.setInt(4, quantities.get(i));
+            }
+
+            @Override
+            public int getBatchSize() {
+                return productIds.size();
+            }
+        });
+        boolean[] reserved = new boolean[productIds.size()];
+        for (int i = 0; i < reserved.length; i++) {
+            reserved[i] = counts[i] == 1;
+        }
+        return reserved;
+    }
+
+    // Hoàn lại hàng cho nhiều sản phẩm trong một batch
+    public void releaseAll(List<Long> productIds, List<Integer> quantities, LocalDateTime now) {
+        Timestamp timestamp = Timestamp.valueOf(now);
+        jdbcTemplate.batchUpdate(RELEASE_SQL, new BatchPreparedStatementSetter() {
+            @Override
+            public void setValues(PreparedStatement ps, int i) throws SQLException {
+                ps.setInt(1, quantities.get(i));
+                ps.setTimestamp(2, timestamp);
+                ps.setLong(3, productIds.get(i));
+            }
+
+            @Override
+            public int getBatchSize() {
+                return productIds.size();
+            }
+        });
+    }
+
+    public Map<Long, Integer> findQuantities(Collection<Long> productIds) {
+        Map<Long, Integer> quantities = new HashMap<>();
+        namedParameterJdbcTemplate.query(
+                "SELECT product_id, quantity FROM inventory WHERE product_id IN (:productIds)",
+                new MapSqlParameterSource("productIds", productIds),
+                rs -> {
+                    quantities.put(rs.getLong("product_id"), rs.getInt("quantity"));
+                });
+        return quantities;
+    }
+
+    public void updateProductStocks(Map<Long, Integer> stocks) {
+        List<Map.Entry<Long, Integer>> rows = new ArrayList<>(stocks.entrySet());
+        jdbcTemplate.batchUpdate(UPDATE_PRODUCT_STOCK_SQL, rows, rows.size(), (ps, row) -> {
+            ps.setInt(1, row.getValue());
+            ps.setLong(2, row.getKey());
+        });
+    }
+
+    public void insertLogs(List<LogRow> logs) {
+        jdbcTemplate.batchUpdate(INSERT_LOG_SQL, logs, logs.size(), (ps, log) -> {
+            ps.setString(1, log.journalId());
+            ps.setLong(2, log.productId());
+            ps.setInt(3, log.oldQuantity());
+            ps.setInt(4, log.newQuantity());
+            ps.setString(5, log.reason());
+            ps.setObject(6, log.userId(), Types.BIGINT);
+            ps.setTimestamp(7, Timestamp.valueOf(log.timestamp()));
+        });
+    }
+}
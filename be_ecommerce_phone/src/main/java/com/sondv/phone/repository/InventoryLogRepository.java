@@ -1,6 +1,7 @@
 package com.sondv.phone.repository;
 
 import com.sondv.phone.model.InventoryLog;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
@@ -31,4 +32,19 @@ public interface InventoryLogRepository extends JpaRepository<InventoryLog, Long
             @Param("endDate") LocalDateTime endDate,
             Pageable pageable);
 
+    // Phân trang keyset theo (timestamp, id) giảm dần, không chạy count(*)
+    @Query("SELECT log FROM InventoryLog log JOIN FETCH log.product " +
+            "WHERE (:productId IS NULL OR log.product.id = :productId) " +
+            "AND (:startDate IS NULL OR log.timestamp >= :startDate) " +
+            "AND (:endDate IS NULL OR log.timestamp <= :endDate) " +
+            "AND (:afterTimestamp IS NULL OR log.timestamp < :afterTimestamp " +
+            "OR (log.timestamp = :afterTimestamp AND log.id < :afterId)) " +
+            "ORDER BY log.timestamp DESC, log.id DESC")
+    List<InventoryLog> findPageAfter(
+            @Param("productId") Long productId,
+            @Param("startDate") LocalDateTime startDate,
+            @Param("endDate") LocalDateTime endDate,
+            @Param("afterTimestamp") LocalDateTime afterTimestamp,
+            @Param("afterId") Long afterId,
+            Limit limit);
 }
\ No newline at end of file
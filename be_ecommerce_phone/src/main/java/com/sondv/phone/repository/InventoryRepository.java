@@ -2,18 +2,28 @@ package com.sondv.phone.repository;
 
 import com.sondv.phone.dto.InventoryReportDTO;
 import com.sondv.phone.model.Inventory;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import jakarta.persistence.LockModeType;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 
 public interface InventoryRepository extends JpaRepository<Inventory, Long> {
     // Tìm tồn kho theo productId
     Optional<Inventory> findByProductId(Long productId);
 
+    // Khóa dòng tồn kho khi điều chỉnh thủ công (đọc - kiểm tra - ghi)
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT i FROM Inventory i WHERE i.product.id = :productId")
+    Optional<Inventory> findForUpdateByProductId(@Param("productId") Long productId);
+
     // Tìm tồn kho theo tên sản phẩm (hỗ trợ báo cáo với tìm kiếm)
     @Query("SELECT i FROM Inventory i WHERE i.product.name LIKE %:name%")
     Page<Inventory> findByProductNameContaining(@Param("name") String name, Pageable pageable);
@@ -29,4 +39,47 @@ public interface InventoryRepository extends JpaRepository<Inventory, Long> {
             @Param("name") String name,
             @Param("status") String status,
             Pageable pageable);
-}
\ No newline at end of file
+
+    @Query("SELECT new com.sondv.phone.dto.InventoryReportDTO(i.product.id, i.product.name, i.quantity, i.lastUpdated, " +
+            "CASE WHEN i.quantity = 0 THEN 'OUT_OF_STOCK' " +
+            "WHEN i.quantity < i.minQuantity THEN 'LOW' ELSE 'NORMAL' END) " +
+            "FROM Inventory i WHERE i.product.id IN :productIds " +
+            "AND (:status IS NULL OR " +
+            "(CASE WHEN i.quantity = 0 THEN 'OUT_OF_STOCK' " +
+            "WHEN i.quantity < i.minQuantity THEN 'LOW' ELSE 'NORMAL' END) = :status)")
+    Page<InventoryReportDTO> findInventoryReportByProductIds(
+            @Param("productIds") Collection<Long> productIds,
+            @Param("status") String status,
+            Pageable pageable);
+
+    // Phân trang keyset theo productId tăng dần
+    @Query("SELECT new com.sondv.phone.dto.InventoryReportDTO(i.product.id, i.product.name, i.quantity, i.lastUpdated, " +
+            "CASE WHEN i.quantity = 0 THEN 'OUT_OF_STOCK' " +
+            "WHEN i.quantity < i.minQuantity THEN 'LOW' ELSE 'NORMAL' END) " +
+            "FROM Inventory i WHERE (:name IS NULL OR i.product.name LIKE %:name%) " +
+            "AND (:status IS NULL OR " +
+            "(CASE WHEN i.quantity = 0 THEN 'OUT_OF_STOCK' " +
+            "WHEN i.quantity < i.minQuantity THEN 'LOW' ELSE 'NORMAL' END) = :status) " +
+            "AND (:afterProductId IS NULL OR i.product.id > :afterProductId) " +
+            "ORDER BY i.product.id")
+    List<InventoryReportDTO> findInventoryReportAfter(
+            @Param("name") String name,
+            @Param("status") String status,
+            @Param("afterProductId") Long afterProductId,
+            Limit limit);
+
+    @Query("SELECT new com.sondv.phone.dto.InventoryReportDTO(i.product.id, i.product.name, i.quantity, i.lastUpdated, " +
+            "CASE WHEN i.quantity = 0 THEN 'OUT_OF_STOCK' " +
+            "WHEN i.quantity < i.minQuantity THEN 'LOW' ELSE 'NORMAL' END) " +
+            "FROM Inventory i WHERE i.product.id IN :productIds " +
+            "AND (:status IS NULL OR " +
+            "(CASE WHEN i.quantity = 0 THEN 'OUT_OF_STOCK' " +
+            "WHEN i.quantity < i.minQuantity THEN 'LOW' ELSE 'NORMAL' END) = :status) " +
+            "AND (:afterProductId IS NULL OR i.product.id > :afterProductId) " +
+            "ORDER BY i.product.id")
+    List<InventoryReportDTO> findInventoryReportByProductIdsAfter(
+            @Param("productIds") Collection<Long> productIds,
+            @Param("status") String status,
+            @Param("afterProductId") Long afterProductId,
+            Limit limit);
+}
@@ -0,0 +1,65 @@
+package com.sondv.phone.repository;
+
+import com.sondv.phone.model.Message;
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.sql.Timestamp;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Ghi tin nhắn chat theo JDBC batch. Cả lô nằm trong một transaction nên lô lỗi không để lại dòng nào,
+// thử lại không đụng dòng đã ghi; trùng khóa chính thì báo lỗi (DuplicateKeyException) chứ không bỏ qua.
+@Repository
+@RequiredArgsConstructor
+public class MessageJdbcRepository {
+
+    private static final String INSERT_SQL =
+            "INSERT INTO messages (id, sender_id, receiver_id, conversation_id, content, timestamp, is_read) " +
+            "VALUES (?, ?, ?, ?, ?, ?, ?)";
+    private static final String FIND_BY_IDS_SQL =
+            "SELECT id, sender_id, receiver_id, conversation_id, content FROM messages WHERE id IN (:ids)";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final NamedParameterJdbcTemplate namedParameterJdbcTemplate;
+
+    @Transactional
+    public void insertAll(List<Message> messages) {
+        if (messages.isEmpty()) {
+            return;
+        }
+        jdbcTemplate.batchUpdate(INSERT_SQL, messages, messages.size(), (ps, message) -> {
+            ps.setLong(1, message.getId());
+            ps.setLong(2, message.getSenderId());
+            ps.setLong(3, message.getReceiverId());
+            ps.setLong(4, message.getConversationId());
+            ps.setString(5, message.getContent());
+            ps.setTimestamp(6, Timestamp.valueOf(message.getTimestamp()));
+            ps.setBoolean(7, message.isRead());
+        });
+    }
+
+    // Tin đã có trong DB theo id (chỉ các cột cần để đối chiếu khi gặp trùng khóa)
+    public Map<Long, Message> findByIds(Collection<Long> ids) {
+        Map<Long, Message> result = new HashMap<>();
+        if (ids.isEmpty()) {
+            return result;
+        }
+        namedParameterJdbcTemplate.query(FIND_BY_IDS_SQL, new MapSqlParameterSource("ids", ids), rs -> {
+            Message message = new Message();
+            message.setId(rs.getLong("id"));
+            message.setSenderId(rs.getLong("sender_id"));
+            message.setReceiverId(rs.getLong("receiver_id"));
+            message.setConversationId(rs.getObject("conversation_id", Long.class));
+            message.setContent(rs.getString("content"));
+            result.put(message.getId(), message);
+        });
+        return result;
+    }
+}
@@ -1,10 +1,42 @@
 package com.sondv.phone.repository;
 
 import com.sondv.phone.model.Message;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.Optional;
 
 public interface MessageRepository extends JpaRepository<Message, Long> {
-    List<Message> findBySenderIdAndReceiverIdOrReceiverIdAndSenderId(Long senderId, Long receiverId1, Long receiverId2, Long senderId2);
-}
\ No newline at end of file
+    // Keyset theo id giảm dần (id Snowflake tăng theo thời gian), dùng index (conversation_id, id)
+    List<Message> findByConversationIdOrderByIdDesc(Long conversationId, Limit limit);
+
+    List<Message> findByConversationIdAndIdLessThanOrderByIdDesc(Long conversationId, Long id, Limit limit);
+
+    @Query("SELECT m.conversationId FROM Message m WHERE m.id = :id")
+    Optional<Long> findConversationIdById(@Param("id") Long id);
+
+    // Đánh dấu đã đọc mọi tin khách hàng gửi trong cuộc hội thoại có id <= upToId bằng một câu UPDATE
+    @Transactional
+    @Modifying
+    @Query("UPDATE Message m SET m.isRead = true " +
+            "WHERE m.conversationId = :conversationId AND m.senderId = :conversationId AND m.isRead = false AND m.id <= :upToId")
+    int markReadUpTo(@Param("conversationId") Long conversationId, @Param("upToId") Long upToId);
+
+    @Transactional
+    @Modifying
+    @Query("UPDATE Message m SET m.isRead = true WHERE m.id IN :ids AND m.isRead = false")
+    int markReadByIdIn(@Param("ids") Collection<Long> ids);
+
+    // Điền conversation_id cho dữ liệu cũ theo từng lô để không khóa cả bảng trong một transaction dài
+    @Transactional
+    @Modifying
+    @Query(value = "UPDATE messages SET conversation_id = CASE WHEN receiver_id = 0 THEN sender_id ELSE receiver_id END " +
+            "WHERE conversation_id IS NULL LIMIT :batchSize", nativeQuery = true)
+    int backfillConversationIds(@Param("batchSize") int batchSize);
+}
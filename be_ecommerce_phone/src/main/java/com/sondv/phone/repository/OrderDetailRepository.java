@@ -1,11 +1,23 @@
 package com.sondv.phone.repository;
 
+import com.sondv.phone.dto.OrderLineExportRow;
+import com.sondv.phone.dto.TopSellingProductDTO;
 import com.sondv.phone.model.OrderDetail;
 import com.sondv.phone.model.OrderStatus;
+import jakarta.persistence.QueryHint;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 
 import java.time.LocalDateTime;
 import java.util.List;
+import java.util.stream.Stream;
+
+import static org.hibernate.jpa.HibernateHints.HINT_CACHEABLE;
+import static org.hibernate.jpa.HibernateHints.HINT_FETCH_SIZE;
+import static org.hibernate.jpa.HibernateHints.HINT_READ_ONLY;
 
 public interface OrderDetailRepository extends JpaRepository<OrderDetail, Long> {
     List<OrderDetail> findByOrderId(Long orderId); // ✅ Tìm sản phẩm theo ID đơn hàng
@@ -15,4 +27,29 @@ public interface OrderDetailRepository extends JpaRepository<OrderDetail, Long>
             LocalDateTime endDate,
             OrderStatus status
     );
+
+    // Gom nhóm trong DB: chỉ trả về `limit` dòng dù khoảng thời gian có bao nhiêu đơn
+    @Query("SELECT new com.sondv.phone.dto.TopSellingProductDTO(p.id, p.name, SUM(d.quantity), SUM(d.price * d.quantity)) " +
+            "FROM OrderDetail d JOIN d.order o JOIN d.product p " +
+            "WHERE o.status = :status AND o.createdAt BETWEEN :startDate AND :endDate " +
+            "GROUP BY p.id, p.name " +
+            "ORDER BY SUM(d.quantity) DESC")
+    List<TopSellingProductDTO> findTopSellingProducts(@Param("startDate") LocalDateTime startDate,
+                                                      @Param("endDate") LocalDateTime endDate,
+                                                      @Param("status") OrderStatus status,
+                                                      Limit limit);
+
+    // Đọc tuần tự chi tiết đơn cho file xuất (xem OrderRepository.streamExportRows)
+    @QueryHints({
+            @QueryHint(name = HINT_FETCH_SIZE, value = "" + Integer.MIN_VALUE),
+            @QueryHint(name = HINT_READ_ONLY, value = "true"),
+            @QueryHint(name = HINT_CACHEABLE, value = "false")
+    })
+    @Query("SELECT new com.sondv.phone.dto.OrderLineExportRow(o.id, o.createdAt, o.status, p.id, p.name, d.quantity, d.price) " +
+            "FROM OrderDetail d JOIN d.order o JOIN d.product p " +
+            "WHERE o.createdAt BETWEEN :startDate AND :endDate AND (:status IS NULL OR o.status = :status) " +
+            "ORDER BY o.createdAt, o.id, d.id")
+    Stream<OrderLineExportRow> streamExportRows(@Param("startDate") LocalDateTime startDate,
+                                                @Param("endDate") LocalDateTime endDate,
+                                                @Param("status") OrderStatus status);
 }
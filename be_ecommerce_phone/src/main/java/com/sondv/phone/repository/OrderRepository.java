@@ -1,19 +1,56 @@
 package com.sondv.phone.repository;
 
+import com.sondv.phone.dto.OrderExportRow;
+import com.sondv.phone.dto.OrderStatusCountDTO;
 import com.sondv.phone.model.Order;
 import com.sondv.phone.model.OrderStatus;
+import jakarta.persistence.QueryHint;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 
+import java.math.BigDecimal;
 import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
+
+import static org.hibernate.jpa.HibernateHints.HINT_CACHEABLE;
+import static org.hibernate.jpa.HibernateHints.HINT_FETCH_SIZE;
+import static org.hibernate.jpa.HibernateHints.HINT_READ_ONLY;
 
 public interface OrderRepository extends JpaRepository<Order, Long> {
     List<Order> findByCustomerId(Long customerId);
 
     long countByStatus(OrderStatus status);
 
+    // Các truy vấn báo cáo dùng index (status, created_at): chỉ quét các đơn đúng trạng thái trong khoảng thời gian
+    @Query("SELECT COALESCE(SUM(o.totalPrice), 0) FROM Order o " +
+            "WHERE o.status = :status AND o.createdAt BETWEEN :startDate AND :endDate")
+    BigDecimal sumTotalPriceByStatusAndCreatedAtBetween(@Param("status") OrderStatus status,
+                                                        @Param("startDate") LocalDateTime startDate,
+                                                        @Param("endDate") LocalDateTime endDate);
+
+    @Query("SELECT new com.sondv.phone.dto.OrderStatusCountDTO(o.status, COUNT(o)) FROM Order o GROUP BY o.status")
+    List<OrderStatusCountDTO> countGroupByStatus();
+
+    // Đọc tuần tự cho file xuất: fetch size Integer.MIN_VALUE bật chế độ streaming của MySQL Connector/J,
+    // driver trả từng dòng thay vì nạp cả kết quả vào bộ nhớ. Phải gọi trong transaction và đóng Stream sau khi dùng.
+    @QueryHints({
+            @QueryHint(name = HINT_FETCH_SIZE, value = "" + Integer.MIN_VALUE),
+            @QueryHint(name = HINT_READ_ONLY, value = "true"),
+            @QueryHint(name = HINT_CACHEABLE, value = "false")
+    })
+    @Query("SELECT new com.sondv.phone.dto.OrderExportRow(o.id, o.createdAt, o.status, u.fullName, u.email, o.totalPrice) " +
+            "FROM Order o JOIN o.customer c JOIN c.user u " +
+            "WHERE o.createdAt BETWEEN :startDate AND :endDate AND (:status IS NULL OR o.status = :status) " +
+            "ORDER BY o.createdAt, o.id")
+    Stream<OrderExportRow> streamExportRows(@Param("startDate") LocalDateTime startDate,
+                                            @Param("endDate") LocalDateTime endDate,
+                                            @Param("status") OrderStatus status);
+
     List<Order> findByCreatedAtBetweenAndStatus(LocalDateTime startDate, LocalDateTime endDate, OrderStatus status);
 
     List<Order> findTop10ByOrderByCreatedAtDesc();
@@ -43,4 +80,21 @@ public interface OrderRepository extends JpaRepository<Order, Long> {
 
     List<Order> findByCreatedAtBetween(LocalDateTime start, LocalDateTime end);
 
+    // Đơn PENDING chưa thanh toán (dùng để khôi phục các lượt giữ hàng khi khởi động)
+    @Query("SELECT o FROM Order o WHERE o.status = com.sondv.phone.model.OrderStatus.PENDING " +
+            "AND NOT EXISTS (SELECT p FROM Payment p WHERE p.order = o " +
+            "AND p.status IN (com.sondv.phone.model.PaymentStatus.PAID, com.sondv.phone.model.PaymentStatus.AWAITING_DELIVERY))")
+    List<Order> findPendingUnpaid();
+
+    // Phân trang keyset theo (createdAt, id) giảm dần; customerId null = tất cả đơn hàng
+    @Query("SELECT o FROM Order o WHERE (:customerId IS NULL OR o.customer.id = :customerId) " +
+            "AND (:afterCreatedAt IS NULL OR o.createdAt < :afterCreatedAt " +
+            "OR (o.createdAt = :afterCreatedAt AND o.id < :afterId)) " +
+            "ORDER BY o.createdAt DESC, o.id DESC")
+    List<Order> findPageAfter(
+            @Param("customerId") Long customerId,
+            @Param("afterCreatedAt") LocalDateTime afterCreatedAt,
+            @Param("afterId") Long afterId,
+            Limit limit);
+
 }
\ No newline at end of file
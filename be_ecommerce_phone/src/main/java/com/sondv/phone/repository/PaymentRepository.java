@@ -1,9 +1,26 @@
 package com.sondv.phone.repository;
 
 import com.sondv.phone.model.Payment;
+import jakarta.persistence.LockModeType;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 
 public interface PaymentRepository extends JpaRepository<Payment, Long> {
     Optional<Payment> findByOrderId(Long orderId);
+
+    List<Payment> findByOrderIdIn(Collection<Long> orderIds);
+
+    // Khóa dòng thanh toán tới hết transaction: reaper hủy đơn và cập nhật PAID không ghi đè lên nhau
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT p FROM Payment p WHERE p.order.id = :orderId")
+    Optional<Payment> findByOrderIdForUpdate(@Param("orderId") Long orderId);
+
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT p FROM Payment p WHERE p.order.id IN :orderIds ORDER BY p.order.id")
+    List<Payment> findByOrderIdInForUpdate(@Param("orderIds") Collection<Long> orderIds);
 }
@@ -1,19 +1,55 @@
 package com.sondv.phone.repository;
 
 import com.sondv.phone.model.Product;
+import com.sondv.phone.search.ProductDocument;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.domain.Specification;
 import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
+import java.util.Optional;
 
-public interface ProductRepository extends JpaRepository<Product, Long> {
+public interface ProductRepository extends JpaRepository<Product, Long>, JpaSpecificationExecutor<Product> {
     List<Product> findByCategoryId(Long categoryId);
+
+    // Trang danh sách: category, supplier, inventory nạp cùng query; ảnh nạp theo lô; không đụng tới inventoryLogs
+    @EntityGraph(attributePaths = {"category", "supplier", "inventory"})
     Page<Product> findByNameContainingIgnoreCase(String name, Pageable pageable);
+
+    @EntityGraph(attributePaths = {"category", "supplier", "inventory"})
     Page<Product> findAll(Pageable pageable);
+
+    @EntityGraph(attributePaths = {"category", "supplier", "inventory"})
+    Page<Product> findAll(Specification<Product> spec, Pageable pageable);
+
+    @EntityGraph(attributePaths = {"category", "supplier", "inventory"})
+    List<Product> findByOrderByIdDesc(Limit limit);
+
+    @EntityGraph(attributePaths = {"category", "supplier", "inventory"})
+    List<Product> findByOrderBySoldQuantityDesc(Limit limit);
+
+    // Phân trang keyset: các trang sau trang đầu (trang đầu dùng findByOrderByIdDesc)
+    @EntityGraph(attributePaths = {"category", "supplier", "inventory"})
+    List<Product> findByIdLessThanOrderByIdDesc(Long id, Limit limit);
+
+    @EntityGraph(attributePaths = {"category", "supplier", "inventory"})
+    List<Product> findByIdIn(Collection<Long> ids);
+
+    // Trang chi tiết
+    @EntityGraph(attributePaths = {"images", "category", "supplier", "inventory"})
+    @Query("SELECT p FROM Product p WHERE p.id = :id")
+    Optional<Product> findDetailById(@Param("id") Long id);
+
     List<Product> findTop5ByOrderBySoldQuantityDesc();
 
     List<Product> findByStockLessThan(int threshold);
@@ -22,12 +58,41 @@ public interface ProductRepository extends JpaRepository<Product, Long> {
     @Query("SELECT p FROM Product p")
     List<Product> findAllWithCategoryAndSupplier();
 
+    @EntityGraph(attributePaths = {"category", "supplier", "inventory"})
     List<Product> findByIsFeaturedTrue();
     List<Product> findAllByOrderByIdDesc();
     List<Product> findByDiscountEndDateBefore(LocalDateTime dateTime);
 
     List<Product> findBySoldQuantityGreaterThan(int quantity);
 
+    long countBySoldQuantityGreaterThan(int quantity);
+
     @Query("SELECT p FROM Product p ORDER BY p.soldQuantity DESC LIMIT ?1")
     List<Product> findTopNByOrderBySoldQuantityDesc(int limit);
-}
\ No newline at end of file
+
+    // Tính lại effective_price cho các sản phẩm vừa vào/ra khỏi thời gian giảm giá
+    @Modifying
+    @Transactional
+    @Query("UPDATE Product p SET p.effectivePrice = " +
+            "CASE WHEN p.discountedPrice IS NOT NULL AND p.discountStartDate <= :now AND p.discountEndDate >= :now " +
+            "THEN p.discountedPrice ELSE p.sellingPrice END " +
+            "WHERE p.effectivePrice IS NULL OR p.effectivePrice <> " +
+            "CASE WHEN p.discountedPrice IS NOT NULL AND p.discountStartDate <= :now AND p.discountEndDate >= :now " +
+            "THEN p.discountedPrice ELSE p.sellingPrice END")
+    int refreshEffectivePrices(@Param("now") LocalDateTime now);
+
+    @Query("SELECT MIN(p.discountStartDate) FROM Product p WHERE p.discountedPrice IS NOT NULL AND p.discountStartDate > :now")
+    LocalDateTime findNextDiscountStart(@Param("now") LocalDateTime now);
+
+    @Query("SELECT MIN(p.discountEndDate) FROM Product p WHERE p.discountedPrice IS NOT NULL AND p.discountEndDate >= :now")
+    LocalDateTime findNextDiscountEnd(@Param("now") LocalDateTime now);
+
+    // Dữ liệu cho chỉ mục tìm kiếm trong bộ nhớ (projection, không nạp entity)
+    @Query("SELECT new com.sondv.phone.search.ProductDocument(p.id, p.name, p.description, c.id, c.name, s.id, s.name, " +
+            "p.effectivePrice, p.soldQuantity) FROM Product p JOIN p.category c JOIN p.supplier s")
+    List<ProductDocument> findAllIndexDocuments();
+
+    @Query("SELECT new com.sondv.phone.search.ProductDocument(p.id, p.name, p.description, c.id, c.name, s.id, s.name, " +
+            "p.effectivePrice, p.soldQuantity) FROM Product p JOIN p.category c JOIN p.supplier s WHERE p.id IN :ids")
+    List<ProductDocument> findIndexDocumentsByIdIn(@Param("ids") Collection<Long> ids);
+}
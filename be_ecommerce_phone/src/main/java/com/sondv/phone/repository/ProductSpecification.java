@@ -0,0 +1,101 @@
+package com.sondv.phone.repository;
+
+import com.sondv.phone.model.Product;
+import com.sondv.phone.search.PriceBand;
+import jakarta.persistence.criteria.Predicate;
+import org.springframework.data.jpa.domain.Specification;
+
+import java.math.BigDecimal;
+import java.util.Collection;
+import java.util.List;
+
+// Các điều kiện lọc/sắp xếp sản phẩm chạy trực tiếp trong SQL
+public final class ProductSpecification {
+
+    private ProductSpecification() {
+    }
+
+    public static Specification<Product> nameContains(String keyword) {
+        if (keyword == null || keyword.isBlank()) {
+            return null;
+        }
+        String pattern = "%" + keyword.trim().toLowerCase() + "%";
+        return (root, query, cb) -> cb.like(cb.lower(root.get("name")), pattern);
+    }
+
+    // Lọc theo danh sách id lấy từ chỉ mục tìm kiếm
+    public static Specification<Product> idIn(Collection<Long> ids) {
+        return (root, query, cb) -> root.get("id").in(ids);
+    }
+
+    public static Specification<Product> categoryIdIn(Collection<Long> categoryIds) {
+        if (categoryIds == null || categoryIds.isEmpty()) {
+            return null;
+        }
+        return (root, query, cb) -> root.get("category").get("id").in(categoryIds);
+    }
+
+    public static Specification<Product> supplierIdIn(Collection<Long> supplierIds) {
+        if (supplierIds == null || supplierIds.isEmpty()) {
+            return null;
+        }
+        return (root, query, cb) -> root.get("supplier").get("id").in(supplierIds);
+    }
+
+    // Giá hiện tại nằm trong một trong các khoảng giá đã chọn
+    public static Specification<Product> priceInBands(Collection<PriceBand> bands) {
+        if (bands == null || bands.isEmpty()) {
+            return null;
+        }
+        return (root, query, cb) -> {
+            List<Predicate> predicates = bands.stream().map(band -> {
+                Predicate lower = band.getMin() != null
+                        ? cb.greaterThanOrEqualTo(root.get("effectivePrice"), band.getMin())
+                        : cb.conjunction();
+                Predicate upper = band.getMax() != null
+                        ? cb.lessThan(root.get("effectivePrice"), band.getMax())
+                        : cb.conjunction();
+                return cb.and(lower, upper);
+            }).toList();
+            return cb.or(predicates.toArray(new Predicate[0]));
+        };
+    }
+
+    // Lọc theo cột effective_price (đã có index) thay vì tính giá hiện tại cho từng dòng
+    public static Specification<Product> currentPriceGreaterThanOrEqual(BigDecimal minPrice) {
+        if (minPrice == null) {
+            return null;
+        }
+        return (root, query, cb) -> cb.greaterThanOrEqualTo(root.get("effectivePrice"), minPrice);
+    }
+
+    public static Specification<Product> currentPriceLessThanOrEqual(BigDecimal maxPrice) {
+        if (maxPrice == null) {
+            return null;
+        }
+        return (root, query, cb) -> cb.lessThanOrEqualTo(root.get("effectivePrice"), maxPrice);
+    }
+
+    // Sắp xếp theo kiểu do client gửi lên (newest, bestselling, priceasc, pricedesc), luôn kèm id để phân trang ổn định
+    public static Specification<Product> orderBy(String sortBy) {
+        return (root, query, cb) -> {
+            switch (sortBy != null ? sortBy.toLowerCase() : "") {
+                case "newest":
+                    query.orderBy(cb.desc(root.get("id")));
+                    break;
+                case "bestselling":
+                    query.orderBy(cb.desc(root.get("soldQuantity")), cb.desc(root.get("id")));
+                    break;
+                case "priceasc":
+                    query.orderBy(cb.asc(root.get("effectivePrice")), cb.asc(root.get("id")));
+                    break;
+                case "pricedesc":
+                    query.orderBy(cb.desc(root.get("effectivePrice")), cb.desc(root.get("id")));
+                    break;
+                default:
+                    break;
+            }
+            return null;
+        };
+    }
+}
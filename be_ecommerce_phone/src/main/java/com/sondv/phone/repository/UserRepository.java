@@ -2,8 +2,12 @@ package com.sondv.phone.repository;
 
 import com.sondv.phone.model.RoleName; // Thay Role bằng RoleName
 import com.sondv.phone.model.User;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDateTime;
 import java.util.List;
@@ -25,4 +29,15 @@ public interface UserRepository extends JpaRepository<User, Long> {
 
     @Query("SELECT u FROM User u ORDER BY u.createdAt DESC LIMIT ?1")
     List<User> findTopNByOrderByCreatedAtDesc(int limit);
+
+    // Phân trang keyset theo id giảm dần
+    List<User> findAllByOrderByIdDesc(Limit limit);
+
+    List<User> findByIdLessThanOrderByIdDesc(Long id, Limit limit);
+
+    // Cập nhật riêng thời hạn khóa chat, không cần nạp entity
+    @Transactional
+    @Modifying
+    @Query("UPDATE User u SET u.chatBanUntil = :until WHERE u.id = :id")
+    int updateChatBanUntil(@Param("id") Long id, @Param("until") LocalDateTime until);
 }
\ No newline at end of file
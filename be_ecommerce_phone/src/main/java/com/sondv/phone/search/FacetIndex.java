@@ -0,0 +1,246 @@
+package com.sondv.phone.search;
+
+import com.sondv.phone.dto.FacetCountDTO;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+// Chỉ mục facet dạng bitset: mỗi sản phẩm có một số thứ tự (ordinal) liên tục,
+// mỗi danh mục / nhà cung cấp / khoảng giá là một BitSet trên các ordinal đó.
+// Đếm facet chỉ là phép AND + cardinality trong bộ nhớ, không tốn thêm câu SQL nào.
+@Component
+public class FacetIndex implements ProductIndex {
+
+    public record FacetCounts(List<FacetCountDTO> categories,
+                              List<FacetCountDTO> suppliers,
+                              List<FacetCountDTO> priceBands) {
+
+        public static FacetCounts empty() {
+            return new FacetCounts(List.of(), List.of(), List.of());
+        }
+    }
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<Long, Integer> ordinals = new HashMap<>();
+    private final Map<Integer, ProductDocument> documents = new HashMap<>();
+    private final Deque<Integer> freeOrdinals = new ArrayDeque<>();
+    private int nextOrdinal = 0;
+
+    private final BitSet live = new BitSet();
+    private final Map<Long, BitSet> byCategory = new HashMap<>();
+    private final Map<Long, BitSet> bySupplier = new HashMap<>();
+    private final Map<PriceBand, BitSet> byPriceBand = new EnumMap<>(PriceBand.class);
+    private final Map<Long, String> categoryNames = new HashMap<>();
+    private final Map<Long, String> supplierNames = new HashMap<>();
+    private volatile boolean ready = false;
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    @Override
+    public void rebuild(Collection<ProductDocument> snapshot) {
+        lock.writeLock().lock();
+        try {
+            ordinals.clear();
+            documents.clear();
+            freeOrdinals.clear();
+            nextOrdinal = 0;
+            live.clear();
+            byCategory.clear();
+            bySupplier.clear();
+            byPriceBand.clear();
+            categoryNames.clear();
+            supplierNames.clear();
+            snapshot.forEach(this::addDocument);
+            ready = true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void upsert(ProductDocument document) {
+        lock.writeLock().lock();
+        try {
+            removeDocument(document.id());
+            addDocument(document);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void remove(Long productId) {
+        lock.writeLock().lock();
+        try {
+            removeDocument(productId);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Đếm facet theo kiểu multi-select: số lượng của một facet tính với mọi bộ lọc trừ chính facet đó.
+    // keywordIds == null nghĩa là không lọc theo từ khóa.
+    public FacetCounts count(Collection<Long> keywordIds, FacetSelection selection) {
+        lock.readLock().lock();
+        try {
+            BitSet base = keywordIds != null ? toBits(keywordIds) : (BitSet) live.clone();
+            BitSet categoryFilter = union(byCategory, selection.categoryIds());
+            BitSet supplierFilter = union(bySupplier, selection.supplierIds());
+            BitSet priceFilter = union(byPriceBand, selection.priceBands());
+
+            BitSet categoryBase = intersect(base, supplierFilter, priceFilter);
+            List<FacetCountDTO> categories = new ArrayList<>();
+            byCategory.forEach((categoryId, bits) -> {
+                int count = cardinality(categoryBase, bits);
+                boolean selected = selection.categoryIds().contains(categoryId);
+                if (count > 0 || selected) {
+                    categories.add(new FacetCountDTO(String.valueOf(categoryId), categoryNames.get(categoryId), count, selected));
+                }
+            });
+
+            BitSet supplierBase = intersect(base, categoryFilter, priceFilter);
+            List<FacetCountDTO> suppliers = new ArrayList<>();
+            bySupplier.forEach((supplierId, bits) -> {
+                int count = cardinality(supplierBase, bits);
+                boolean selected = selection.supplierIds().contains(supplierId);
+                if (count > 0 || selected) {
+                    suppliers.add(new FacetCountDTO(String.valueOf(supplierId), supplierNames.get(supplierId), count, selected));
+                }
+            });
+
+            BitSet priceBase = intersect(base, categoryFilter, supplierFilter);
+            List<FacetCountDTO> priceBands = new ArrayList<>();
+            for (PriceBand band : PriceBand.values()) {
+                BitSet bits = byPriceBand.get(band);
+                int count = bits != null ? cardinality(priceBase, bits) : 0;
+                priceBands.add(new FacetCountDTO(band.name(), band.getLabel(), count, selection.priceBands().contains(band)));
+            }
+
+            Comparator<FacetCountDTO> byCount = Comparator.comparingInt(FacetCountDTO::getCount).reversed()
+                    .thenComparing(FacetCountDTO::getLabel, Comparator.nullsLast(Comparator.naturalOrder()));
+            categories.sort(byCount);
+            suppliers.sort(byCount);
+            return new FacetCounts(categories, suppliers, priceBands);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Giữ lại các id thỏa mãn lựa chọn facet, không đổi thứ tự (dùng cho kết quả đã xếp hạng theo độ liên quan)
+    public List<Long> filter(List<Long> productIds, FacetSelection selection) {
+        lock.readLock().lock();
+        try {
+            BitSet matches = intersect(live,
+                    union(byCategory, selection.categoryIds()),
+                    union(bySupplier, selection.supplierIds()),
+                    union(byPriceBand, selection.priceBands()));
+            List<Long> result = new ArrayList<>();
+            for (Long productId : productIds) {
+                Integer ordinal = ordinals.get(productId);
+                if (ordinal != null && matches.get(ordinal)) {
+                    result.add(productId);
+                }
+            }
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void addDocument(ProductDocument document) {
+        int ordinal = !freeOrdinals.isEmpty() ? freeOrdinals.pop() : nextOrdinal++;
+        ordinals.put(document.id(), ordinal);
+        documents.put(ordinal, document);
+        live.set(ordinal);
+        if (document.categoryId() != null) {
+            byCategory.computeIfAbsent(document.categoryId(), k -> new BitSet()).set(ordinal);
+            categoryNames.put(document.categoryId(), document.categoryName());
+        }
+        if (document.supplierId() != null) {
+            bySupplier.computeIfAbsent(document.supplierId(), k -> new BitSet()).set(ordinal);
+            supplierNames.put(document.supplierId(), document.supplierName());
+        }
+        PriceBand band = PriceBand.of(document.price());
+        if (band != null) {
+            byPriceBand.computeIfAbsent(band, k -> new BitSet()).set(ordinal);
+        }
+    }
+
+    private void removeDocument(Long productId) {
+        Integer ordinal = ordinals.remove(productId);
+        if (ordinal == null) {
+            return;
+        }
+        ProductDocument document = documents.remove(ordinal);
+        live.clear(ordinal);
+        clearBit(byCategory, document.categoryId(), ordinal, categoryNames);
+        clearBit(bySupplier, document.supplierId(), ordinal, supplierNames);
+        PriceBand band = PriceBand.of(document.price());
+        if (band != null && byPriceBand.containsKey(band)) {
+            byPriceBand.get(band).clear(ordinal);
+        }
+        // Tái sử dụng ordinal để các bitset không phình ra theo số lần cập nhật
+        freeOrdinals.push(ordinal);
+    }
+
+    private static void clearBit(Map<Long, BitSet> facet, Long key, int ordinal, Map<Long, String> names) {
+        if (key == null) {
+            return;
+        }
+        BitSet bits = facet.get(key);
+        if (bits == null) {
+            return;
+        }
+        bits.clear(ordinal);
+        if (bits.isEmpty()) {
+            facet.remove(key);
+            names.remove(key);
+        }
+    }
+
+    private BitSet toBits(Collection<Long> productIds) {
+        BitSet bits = new BitSet();
+        for (Long productId : productIds) {
+            Integer ordinal = ordinals.get(productId);
+            if (ordinal != null) {
+                bits.set(ordinal);
+            }
+        }
+        return bits;
+    }
+
+    // null nghĩa là facet không được chọn (không lọc)
+    private static <K> BitSet union(Map<K, BitSet> facet, Set<K> keys) {
+        if (keys.isEmpty()) {
+            return null;
+        }
+        BitSet result = new BitSet();
+        for (K key : keys) {
+            BitSet bits = facet.get(key);
+            if (bits != null) {
+                result.or(bits);
+            }
+        }
+        return result;
+    }
+
+    private static BitSet intersect(BitSet base, BitSet... filters) {
+        BitSet result = (BitSet) base.clone();
+        for (BitSet filter : filters) {
+            if (filter != null) {
+                result.and(filter);
+            }
+        }
+        return result;
+    }
+
+    private static int cardinality(BitSet base, BitSet bits) {
+        BitSet result = (BitSet) bits.clone();
+        result.and(base);
+        return result.cardinality();
+    }
+}
@@ -0,0 +1,13 @@
+package com.sondv.phone.search;
+
+import java.util.Set;
+
+// Các giá trị facet người dùng đã chọn; trong cùng một facet là OR, giữa các facet là AND
+public record FacetSelection(Set<Long> categoryIds, Set<Long> supplierIds, Set<PriceBand> priceBands) {
+
+    public FacetSelection {
+        categoryIds = categoryIds != null ? Set.copyOf(categoryIds) : Set.of();
+        supplierIds = supplierIds != null ? Set.copyOf(supplierIds) : Set.of();
+        priceBands = priceBands != null ? Set.copyOf(priceBands) : Set.of();
+    }
+}
@@ -0,0 +1,47 @@
+package com.sondv.phone.search;
+
+import java.math.BigDecimal;
+
+// Các khoảng giá dùng cho bộ lọc facet (VNĐ), cận dưới tính vào khoảng, cận trên không tính
+public enum PriceBand {
+    UNDER_2M("Dưới 2 triệu", null, 2_000_000),
+    FROM_2M_TO_5M("2 - 5 triệu", 2_000_000, 5_000_000),
+    FROM_5M_TO_10M("5 - 10 triệu", 5_000_000, 10_000_000),
+    FROM_10M_TO_20M("10 - 20 triệu", 10_000_000, 20_000_000),
+    OVER_20M("Trên 20 triệu", 20_000_000, null);
+
+    private final String label;
+    private final BigDecimal min;
+    private final BigDecimal max;
+
+    PriceBand(String label, Integer min, Integer max) {
+        this.label = label;
+        this.min = min != null ? BigDecimal.valueOf(min) : null;
+        this.max = max != null ? BigDecimal.valueOf(max) : null;
+    }
+
+    public String getLabel() {
+        return label;
+    }
+
+    public BigDecimal getMin() {
+        return min;
+    }
+
+    public BigDecimal getMax() {
+        return max;
+    }
+
+    public static PriceBand of(BigDecimal price) {
+        if (price == null) {
+            return null;
+        }
+        for (PriceBand band : values()) {
+            if ((band.min == null || price.compareTo(band.min) >= 0)
+                    && (band.max == null || price.compareTo(band.max) < 0)) {
+                return band;
+            }
+        }
+        return null;
+    }
+}
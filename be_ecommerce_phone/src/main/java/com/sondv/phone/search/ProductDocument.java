@@ -0,0 +1,20 @@
+package com.sondv.phone.search;
+
+import java.math.BigDecimal;
+
+// Bản sao gọn của sản phẩm dùng cho các chỉ mục trong bộ nhớ (tìm kiếm, gợi ý, facet)
+public record ProductDocument(
+        Long id,
+        String name,
+        String description,
+        Long categoryId,
+        String categoryName,
+        Long supplierId,
+        String supplierName,
+        BigDecimal price,
+        Integer soldQuantity) {
+
+    public int popularity() {
+        return soldQuantity != null ? soldQuantity : 0;
+    }
+}
@@ -0,0 +1,17 @@
+package com.sondv.phone.search;
+
+import java.util.Collection;
+
+// Chỉ mục sản phẩm trong bộ nhớ, được ProductIndexer cập nhật tuần tự trên một thread
+public interface ProductIndex {
+
+    void rebuild(Collection<ProductDocument> documents);
+
+    void upsert(ProductDocument document);
+
+    void remove(Long productId);
+
+    // Chỉ số bán (soldQuantity) của sản phẩm đã có trong chỉ mục thay đổi; chỉ mục không xếp hạng theo số bán thì bỏ qua
+    default void updatePopularity(Long productId, int popularity) {
+    }
+}
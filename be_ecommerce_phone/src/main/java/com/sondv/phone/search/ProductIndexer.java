@@ -0,0 +1,233 @@
+package com.sondv.phone.search;
+
+import com.sondv.phone.event.ProductChangedEvent;
+import com.sondv.phone.repository.ProductRepository;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.io.*;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+// Giữ bản sao sản phẩm trong bộ nhớ và đồng bộ các ProductIndex khi sản phẩm thay đổi.
+// Bản sao được lưu xuống đĩa để khi khởi động lại có thể tìm kiếm ngay trong lúc nạp lại từ DB.
+@Component
+public class ProductIndexer {
+
+    private static final Logger logger = LoggerFactory.getLogger(ProductIndexer.class);
+    private static final int SNAPSHOT_VERSION = 1;
+    private static final String SNAPSHOT_FILE = "products.snapshot";
+
+    private final ProductRepository productRepository;
+    private final List<ProductIndex> indexes;
+    private final Path snapshotPath;
+    private final Map<Long, ProductDocument> documents = new ConcurrentHashMap<>();
+    // Mọi thay đổi chỉ mục chạy tuần tự trên một thread, ngoài thread xử lý request
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "product-indexer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private volatile boolean dirty = false;
+
+    public ProductIndexer(ProductRepository productRepository,
+                          List<ProductIndex> indexes,
+                          @Value("${search.index.dir:data/search}") String indexDir) {
+        this.productRepository = productRepository;
+        this.indexes = indexes;
+        this.snapshotPath = Paths.get(indexDir, SNAPSHOT_FILE);
+    }
+
+    public Optional<ProductDocument> getDocument(Long productId) {
+        return Optional.ofNullable(documents.get(productId));
+    }
+
+    public Collection<ProductDocument> getDocuments() {
+        return Collections.unmodifiableCollection(documents.values());
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        executor.submit(() -> {
+            if (loadSnapshot()) {
+                rebuildIndexes();
+            }
+            reloadAll();
+        });
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onProductChanged(ProductChangedEvent event) {
+        if (event.type() == ProductChangedEvent.ChangeType.STOCK) {
+            // Đổi tồn kho không đụng tới nội dung được đánh chỉ mục, chỉ có thể đổi số bán (trọng số gợi ý / xếp hạng)
+            if (!event.isAll()) {
+                executor.submit(() -> refreshPopularity(event.productIds()));
+            }
+            return;
+        }
+        executor.submit(() -> {
+            if (event.isAll()) {
+                reloadAll();
+            } else if (event.type() == ProductChangedEvent.ChangeType.DELETED) {
+                event.productIds().forEach(this::removeDocument);
+            } else {
+                reload(event.productIds());
+            }
+        });
+    }
+
+    // Ghi snapshot định kỳ khi có thay đổi
+    @Scheduled(fixedDelayString = "${search.index.snapshot-interval-ms:30000}")
+    public void flushSnapshot() {
+        if (dirty) {
+            executor.submit(this::saveSnapshot);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        executor.submit(this::saveSnapshot);
+        executor.shutdown();
+        executor.awaitTermination(5, TimeUnit.SECONDS);
+    }
+
+    private void reloadAll() {
+        try {
+            List<ProductDocument> loaded = productRepository.findAllIndexDocuments();
+            documents.clear();
+            loaded.forEach(document -> documents.put(document.id(), document));
+            rebuildIndexes();
+            dirty = true;
+            logger.info("Đã nạp chỉ mục tìm kiếm cho {} sản phẩm", loaded.size());
+        } catch (Exception e) {
+            logger.error("Lỗi khi nạp lại chỉ mục sản phẩm: {}", e.getMessage(), e);
+        }
+    }
+
+    private void reload(Set<Long> productIds) {
+        try {
+            List<ProductDocument> loaded = productRepository.findIndexDocumentsByIdIn(productIds);
+            Set<Long> missing = new HashSet<>(productIds);
+            for (ProductDocument document : loaded) {
+                missing.remove(document.id());
+                documents.put(document.id(), document);
+                indexes.forEach(index -> index.upsert(document));
+            }
+            missing.forEach(this::removeDocument);
+            dirty = true;
+        } catch (Exception e) {
+            logger.error("Lỗi khi cập nhật chỉ mục cho sản phẩm {}: {}", productIds, e.getMessage(), e);
+        }
+    }
+
+    private void refreshPopularity(Set<Long> productIds) {
+        try {
+            for (ProductDocument loaded : productRepository.findIndexDocumentsByIdIn(productIds)) {
+                ProductDocument current = documents.get(loaded.id());
+                if (current == null || current.popularity() == loaded.popularity()) {
+                    continue;
+                }
+                documents.put(current.id(), new ProductDocument(current.id(), current.name(), current.description(),
+                        current.categoryId(), current.categoryName(), current.supplierId(), current.supplierName(),
+                        current.price(), loaded.soldQuantity()));
+                indexes.forEach(index -> index.updatePopularity(current.id(), loaded.popularity()));
+                dirty = true;
+            }
+        } catch (Exception e) {
+            logger.error("Lỗi khi cập nhật số bán trong chỉ mục cho sản phẩm {}: {}", productIds, e.getMessage(), e);
+        }
+    }
+
+    private void removeDocument(Long productId) {
+        documents.remove(productId);
+        indexes.forEach(index -> index.remove(productId));
+        dirty = true;
+    }
+
+    private void rebuildIndexes() {
+        Collection<ProductDocument> snapshot = List.copyOf(documents.values());
+        indexes.forEach(index -> index.rebuild(snapshot));
+    }
+
+    private boolean loadSnapshot() {
+        if (!Files.exists(snapshotPath)) {
+            return false;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(snapshotPath)))) {
+            if (in.readInt() != SNAPSHOT_VERSION) {
+                return false;
+            }
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                ProductDocument document = new ProductDocument(
+                        in.readLong(), readString(in), readString(in),
+                        in.readLong(), readString(in),
+                        in.readLong(), readString(in),
+                        Optional.ofNullable(readString(in)).map(BigDecimal::new).orElse(null),
+                        in.readInt());
+                documents.put(document.id(), document);
+            }
+            logger.info("Đã đọc snapshot chỉ mục với {} sản phẩm", count);
+            return true;
+        } catch (IOException | RuntimeException e) {
+            logger.warn("Không đọc được snapshot chỉ mục {}: {}", snapshotPath, e.getMessage());
+            documents.clear();
+            return false;
+        }
+    }
+
+    private void saveSnapshot() {
+        dirty = false;
+        try {
+            Files.createDirectories(snapshotPath.getParent());
+            Path temp = snapshotPath.resolveSibling(SNAPSHOT_FILE + ".tmp");
+            List<ProductDocument> snapshot = List.copyOf(documents.values());
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+                out.writeInt(SNAPSHOT_VERSION);
+                out.writeInt(snapshot.size());
+                for (ProductDocument document : snapshot) {
+                    out.writeLong(document.id());
+                    writeString(out, document.name());
+                    writeString(out, document.description());
+                    out.writeLong(document.categoryId());
+                    writeString(out, document.categoryName());
+                    out.writeLong(document.supplierId());
+                    writeString(out, document.supplierName());
+                    writeString(out, document.price() != null ? document.price().toPlainString() : null);
+                    out.writeInt(document.popularity());
+                }
+            }
+            Files.move(temp, snapshotPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            dirty = true;
+            logger.warn("Không ghi được snapshot chỉ mục {}: {}", snapshotPath, e.getMessage());
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+}
@@ -0,0 +1,161 @@
+package com.sondv.phone.search;
+
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+// Chỉ mục đảo (inverted index) trên tên, mô tả, danh mục, nhà cung cấp; hỗ trợ tìm theo tiền tố và xếp hạng theo độ liên quan
+@Component
+public class ProductSearchIndex implements ProductIndex {
+
+    private static final float NAME_WEIGHT = 3f;
+    private static final float CATEGORY_WEIGHT = 2f;
+    private static final float SUPPLIER_WEIGHT = 2f;
+    private static final float DESCRIPTION_WEIGHT = 1f;
+    // Khớp theo tiền tố ("iph" -> "iphone") được điểm thấp hơn khớp nguyên từ
+    private static final float PREFIX_FACTOR = 0.7f;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final NavigableMap<String, Map<Long, Float>> postings = new TreeMap<>();
+    private final Map<Long, Map<String, Float>> documentTerms = new HashMap<>();
+    private final Map<Long, Integer> popularity = new HashMap<>();
+    private volatile boolean ready = false;
+
+    // Chỉ mục chỉ sẵn sàng sau lần nạp đầu tiên (từ snapshot hoặc DB)
+    public boolean isReady() {
+        return ready;
+    }
+
+    @Override
+    public void rebuild(Collection<ProductDocument> documents) {
+        lock.writeLock().lock();
+        try {
+            postings.clear();
+            documentTerms.clear();
+            popularity.clear();
+            documents.forEach(this::addDocument);
+            ready = true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void upsert(ProductDocument document) {
+        lock.writeLock().lock();
+        try {
+            removeDocument(document.id());
+            addDocument(document);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void remove(Long productId) {
+        lock.writeLock().lock();
+        try {
+            removeDocument(productId);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void updatePopularity(Long productId, int value) {
+        lock.writeLock().lock();
+        try {
+            popularity.computeIfPresent(productId, (id, old) -> value);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Trả về id sản phẩm khớp với mọi từ trong câu tìm kiếm (từ cuối khớp theo tiền tố), sắp xếp theo điểm giảm dần
+    public List<Long> search(String query) {
+        List<String> tokens = TextNormalizer.tokenize(query);
+        if (tokens.isEmpty()) {
+            return List.of();
+        }
+
+        lock.readLock().lock();
+        try {
+            int documentCount = documentTerms.size();
+            Map<Long, Float> scores = null;
+            for (int i = 0; i < tokens.size(); i++) {
+                String token = tokens.get(i);
+                // Chỉ từ cuối (người dùng còn đang gõ) khớp theo tiền tố, các từ trước phải khớp nguyên từ
+                Map<String, Map<Long, Float>> terms = i == tokens.size() - 1
+                        ? postings.subMap(token, true, token + Character.MAX_VALUE, false)
+                        : exactTerm(token);
+                Map<Long, Float> tokenScores = new HashMap<>();
+                for (Map.Entry<String, Map<Long, Float>> term : terms.entrySet()) {
+                    float idf = (float) Math.log(1 + (double) documentCount / term.getValue().size());
+                    float factor = term.getKey().equals(token) ? 1f : PREFIX_FACTOR;
+                    term.getValue().forEach((productId, weight) ->
+                            tokenScores.merge(productId, weight * idf * factor, Math::max));
+                }
+                if (scores == null) {
+                    scores = tokenScores;
+                } else {
+                    scores.keySet().retainAll(tokenScores.keySet());
+                    scores.replaceAll((productId, score) -> score + tokenScores.get(productId));
+                }
+                if (scores.isEmpty()) {
+                    return List.of();
+                }
+            }
+
+            Map<Long, Float> ranked = scores;
+            List<Long> result = new ArrayList<>(ranked.keySet());
+            result.sort(Comparator.<Long>comparingDouble(ranked::get).reversed()
+                    .thenComparing(Comparator.<Long>comparingInt(id -> popularity.getOrDefault(id, 0)).reversed())
+                    .thenComparing(Comparator.reverseOrder()));
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private Map<String, Map<Long, Float>> exactTerm(String token) {
+        Map<Long, Float> documents = postings.get(token);
+        return documents != null ? Map.of(token, documents) : Map.of();
+    }
+
+    private void addDocument(ProductDocument document) {
+        Map<String, Float> terms = new HashMap<>();
+        addField(terms, document.name(), NAME_WEIGHT);
+        addField(terms, document.categoryName(), CATEGORY_WEIGHT);
+        addField(terms, document.supplierName(), SUPPLIER_WEIGHT);
+        addField(terms, document.description(), DESCRIPTION_WEIGHT);
+
+        terms.forEach((term, weight) -> postings.computeIfAbsent(term, t -> new HashMap<>()).put(document.id(), weight));
+        documentTerms.put(document.id(), terms);
+        popularity.put(document.id(), document.popularity());
+    }
+
+    private void removeDocument(Long productId) {
+        Map<String, Float> terms = documentTerms.remove(productId);
+        popularity.remove(productId);
+        if (terms == null) {
+            return;
+        }
+        for (String term : terms.keySet()) {
+            Map<Long, Float> documents = postings.get(term);
+            if (documents != null) {
+                documents.remove(productId);
+                if (documents.isEmpty()) {
+                    postings.remove(term);
+                }
+            }
+        }
+    }
+
+    private void addField(Map<String, Float> terms, String text, float weight) {
+        for (String token : TextNormalizer.tokenize(text)) {
+            terms.merge(token, weight, Float::sum);
+        }
+    }
+}
@@ -0,0 +1,313 @@
+package com.sondv.phone.search;
+
+import com.sondv.phone.dto.SuggestionDTO;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+// Cây tiền tố (trie) cho autocomplete trên tên sản phẩm và danh mục.
+// Mỗi nút giữ sẵn top-K gợi ý theo soldQuantity nên truy vấn chỉ cần đi theo tiền tố, không phải duyệt cây con.
+@Component
+public class SuggestionIndex implements ProductIndex {
+
+    public static final int MAX_SUGGESTIONS = 10;
+    // Giới hạn độ sâu để cây không phình theo tên dài
+    private static final int MAX_KEY_LENGTH = 32;
+
+    private static final String PRODUCT = "PRODUCT";
+    private static final String CATEGORY = "CATEGORY";
+
+    private static final Comparator<Entry> RANKING = Comparator.comparingLong(Entry::weight).reversed()
+            .thenComparing(Entry::name)
+            .thenComparing(Entry::id);
+
+    private record Entry(String type, Long id, String name, long weight) {
+    }
+
+    private static final class Node {
+        private char[] keys = new char[0];
+        private Node[] children = new Node[0];
+        private List<Entry> terminals = List.of();
+        private List<Entry> top = List.of();
+
+        Node child(char c) {
+            int i = Arrays.binarySearch(keys, c);
+            return i >= 0 ? children[i] : null;
+        }
+
+        Node getOrCreateChild(char c) {
+            int i = Arrays.binarySearch(keys, c);
+            if (i >= 0) {
+                return children[i];
+            }
+            int at = -i - 1;
+            Node node = new Node();
+            keys = insertAt(keys, at, c);
+            Node[] grown = new Node[children.length + 1];
+            System.arraycopy(children, 0, grown, 0, at);
+            grown[at] = node;
+            System.arraycopy(children, at, grown, at + 1, children.length - at);
+            children = grown;
+            return node;
+        }
+
+        void removeChild(char c) {
+            int i = Arrays.binarySearch(keys, c);
+            if (i < 0) {
+                return;
+            }
+            char[] shrunkKeys = new char[keys.length - 1];
+            System.arraycopy(keys, 0, shrunkKeys, 0, i);
+            System.arraycopy(keys, i + 1, shrunkKeys, i, keys.length - i - 1);
+            Node[] shrunk = new Node[children.length - 1];
+            System.arraycopy(children, 0, shrunk, 0, i);
+            System.arraycopy(children, i + 1, shrunk, i, children.length - i - 1);
+            keys = shrunkKeys;
+            children = shrunk;
+        }
+
+        boolean isEmpty() {
+            return keys.length == 0 && terminals.isEmpty();
+        }
+
+        private static char[] insertAt(char[] array, int at, char c) {
+            char[] grown = new char[array.length + 1];
+            System.arraycopy(array, 0, grown, 0, at);
+            grown[at] = c;
+            System.arraycopy(array, at, grown, at + 1, array.length - at);
+            return grown;
+        }
+    }
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private Node root = new Node();
+    private final Map<Long, Entry> productEntries = new HashMap<>();
+    private final Map<Long, Long> productCategory = new HashMap<>();
+    // Trọng số danh mục = tổng soldQuantity của các sản phẩm thuộc danh mục
+    private final Map<Long, Map<Long, Integer>> categoryMembers = new HashMap<>();
+    private final Map<Long, Entry> categoryEntries = new HashMap<>();
+
+    public List<SuggestionDTO> suggest(String prefix, int limit) {
+        String key = truncate(TextNormalizer.fold(prefix));
+        if (key.isEmpty()) {
+            return List.of();
+        }
+        int size = Math.min(Math.max(limit, 1), MAX_SUGGESTIONS);
+        lock.readLock().lock();
+        try {
+            Node node = root;
+            for (int i = 0; i < key.length() && node != null; i++) {
+                node = node.child(key.charAt(i));
+            }
+            if (node == null) {
+                return List.of();
+            }
+            return node.top.stream()
+                    .limit(size)
+                    .map(entry -> new SuggestionDTO(entry.id(), entry.name(), entry.type()))
+                    .toList();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void rebuild(Collection<ProductDocument> documents) {
+        lock.writeLock().lock();
+        try {
+            root = new Node();
+            productEntries.clear();
+            productCategory.clear();
+            categoryMembers.clear();
+            categoryEntries.clear();
+            documents.forEach(this::addProduct);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void upsert(ProductDocument document) {
+        lock.writeLock().lock();
+        try {
+            removeProduct(document.id());
+            addProduct(document);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void remove(Long productId) {
+        lock.writeLock().lock();
+        try {
+            removeProduct(productId);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Chỉ đổi trọng số của sản phẩm (và danh mục của nó) trong cây, không đụng tới các sản phẩm khác
+    @Override
+    public void updatePopularity(Long productId, int popularity) {
+        lock.writeLock().lock();
+        try {
+            Entry old = productEntries.get(productId);
+            if (old != null && old.weight() != popularity) {
+                delete(old);
+                Entry entry = new Entry(PRODUCT, productId, old.name(), popularity);
+                productEntries.put(productId, entry);
+                insert(entry);
+            }
+            Long categoryId = productCategory.get(productId);
+            if (categoryId != null) {
+                Integer previous = categoryMembers.get(categoryId).put(productId, popularity);
+                Entry category = categoryEntries.get(categoryId);
+                if (category != null && (previous == null || previous != popularity)) {
+                    refreshCategory(categoryId, category.name());
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void addProduct(ProductDocument document) {
+        if (document.name() != null && !document.name().isBlank()) {
+            Entry entry = new Entry(PRODUCT, document.id(), document.name(), document.popularity());
+            productEntries.put(document.id(), entry);
+            insert(entry);
+        }
+        if (document.categoryId() != null) {
+            productCategory.put(document.id(), document.categoryId());
+            categoryMembers.computeIfAbsent(document.categoryId(), k -> new HashMap<>())
+                    .put(document.id(), document.popularity());
+            refreshCategory(document.categoryId(), document.categoryName());
+        }
+    }
+
+    private void removeProduct(Long productId) {
+        Entry entry = productEntries.remove(productId);
+        if (entry != null) {
+            delete(entry);
+        }
+        Long categoryId = productCategory.remove(productId);
+        if (categoryId != null) {
+            Map<Long, Integer> members = categoryMembers.get(categoryId);
+            members.remove(productId);
+            if (members.isEmpty()) {
+                categoryMembers.remove(categoryId);
+            }
+            Entry category = categoryEntries.get(categoryId);
+            refreshCategory(categoryId, category != null ? category.name() : null);
+        }
+    }
+
+    private void refreshCategory(Long categoryId, String name) {
+        Entry old = categoryEntries.remove(categoryId);
+        if (old != null) {
+            delete(old);
+        }
+        Map<Long, Integer> members = categoryMembers.get(categoryId);
+        if (members == null || name == null || name.isBlank()) {
+            return;
+        }
+        long weight = members.values().stream().mapToLong(Integer::longValue).sum();
+        Entry entry = new Entry(CATEGORY, categoryId, name, weight);
+        categoryEntries.put(categoryId, entry);
+        insert(entry);
+    }
+
+    // Chèn mọi hậu tố bắt đầu ở đầu một từ để "pro max" cũng gợi ý được "iPhone 15 Pro Max"
+    private void insert(Entry entry) {
+        for (String key : suffixKeys(entry.name())) {
+            Node node = root;
+            for (int i = 0; i < key.length(); i++) {
+                node = node.getOrCreateChild(key.charAt(i));
+                addToTop(node, entry);
+            }
+            node.terminals = append(node.terminals, entry);
+        }
+    }
+
+    private void delete(Entry entry) {
+        for (String key : suffixKeys(entry.name())) {
+            Node[] path = new Node[key.length() + 1];
+            path[0] = root;
+            for (int i = 0; i < key.length(); i++) {
+                path[i + 1] = path[i] != null ? path[i].child(key.charAt(i)) : null;
+            }
+            Node last = path[key.length()];
+            if (last == null) {
+                continue;
+            }
+            last.terminals = without(last.terminals, entry);
+            // Tính lại top-K từ dưới lên: top của một nút = top-K của (top các nút con + terminal của chính nó)
+            for (int i = key.length(); i > 0; i--) {
+                Node node = path[i];
+                if (node.isEmpty()) {
+                    path[i - 1].removeChild(key.charAt(i - 1));
+                    continue;
+                }
+                if (node.top.contains(entry)) {
+                    node.top = recomputeTop(node);
+                }
+            }
+        }
+    }
+
+    private void addToTop(Node node, Entry entry) {
+        if (node.top.contains(entry)) {
+            return;
+        }
+        if (node.top.size() >= MAX_SUGGESTIONS
+                && RANKING.compare(entry, node.top.get(node.top.size() - 1)) >= 0) {
+            return;
+        }
+        List<Entry> top = new ArrayList<>(node.top);
+        int at = Collections.binarySearch(top, entry, RANKING);
+        top.add(at >= 0 ? at : -at - 1, entry);
+        if (top.size() > MAX_SUGGESTIONS) {
+            top.remove(top.size() - 1);
+        }
+        node.top = List.copyOf(top);
+    }
+
+    private List<Entry> recomputeTop(Node node) {
+        Set<Entry> candidates = new HashSet<>(node.terminals);
+        for (Node child : node.children) {
+            candidates.addAll(child.top);
+        }
+        return candidates.stream()
+                .sorted(RANKING)
+                .limit(MAX_SUGGESTIONS)
+                .toList();
+    }
+
+    private static Set<String> suffixKeys(String name) {
+        List<String> tokens = TextNormalizer.tokenize(name);
+        Set<String> keys = new LinkedHashSet<>();
+        for (int i = 0; i < tokens.size(); i++) {
+            keys.add(truncate(String.join(" ", tokens.subList(i, tokens.size()))));
+        }
+        return keys;
+    }
+
+    private static String truncate(String key) {
+        return key.length() > MAX_KEY_LENGTH ? key.substring(0, MAX_KEY_LENGTH) : key;
+    }
+
+    private static List<Entry> append(List<Entry> entries, Entry entry) {
+        List<Entry> copy = new ArrayList<>(entries);
+        copy.add(entry);
+        return List.copyOf(copy);
+    }
+
+    private static List<Entry> without(List<Entry> entries, Entry entry) {
+        List<Entry> copy = new ArrayList<>(entries);
+        copy.remove(entry);
+        return List.copyOf(copy);
+    }
+}
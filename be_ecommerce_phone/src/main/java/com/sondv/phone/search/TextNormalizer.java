@@ -0,0 +1,34 @@
+package com.sondv.phone.search;
+
+import java.text.Normalizer;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Pattern;
+
+// Chuẩn hóa văn bản tiếng Việt để tìm kiếm: bỏ dấu ("điện thoại" -> "dien thoai"), chữ thường, tách từ
+public final class TextNormalizer {
+
+    private static final Pattern MARKS = Pattern.compile("\\p{M}+");
+    private static final Pattern NON_ALPHANUMERIC = Pattern.compile("[^a-z0-9]+");
+
+    private TextNormalizer() {
+    }
+
+    public static String fold(String text) {
+        if (text == null || text.isEmpty()) {
+            return "";
+        }
+        // "đ" không tách được dấu bằng NFD nên phải thay riêng
+        String lower = text.toLowerCase(Locale.ROOT).replace('đ', 'd');
+        String stripped = MARKS.matcher(Normalizer.normalize(lower, Normalizer.Form.NFD)).replaceAll("");
+        return NON_ALPHANUMERIC.matcher(stripped).replaceAll(" ").trim();
+    }
+
+    public static List<String> tokenize(String text) {
+        String folded = fold(text);
+        if (folded.isEmpty()) {
+            return List.of();
+        }
+        return List.of(folded.split(" "));
+    }
+}
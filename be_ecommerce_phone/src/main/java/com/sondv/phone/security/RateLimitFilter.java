@@ -1,59 +1,73 @@
 package com.sondv.phone.security;
 
-import jakarta.servlet.*;
+import com.sondv.phone.ratelimit.HybridRateLimiter;
+import com.sondv.phone.ratelimit.RateLimitProperties;
+import com.sondv.phone.ratelimit.RateLimitProperties.Policy;
+import com.sondv.phone.ratelimit.TokenBucketLimiter;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
-import org.springframework.data.redis.core.RedisTemplate;
-import org.springframework.data.redis.core.ValueOperations;
 import org.springframework.stereotype.Component;
+import org.springframework.util.AntPathMatcher;
+import org.springframework.web.filter.OncePerRequestFilter;
 
 import java.io.IOException;
-import java.time.Duration;
-import java.util.concurrent.TimeUnit;
 
+// Giới hạn request theo chính sách của route (RateLimitProperties). Đa số request được quyết định trong bộ nhớ,
+// HybridRateLimiter chỉ gọi Redis (một lần gọi Lua) khi cần lấy thêm lô token.
+// OncePerRequestFilter vì filter vừa nằm trong security chain vừa được Spring Boot đăng ký như servlet filter.
 @Component
-public class RateLimitFilter implements Filter {
-    private final RedisTemplate<String, String> redisTemplate;
+public class RateLimitFilter extends OncePerRequestFilter {
 
-    public RateLimitFilter(RedisTemplate<String, String> redisTemplate) {
-        this.redisTemplate = redisTemplate;
+    private final HybridRateLimiter rateLimiter;
+    private final RateLimitProperties properties;
+    private final AntPathMatcher pathMatcher = new AntPathMatcher();
+
+    public RateLimitFilter(HybridRateLimiter rateLimiter, RateLimitProperties properties) {
+        this.rateLimiter = rateLimiter;
+        this.properties = properties;
     }
 
     @Override
-    public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain)
-            throws IOException, ServletException {
-        HttpServletRequest httpRequest = (HttpServletRequest) request;
-        HttpServletResponse httpResponse = (HttpServletResponse) response;
-
-        String key = getKey(httpRequest);
-        ValueOperations<String, String> ops = redisTemplate.opsForValue(); // Đổi sang String
-
-        String countStr = ops.get(key);
-        int currentCount = (countStr == null) ? 0 : Integer.parseInt(countStr);
-
-        if (currentCount >= getLimit(httpRequest)) {
-            httpResponse.setStatus(429);
-            httpResponse.setHeader("Retry-After", "60");
-            httpResponse.getWriter().write("Quá nhiều request! Hãy thử lại sau.");
-        } else {
-            ops.increment(key, 1);
-            redisTemplate.expire(key, 1, TimeUnit.MINUTES);
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        if (!properties.isEnabled()) {
             chain.doFilter(request, response);
+            return;
         }
+
+        Policy policy = resolvePolicy(request.getRequestURI());
+        // Redis lỗi thì HybridRateLimiter tự chuyển sang giới hạn cục bộ, không trả 500 cho toàn bộ site
+        TokenBucketLimiter.Decision decision = rateLimiter.tryAcquire(getKey(request, policy), policy);
+
+        response.setHeader("X-RateLimit-Limit", String.valueOf(policy.getLimit()));
+        response.setHeader("X-RateLimit-Remaining", String.valueOf(decision.remaining()));
+        if (!decision.allowed()) {
+            response.setStatus(429);
+            response.setHeader("Retry-After", String.valueOf(Math.max(1, (decision.retryAfterMillis() + 999) / 1000)));
+            response.setCharacterEncoding("UTF-8");
+            response.getWriter().write("Quá nhiều request! Hãy thử lại sau.");
+            return;
+        }
+        chain.doFilter(request, response);
     }
 
-    private String getKey(HttpServletRequest request) {
-        String userId = request.getHeader("X-User-ID");
-        if (userId != null) {
-            return "rate_limit:user:" + userId;
+    private Policy resolvePolicy(String path) {
+        for (Policy route : properties.getRoutes()) {
+            if (pathMatcher.match(route.getPattern(), path)) {
+                return route;
+            }
         }
-        return "rate_limit:ip:" + request.getRemoteAddr();
+        return properties.getDefaultPolicy();
     }
 
-    private int getLimit(HttpServletRequest request) {
-        String path = request.getRequestURI();
-        if (path.contains("/auth/login")) return 1000;
-        if (path.contains("/checkout")) return 5000;
-        return 50000;
+    // Mỗi chính sách có bucket riêng để giới hạn của route này không tiêu vào quota của route khác
+    private String getKey(HttpServletRequest request, Policy policy) {
+        String userId = request.getHeader("X-User-ID");
+        if (userId != null) {
+            return "rate_limit:" + policy.getName() + ":user:" + userId;
+        }
+        return "rate_limit:" + policy.getName() + ":ip:" + request.getRemoteAddr();
     }
 }
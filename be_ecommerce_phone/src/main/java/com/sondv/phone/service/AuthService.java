@@ -36,6 +36,7 @@ public class AuthService {
     private final AuthenticationManager authenticationManager;
     private final JwtUtil jwtUtil;
     private final CustomerRepository customerRepository;
+    private final SalesRollupService salesRollupService;
 
     @Transactional
     public String register(AuthRequest request) {
@@ -66,6 +67,7 @@ public class AuthService {
         user.setVerificationExpiry(LocalDateTime.now().plusHours(24));
 
         user = userRepository.save(user);
+        salesRollupService.recordUserRegistered(user);
 
         Customer customer = new Customer();
         customer.setUser(user);
@@ -0,0 +1,531 @@
+package com.sondv.phone.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sondv.phone.repository.InventoryJdbcRepository;
+import com.sondv.phone.repository.InventoryJdbcRepository.LogRow;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.NonTransientDataAccessException;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.stream.Stream;
+
+// Nhật ký tồn kho ghi bất đồng bộ: checkout chỉ đẩy bản ghi vào buffer có giới hạn,
+// một thread nền gom lại và ghi xuống inventory_logs theo JDBC batch (đủ batch-size hoặc hết flush-interval).
+// Chế độ WAL: bản ghi được ghi vào file cục bộ và fsync TRƯỚC khi transaction commit (beforeCommit chờ fsync),
+// nên thay đổi tồn kho đã commit thì luôn có log trong WAL. Việc ghi file và fsync do một thread riêng làm theo lô
+// (group commit): thread request chỉ chờ, không giữ walLock, nhiều transaction đồng thời chung một lần fsync.
+// Transaction bị rollback sau khi đã ghi WAL thì ghi thêm dòng ABORT để khi phát lại bỏ qua các bản ghi đó.
+// Khi khởi động, các file WAL còn lại được phát lại (journal_id giúp bỏ qua bản ghi đã có trong DB).
+@Component
+public class InventoryJournal {
+
+    private static final Logger logger = LoggerFactory.getLogger(InventoryJournal.class);
+    private static final String SEGMENT_PREFIX = "inventory-";
+    private static final String SEGMENT_SUFFIX = ".wal";
+    private static final long RETRY_BACKOFF_MS = 1000;
+    // Lô lỗi liên tiếp quá số lần này thì ghi từng bản ghi, bản ghi lỗi không tạm thời (FK, tràn cột...) chuyển sang dead-letter
+    private static final int MAX_BATCH_ATTEMPTS = 3;
+    private static final String DEAD_LETTER_FILE = "inventory-dead-letter.jsonl";
+    private static final String ABORT_PREFIX = "ABORT ";
+    // Đĩa treo thì không giữ commit quá lâu: quá hạn này bản ghi được xử lý như chế độ MEMORY
+    private static final long WAL_SYNC_TIMEOUT_MS = 5000;
+
+    public enum Durability {
+        MEMORY, // Chỉ giữ trong bộ nhớ, mất các bản ghi chưa flush nếu tiến trình chết
+        WAL     // Ghi + fsync WAL trước khi commit: không mất log của thay đổi đã commit. Nếu tiến trình chết đúng lúc
+                // giữa fsync và commit thì khi phát lại có thể có log của thay đổi chưa commit (thừa, không thiếu)
+    }
+
+    // Một lượt ghi WAL của một transaction; durable = true khi đã fsync, false nếu không ghi được / người gọi đã thôi chờ
+    private static final class WalAppend {
+        private final List<LogRow> rows;
+        private final CompletableFuture<Boolean> durable = new CompletableFuture<>();
+
+        private WalAppend(List<LogRow> rows) {
+            this.rows = rows;
+        }
+    }
+
+    // Transaction đã ghi WAL nhưng rollback: các journal_id này bị bỏ qua khi phát lại
+    private record WalAbort(List<String> journalIds) {
+    }
+
+    // Đánh dấu một file WAL đã đóng: khi flusher gặp marker này thì mọi bản ghi của file đã nằm trong DB
+    private record SealedSegment(Path path) {
+    }
+
+    private final InventoryJdbcRepository inventoryJdbcRepository;
+    private final ObjectMapper objectMapper;
+    private final Durability durability;
+    private final Path walDir;
+    private final int batchSize;
+    private final long flushIntervalMs;
+    private final BlockingQueue<Object> buffer;
+    // WalAppend / WalAbort chờ thread ghi WAL (chỉ dùng ở chế độ WAL)
+    private final BlockingQueue<Object> walQueue;
+
+    // Giữ bởi thread ghi WAL và flusher (khi xoay file), không giữ trên thread request
+    private final Object walLock = new Object();
+    private FileChannel walChannel;
+    private Path walSegment;
+    private long walEntries = 0;
+    private long segmentSequence = 0;
+    // Số bản ghi đã ghi WAL nhưng transaction chưa kết thúc: chưa được xoay file khi còn bản ghi này
+    // (marker của file phải đứng sau mọi bản ghi của file trong buffer)
+    private long walInFlight = 0;
+
+    private volatile boolean running = false;
+    private Thread flusher;
+    private Thread walWriter;
+
+    public InventoryJournal(InventoryJdbcRepository inventoryJdbcRepository,
+                            ObjectMapper objectMapper,
+                            @Value("${inventory.journal.durability:WAL}") Durability durability,
+                            @Value("${inventory.journal.dir:data/journal}") String walDir,
+                            @Value("${inventory.journal.capacity:10000}") int capacity,
+                            @Value("${inventory.journal.batch-size:200}") int batchSize,
+                            @Value("${inventory.journal.flush-interval-ms:500}") long flushIntervalMs) {
+        this.inventoryJdbcRepository = inventoryJdbcRepository;
+        this.objectMapper = objectMapper;
+        this.durability = durability;
+        this.walDir = Paths.get(walDir);
+        this.batchSize = batchSize;
+        this.flushIntervalMs = flushIntervalMs;
+        this.buffer = new ArrayBlockingQueue<>(capacity);
+        this.walQueue = new ArrayBlockingQueue<>(capacity);
+    }
+
+    // Ghi nhận các thay đổi tồn kho; trong transaction thì chỉ đưa vào buffer sau khi commit thành công
+    public void append(List<LogRow> rows) {
+        if (rows.isEmpty()) {
+            return;
+        }
+        List<LogRow> entries = rows.stream().map(row -> row.withJournalId(UUID.randomUUID().toString())).toList();
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            committed(entries, durability == Durability.WAL && writeAhead(entries));
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            private boolean journaled = false;
+
+            @Override
+            public void beforeCommit(boolean readOnly) {
+                if (durability == Durability.WAL) {
+                    journaled = writeAhead(entries);
+                }
+            }
+
+            @Override
+            public void afterCompletion(int status) {
+                if (status == STATUS_ROLLED_BACK) {
+                    aborted(entries, journaled);
+                } else {
+                    committed(entries, journaled);
+                }
+            }
+        });
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        replayWal();
+        running = true;
+        flusher = new Thread(this::runFlusher, "inventory-journal");
+        flusher.setDaemon(true);
+        flusher.start();
+        if (durability == Durability.WAL) {
+            walWriter = new Thread(this::runWalWriter, "inventory-journal-wal");
+            walWriter.setDaemon(true);
+            walWriter.start();
+        }
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        running = false;
+        // Ghi nốt WAL trước để flusher nhận đủ bản ghi rồi mới dừng
+        if (walWriter != null) {
+            walWriter.join(TimeUnit.SECONDS.toMillis(10));
+        }
+        if (flusher != null) {
+            flusher.interrupt();
+            flusher.join(TimeUnit.SECONDS.toMillis(10));
+        }
+        synchronized (walLock) {
+            closeSegment();
+        }
+    }
+
+    // Chờ thread ghi WAL fsync các bản ghi; false nếu không ghi được, khi đó bản ghi chỉ còn trong bộ nhớ
+    private boolean writeAhead(List<LogRow> entries) {
+        if (!running) {
+            return false;
+        }
+        WalAppend request = new WalAppend(entries);
+        if (!walQueue.offer(request)) {
+            logger.warn("Hàng đợi WAL nhật ký tồn kho đầy, {} bản ghi không được ghi WAL", entries.size());
+            return false;
+        }
+        try {
+            return request.durable.get(WAL_SYNC_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            // Thôi chờ; nếu thread ghi WAL vẫn ghi sau đó thì nó tự ghi ABORT cho các bản ghi này
+            logger.warn("Ghi WAL nhật ký tồn kho quá {}ms, {} bản ghi không được ghi WAL", WAL_SYNC_TIMEOUT_MS, entries.size());
+            return request.durable.complete(false) ? false : request.durable.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return request.durable.complete(false) ? false : request.durable.join();
+        } catch (ExecutionException e) {
+            return false;
+        }
+    }
+
+    // Đưa vào buffer khi giữ walLock để marker của file (rotateSegment) luôn đứng sau mọi bản ghi của file đó
+    private void committed(List<LogRow> entries, boolean journaled) {
+        List<LogRow> overflow = new ArrayList<>();
+        synchronized (walLock) {
+            for (LogRow entry : entries) {
+                if (!buffer.offer(entry)) {
+                    overflow.add(entry);
+                }
+            }
+            if (journaled) {
+                walInFlight -= entries.size();
+            }
+        }
+        insertDirectly(overflow);
+    }
+
+    private void aborted(List<LogRow> entries, boolean journaled) {
+        if (!journaled) {
+            return;
+        }
+        if (!walQueue.offer(new WalAbort(entries.stream().map(LogRow::journalId).toList()))) {
+            logger.warn("Không ghi được ABORT vào WAL, {} bản ghi của transaction đã rollback có thể được phát lại", entries.size());
+        }
+        synchronized (walLock) {
+            walInFlight -= entries.size();
+        }
+    }
+
+    // Hàng đợi đầy (DB hoặc đĩa chậm, đang lỗi): ghi thẳng trên thread hiện tại thay vì bỏ bản ghi
+    private void insertDirectly(List<LogRow> overflow) {
+        if (overflow.isEmpty()) {
+            return;
+        }
+        logger.warn("Buffer nhật ký tồn kho đầy, ghi trực tiếp {} bản ghi", overflow.size());
+        try {
+            inventoryJdbcRepository.insertLogs(overflow);
+        } catch (Exception e) {
+            logger.error("Không ghi được {} bản ghi nhật ký tồn kho (chế độ {}): {}",
+                    overflow.size(), durability, e.getMessage());
+        }
+    }
+
+    // Gom các lượt ghi đang chờ, ghi một lần và fsync cả lô (group commit) rồi báo cho các transaction đang chờ
+    private void runWalWriter() {
+        List<Object> batch = new ArrayList<>();
+        while (running || !walQueue.isEmpty()) {
+            try {
+                Object first = walQueue.poll(flushIntervalMs, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                walQueue.drainTo(batch, batchSize - 1);
+            } catch (InterruptedException e) {
+                running = false;
+                walQueue.drainTo(batch);
+            }
+            if (batch.isEmpty()) {
+                continue;
+            }
+            synchronized (walLock) {
+                writeBatch(batch);
+            }
+            batch.clear();
+        }
+    }
+
+    // Gọi khi giữ walLock
+    private void writeBatch(List<Object> batch) {
+        List<String> lines = new ArrayList<>();
+        List<WalAppend> appends = new ArrayList<>();
+        for (Object item : batch) {
+            if (item instanceof WalAppend append) {
+                if (append.durable.isDone()) {
+                    continue;
+                }
+                appends.add(append);
+                for (LogRow row : append.rows) {
+                    lines.add(toJson(row));
+                }
+            } else if (item instanceof WalAbort abort) {
+                abort.journalIds().forEach(id -> lines.add(ABORT_PREFIX + id));
+            }
+        }
+        boolean written = writeWal(lines);
+        List<String> abandoned = new ArrayList<>();
+        for (WalAppend append : appends) {
+            if (append.durable.complete(written)) {
+                if (written) {
+                    walInFlight += append.rows.size();
+                }
+            } else if (written) {
+                // Người gọi đã thôi chờ và xử lý bản ghi như không có WAL
+                append.rows.forEach(row -> abandoned.add(ABORT_PREFIX + row.journalId()));
+            }
+        }
+        if (!abandoned.isEmpty()) {
+            writeWal(abandoned);
+        }
+    }
+
+    private String toJson(LogRow row) {
+        try {
+            return objectMapper.writeValueAsString(row);
+        } catch (IOException e) {
+            throw new IllegalStateException("Không chuyển được bản ghi nhật ký tồn kho sang JSON", e);
+        }
+    }
+
+    private void runFlusher() {
+        List<LogRow> pending = new ArrayList<>();
+        // Giữ ngoài try để lô lỗi không làm mất marker của file WAL
+        SealedSegment sealed = null;
+        int failures = 0;
+        while (running || !buffer.isEmpty() || !pending.isEmpty() || sealed != null) {
+            try {
+                long deadline = System.currentTimeMillis() + flushIntervalMs;
+                while (pending.size() < batchSize && sealed == null) {
+                    long remaining = deadline - System.currentTimeMillis();
+                    Object item = remaining > 0 ? buffer.poll(remaining, TimeUnit.MILLISECONDS) : buffer.poll();
+                    if (item == null) {
+                        break;
+                    }
+                    if (item instanceof SealedSegment segment) {
+                        sealed = segment;
+                    } else {
+                        pending.add((LogRow) item);
+                    }
+                }
+
+                if (!pending.isEmpty()) {
+                    if (failures >= MAX_BATCH_ATTEMPTS) {
+                        insertIndividually(pending);
+                    } else {
+                        inventoryJdbcRepository.insertLogs(pending);
+                    }
+                    pending.clear();
+                    failures = 0;
+                }
+                if (sealed != null) {
+                    Files.deleteIfExists(sealed.path());
+                    sealed = null;
+                } else if (buffer.isEmpty()) {
+                    rotateSegment();
+                }
+            } catch (InterruptedException e) {
+                // Đang tắt: vòng lặp tiếp tục cho tới khi buffer rỗng
+                running = false;
+            } catch (Exception e) {
+                failures++;
+                logger.error("Lỗi khi ghi {} bản ghi nhật ký tồn kho (lần {}), sẽ thử lại: {}",
+                        pending.size(), failures, e.getMessage());
+                if (!running) {
+                    // Đang tắt và DB lỗi: các bản ghi vẫn còn trong WAL (nếu bật) để phát lại lần sau
+                    return;
+                }
+                sleepQuietly();
+            }
+        }
+    }
+
+    // Ghi từng bản ghi để một dòng hỏng không chặn cả lô; lỗi tạm thời (mất kết nối DB...) vẫn ném ra để thử lại sau.
+    // journal_id là khóa duy nhất nên ghi lại các dòng đã vào DB không tạo bản trùng.
+    private void insertIndividually(List<LogRow> rows) {
+        for (LogRow row : rows) {
+            try {
+                inventoryJdbcRepository.insertLogs(List.of(row));
+            } catch (NonTransientDataAccessException e) {
+                deadLetter(row, e);
+            }
+        }
+    }
+
+    // Lưu bản ghi không ghi được vào file riêng (không được phát lại như WAL) để xử lý tay, rồi bỏ qua
+    private void deadLetter(LogRow row, Exception cause) {
+        logger.error("Chuyển bản ghi nhật ký tồn kho {} sang dead-letter: {}", row.journalId(), cause.getMessage());
+        try {
+            Files.createDirectories(walDir);
+            Files.writeString(walDir.resolve(DEAD_LETTER_FILE), objectMapper.writeValueAsString(row) + "\n",
+                    StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        } catch (IOException e) {
+            logger.error("Không ghi được dead-letter, bỏ bản ghi {}: {}", row, e.getMessage());
+        }
+    }
+
+    // Khi buffer trống, đóng file WAL hiện tại và đẩy marker vào buffer; file sẽ bị xóa sau khi mọi bản ghi trước marker đã vào DB
+    private void rotateSegment() {
+        if (durability != Durability.WAL) {
+            return;
+        }
+        synchronized (walLock) {
+            if (walChannel == null || walEntries == 0 || walInFlight > 0) {
+                return;
+            }
+            Path sealed = walSegment;
+            closeSegment();
+            if (!buffer.offer(new SealedSegment(sealed))) {
+                logger.debug("Buffer đầy, giữ lại file WAL {} tới lần khởi động sau", sealed);
+            }
+        }
+    }
+
+    // Gọi khi giữ walLock; true khi mọi dòng đã được fsync
+    private boolean writeWal(List<String> lines) {
+        if (lines.isEmpty()) {
+            return true;
+        }
+        try {
+            if (walChannel == null) {
+                openSegment();
+            }
+            StringBuilder content = new StringBuilder();
+            for (String line : lines) {
+                content.append(line).append('\n');
+            }
+            ByteBuffer bytes = ByteBuffer.wrap(content.toString().getBytes(StandardCharsets.UTF_8));
+            while (bytes.hasRemaining()) {
+                walChannel.write(bytes);
+            }
+            // Chỉ flush vào page cache thì vẫn mất khi máy sập: fsync mỗi lô
+            walChannel.force(false);
+            walEntries += lines.size();
+            return true;
+        } catch (IOException e) {
+            logger.error("Không ghi được WAL nhật ký tồn kho: {}", e.getMessage());
+            return false;
+        }
+    }
+
+    private void openSegment() throws IOException {
+        Files.createDirectories(walDir);
+        walSegment = walDir.resolve(SEGMENT_PREFIX + System.currentTimeMillis() + "-" + (segmentSequence++) + SEGMENT_SUFFIX);
+        walChannel = FileChannel.open(walSegment, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        walEntries = 0;
+    }
+
+    private void closeSegment() {
+        if (walChannel == null) {
+            return;
+        }
+        try {
+            walChannel.close();
+        } catch (IOException e) {
+            logger.warn("Không đóng được file WAL {}: {}", walSegment, e.getMessage());
+        }
+        walChannel = null;
+        walSegment = null;
+        walEntries = 0;
+    }
+
+    // Phát lại các file WAL còn sót (tiến trình chết trước khi flush); journal_id giúp bỏ qua bản ghi đã có trong DB
+    private void replayWal() {
+        if (!Files.isDirectory(walDir)) {
+            return;
+        }
+        List<Path> segments;
+        try (Stream<Path> files = Files.list(walDir)) {
+            segments = files
+                    .filter(path -> path.getFileName().toString().startsWith(SEGMENT_PREFIX)
+                            && path.getFileName().toString().endsWith(SEGMENT_SUFFIX))
+                    .sorted()
+                    .toList();
+        } catch (IOException e) {
+            logger.error("Không đọc được thư mục WAL {}: {}", walDir, e.getMessage());
+            return;
+        }
+
+        // Dòng ABORT có thể nằm ở file sau file chứa bản ghi nên đọc hết trước
+        Set<String> aborted = new HashSet<>();
+        for (Path segment : segments) {
+            try (Stream<String> lines = Files.lines(segment, StandardCharsets.UTF_8)) {
+                lines.filter(line -> line.startsWith(ABORT_PREFIX))
+                        .forEach(line -> aborted.add(line.substring(ABORT_PREFIX.length())));
+            } catch (Exception e) {
+                logger.warn("Không đọc được dòng ABORT trong {}: {}", segment, e.getMessage());
+            }
+        }
+
+        for (Path segment : segments) {
+            try (BufferedReader reader = Files.newBufferedReader(segment, StandardCharsets.UTF_8)) {
+                List<LogRow> rows = new ArrayList<>();
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    if (line.isBlank() || line.startsWith(ABORT_PREFIX)) {
+                        continue;
+                    }
+                    try {
+                        LogRow row = objectMapper.readValue(line, LogRow.class);
+                        if (!aborted.contains(row.journalId())) {
+                            rows.add(row);
+                        }
+                    } catch (IOException e) {
+                        // Dòng cuối có thể bị ghi dở khi tiến trình chết
+                        logger.warn("Bỏ qua dòng WAL hỏng trong {}", segment);
+                    }
+                    if (rows.size() >= batchSize) {
+                        replayBatch(rows);
+                        rows.clear();
+                    }
+                }
+                replayBatch(rows);
+                Files.delete(segment);
+                logger.info("Đã phát lại file WAL nhật ký tồn kho {}", segment);
+            } catch (Exception e) {
+                logger.error("Lỗi khi phát lại WAL {}: {}", segment, e.getMessage());
+            }
+        }
+    }
+
+    // Dòng hỏng trong WAL không được chặn việc phát lại mãi mãi; DB lỗi tạm thời thì giữ file tới lần khởi động sau
+    private void replayBatch(List<LogRow> rows) {
+        if (rows.isEmpty()) {
+            return;
+        }
+        try {
+            inventoryJdbcRepository.insertLogs(rows);
+        } catch (NonTransientDataAccessException e) {
+            insertIndividually(rows);
+        }
+    }
+
+    private static void sleepQuietly() {
+        try {
+            Thread.sleep(RETRY_BACKOFF_MS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -1,17 +1,19 @@
 package com.sondv.phone.service;
 
+import com.sondv.phone.event.ProductChangedEvent;
 import com.sondv.phone.model.Inventory;
-import com.sondv.phone.model.InventoryLog;
 import com.sondv.phone.model.Product;
-import com.sondv.phone.repository.InventoryLogRepository;
+import com.sondv.phone.repository.InventoryJdbcRepository;
 import com.sondv.phone.repository.InventoryRepository;
 import com.sondv.phone.repository.ProductRepository;
 import lombok.RequiredArgsConstructor;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDateTime;
 import java.time.ZoneOffset;
+import java.util.List;
 import java.util.Optional;
 
 @Service
@@ -20,7 +22,8 @@ public class InventoryService {
     private final InventoryRepository inventoryRepository;
     private final ProductRepository productRepository;
     private final NotificationService notificationService;
-    private final InventoryLogRepository inventoryLogRepository;
+    private final InventoryJournal inventoryJournal;
+    private final ApplicationEventPublisher eventPublisher;
 
     public Optional<Inventory> getInventoryByProduct(Long productId) {
         return inventoryRepository.findByProductId(productId);
@@ -28,7 +31,8 @@ public class InventoryService {
 
     @Transactional
     public Inventory adjustInventory(Long productId, int quantityChange, String reason, Long userId) {
-        Inventory inventory = inventoryRepository.findByProductId(productId)
+        // Khóa dòng tồn kho để hai lần điều chỉnh đồng thời không ghi đè lên nhau
+        Inventory inventory = inventoryRepository.findForUpdateByProductId(productId)
                 .orElseThrow(() -> new IllegalArgumentException("Sản phẩm chưa có thông tin tồn kho"));
         Product product = inventory.getProduct();
 
@@ -48,15 +52,12 @@ public class InventoryService {
         inventoryRepository.save(inventory);
         productRepository.save(product);
 
-        InventoryLog log = new InventoryLog();
-        log.setProduct(product);
-        log.setOldQuantity(oldQuantity);
-        log.setNewQuantity(newQuantity);
-        log.setReason(reason != null ? reason : (quantityChange > 0 ? "Nhập kho" : "Giảm kho"));
-        log.setUserId(userId);
-        log.setTimestamp(LocalDateTime.now(ZoneOffset.of("+07:00")));
-        inventoryLogRepository.save(log);
+        // Log ghi bất đồng bộ sau khi commit
+        inventoryJournal.append(List.of(new InventoryJdbcRepository.LogRow(productId, oldQuantity, newQuantity,
+                reason != null ? reason : (quantityChange > 0 ? "Nhập kho" : "Giảm kho"),
+                userId, LocalDateTime.now(ZoneOffset.of("+07:00")))));
 
+        eventPublisher.publishEvent(ProductChangedEvent.stockChanged(productId));
         return inventory;
     }
 }
\ No newline at end of file
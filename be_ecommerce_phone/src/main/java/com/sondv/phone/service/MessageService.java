@@ -1,45 +1,128 @@
 package com.sondv.phone.service;
 
+import com.sondv.phone.chat.ChatClusterRelay;
+import com.sondv.phone.chat.ChatMessageWriter;
+import com.sondv.phone.chat.ConversationHistoryCache;
+import com.sondv.phone.dto.CursorPage;
 import com.sondv.phone.model.Message;
 import com.sondv.phone.repository.MessageRepository;
+import com.sondv.phone.util.CursorUtil;
+import com.sondv.phone.util.SnowflakeIdGenerator;
 import lombok.RequiredArgsConstructor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Limit;
 import org.springframework.stereotype.Service;
 
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Objects;
 
 @Service
 @RequiredArgsConstructor
 public class MessageService {
+    private static final Logger logger = LoggerFactory.getLogger(MessageService.class);
+    private static final int BACKFILL_BATCH_SIZE = 10_000;
+
     private final MessageRepository messageRepository;
+    private final ChatMessageWriter chatMessageWriter;
+    private final SnowflakeIdGenerator idGenerator;
+    private final ConversationHistoryCache historyCache;
+    private final ChatClusterRelay clusterRelay;
 
+    // Tin nhắn có id ngay trong bộ nhớ và được trả về để giao cho người nhận; việc ghi DB chạy nền theo lô
     public Message saveMessage(Long senderId, Long receiverId, String content) {
         Message message = new Message();
+        message.setId(idGenerator.nextId());
         message.setSenderId(senderId);
         message.setReceiverId(receiverId);
+        message.setConversationId(conversationOf(senderId, receiverId));
         message.setContent(content);
+        message.setTimestamp(LocalDateTime.now());
         message.setRead(false);
-        return messageRepository.save(message);
+        chatMessageWriter.write(message);
+        clusterRelay.historyAppended(message);
+        return message;
     }
 
-    public List<Message> getChatHistory(Long customerId) {
-        // Lấy lịch sử chat giữa customer và admin/staff (0 đại diện cho SYSTEM hoặc nhóm)
-        List<Message> history = messageRepository.findBySenderIdAndReceiverIdOrReceiverIdAndSenderId(customerId, 0L, 0L, customerId);
-        // Đánh dấu tin nhắn từ khách hàng là đã đọc khi ADMIN/STAFF xem lịch sử
-        history.forEach(msg -> {
-            if (msg.getSenderId().equals(customerId) && !msg.isRead()) {
-                msg.setRead(true);
-                messageRepository.save(msg);
-            }
-        });
+    // Trang lịch sử mới nhất trước; trang đầu lấy từ vòng đệm trong bộ nhớ, các trang sau query theo index (conversation_id, id)
+    public CursorPage<Message> getChatHistoryPage(Long customerId, String after, int size) {
+        CursorUtil.Cursor cursor = CursorUtil.decode(after);
+        List<Message> rows;
+        if (cursor == null && CursorUtil.clampSize(size) < historyCache.capacity()) {
+            rows = historyCache.latest(customerId, CursorUtil.clampSize(size) + 1,
+                    () -> loadLatest(customerId, Limit.of(historyCache.capacity())));
+        } else if (cursor == null) {
+            rows = loadLatest(customerId, CursorUtil.limitFor(size));
+        } else {
+            chatMessageWriter.flushNow();
+            rows = messageRepository.findByConversationIdAndIdLessThanOrderByIdDesc(customerId, cursor.id(), CursorUtil.limitFor(size));
+        }
+        CursorPage<Message> page = CursorUtil.toPage(rows, size, message -> CursorUtil.encode(null, message.getId()));
+        markCustomerMessagesRead(customerId, page.getContent());
+        return page;
+    }
+
+    // Các tin mới nhất theo thứ tự thời gian (cũ trước) cho client hiển thị thẳng
+    public List<Message> getChatHistory(Long customerId, int size) {
+        List<Message> history = new ArrayList<>(getChatHistoryPage(customerId, null, size).getContent());
+        Collections.reverse(history);
         return history;
     }
 
     public void markAsRead(Long messageId) {
-        Message message = messageRepository.findById(messageId)
-                .orElseThrow(() -> new IllegalArgumentException("Tin nhắn không tồn tại với ID: " + messageId));
-        if (!message.isRead()) {
-            message.setRead(true);
-            messageRepository.save(message);
+        chatMessageWriter.flushNow();
+        if (messageRepository.markReadByIdIn(List.of(messageId)) == 0) {
+            if (!messageRepository.existsById(messageId)) {
+                throw new IllegalArgumentException("Tin nhắn không tồn tại với ID: " + messageId);
+            }
+            return;
         }
+        messageRepository.findConversationIdById(messageId).ifPresent(conversationId -> {
+            historyCache.markRead(conversationId, messageId);
+            clusterRelay.historyChanged(conversationId);
+        });
+    }
+
+    // Dữ liệu cũ chưa có conversation_id: điền theo lô khi khởi động (các lần sau không còn dòng nào cần điền)
+    @EventListener(ApplicationReadyEvent.class)
+    public void backfillConversationIds() {
+        long total = 0;
+        int updated;
+        do {
+            updated = messageRepository.backfillConversationIds(BACKFILL_BATCH_SIZE);
+            total += updated;
+        } while (updated == BACKFILL_BATCH_SIZE);
+        if (total > 0) {
+            logger.info("Đã điền conversation_id cho {} tin nhắn cũ", total);
+        }
+    }
+
+    // Cuộc hội thoại luôn mang id khách hàng: khách gửi tới nhóm hỗ trợ (receiver 0), admin/staff hoặc hệ thống gửi tới khách
+    private static Long conversationOf(Long senderId, Long receiverId) {
+        return receiverId == 0L ? senderId : receiverId;
+    }
+
+    private List<Message> loadLatest(Long customerId, Limit limit) {
+        // Ghi nốt các tin đang chờ để lịch sử đầy đủ
+        chatMessageWriter.flushNow();
+        return messageRepository.findByConversationIdOrderByIdDesc(customerId, limit);
+    }
+
+    // Đánh dấu tin nhắn từ khách hàng là đã đọc khi xem lịch sử: một câu UPDATE tới tin mới nhất của trang
+    private void markCustomerMessagesRead(Long customerId, List<Message> page) {
+        page.stream()
+                .filter(msg -> Objects.equals(msg.getSenderId(), customerId) && !msg.isRead())
+                .map(Message::getId)
+                .max(Long::compare)
+                .ifPresent(upToId -> {
+                    messageRepository.markReadUpTo(customerId, upToId);
+                    historyCache.markReadUpTo(customerId, upToId);
+                    clusterRelay.historyChanged(customerId);
+                });
     }
-}
\ No newline at end of file
+}
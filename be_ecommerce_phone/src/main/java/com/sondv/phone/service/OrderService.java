@@ -1,25 +1,81 @@
 package com.sondv.phone.service;
 
 import com.sondv.phone.dto.OrderRequest;
+import com.sondv.phone.event.OrderPlacedEvent;
+import com.sondv.phone.exception.ApiException;
 import com.sondv.phone.model.*;
 import com.sondv.phone.repository.*;
 import lombok.RequiredArgsConstructor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.math.BigDecimal;
-import java.util.ArrayList;
-import java.util.List;
+import java.time.Duration;
+import java.time.ZoneId;
+import java.util.*;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 @Service
 @RequiredArgsConstructor
 public class OrderService {
 
+    private static final Logger logger = LoggerFactory.getLogger(OrderService.class);
+
     private final OrderRepository orderRepository;
     private final CustomerRepository customerRepository;
     private final ProductRepository productRepository;
     private final OrderDetailRepository orderDetailRepository;
+    private final PaymentRepository paymentRepository;
+    private final StockReservationService stockReservationService;
+    private final SalesRollupService salesRollupService;
     private final InventoryService inventoryService;
+    private final ApplicationEventPublisher eventPublisher;
+
+    // Chưa có callback/IPN của VNPay, MoMo nên không biết khách đã trả qua cổng hay chưa: đơn đang chờ cổng thanh toán
+    // được giữ hàng lâu hơn (tính từ lúc tạo đơn) để kịp đối soát, quá hạn này thì vẫn hủy và hoàn kho
+    @Value("${stock.hold.gateway-ttl:24h}")
+    private Duration gatewayTtl;
+
+    // Đổi trạng thái đơn (admin/staff): trừ kho khi hoàn thành, cập nhật đơn và số liệu bán hàng trong cùng một transaction
+    @Transactional
+    public Order updateStatus(Long orderId, OrderStatus status) {
+        Order order = orderRepository.findById(orderId)
+                .orElseThrow(() -> new ApiException(404, "Không tìm thấy đơn hàng!"));
+
+        if (status == OrderStatus.COMPLETED) {
+            for (OrderDetail detail : order.getOrderDetails()) {
+                inventoryService.adjustInventory(detail.getProduct().getId(), -detail.getQuantity(), "Hoàn thành đơn hàng", null);
+            }
+        }
+
+        OrderStatus oldStatus = order.getStatus();
+        order.setStatus(status);
+        Order saved = orderRepository.save(order);
+        salesRollupService.recordStatusChange(saved, oldStatus, status);
+        return saved;
+    }
+
+    // Xóa đơn; xóa lỗi (ví dụ còn ràng buộc khóa ngoại) thì số liệu bán hàng cũng được rollback
+    @Transactional
+    public void deleteOrder(Long orderId) {
+        Order order = orderRepository.findById(orderId)
+                .orElseThrow(() -> new ApiException(404, "Không tìm thấy đơn hàng!"));
+        if (order.getStatus() != OrderStatus.CANCELLED) {
+            salesRollupService.recordOrderRemoved(order);
+        }
+        orderRepository.delete(order);
+        // Flush ngay để lỗi khóa ngoại nổ ra trong method này thay vì lúc commit
+        orderRepository.flush();
+    }
+
+    // deferredUntil: đơn chờ cổng thanh toán chưa hết hạn riêng -> thời điểm (epoch ms) cần xét lại
+    public record ExpiryResult(int cancelled, Map<Long, Long> deferredUntil) {
+    }
 
     @Transactional
     public Order createOrder(User user, OrderRequest orderRequest) {
@@ -39,21 +95,25 @@ public class OrderService {
         order.setStatus(OrderStatus.PENDING);
         order.setTotalPrice(BigDecimal.ZERO);
         List<OrderDetail> orderDetails = new ArrayList<>();
+        Map<Long, Integer> reservedQuantities = new LinkedHashMap<>();
+
+        // Nạp toàn bộ sản phẩm trong giỏ bằng một câu IN
+        Map<Long, Product> products = productRepository.findByIdIn(orderRequest.getProductIds()).stream()
+                .collect(Collectors.toMap(Product::getId, Function.identity()));
 
         for (int i = 0; i < orderRequest.getProductIds().size(); i++) {
             Long productId = orderRequest.getProductIds().get(i);
             int requestedQuantity = orderRequest.getQuantities().get(i);
-
-            Inventory inventory = inventoryService.getInventoryByProduct(productId)
-                    .orElseThrow(() -> new RuntimeException("Không tìm thấy tồn kho cho sản phẩm ID: " + productId));
-
-            if (inventory.getQuantity() < requestedQuantity) {
-                throw new RuntimeException("Sản phẩm '" + inventory.getProduct().getName() + "' không đủ hàng!");
+            if (requestedQuantity <= 0) {
+                throw new IllegalArgumentException("Số lượng sản phẩm phải lớn hơn 0!");
             }
 
-            inventoryService.adjustInventory(productId, -requestedQuantity, "Tạo đơn hàng", user.getId());
+            Product product = products.get(productId);
+            if (product == null) {
+                throw new RuntimeException("Không tìm thấy sản phẩm ID: " + productId);
+            }
+            reservedQuantities.merge(productId, requestedQuantity, Integer::sum);
 
-            Product product = inventory.getProduct();
             OrderDetail detail = new OrderDetail();
             detail.setOrder(order);
             detail.setProduct(product);
@@ -78,6 +138,78 @@ public class OrderService {
         shippingInfo.setEstimatedDelivery(orderRequest.getEstimatedDelivery());
         order.setShippingInfo(shippingInfo);
 
-        return orderRepository.save(order);
+        Order savedOrder = orderRepository.save(order);
+
+        // Trừ kho ở cuối transaction: mỗi dòng là một UPDATE có điều kiện, khóa dòng chỉ giữ tới lúc commit
+        StockReservationService.Reservation reservation =
+                stockReservationService.reserve(reservedQuantities, "Tạo đơn hàng", user.getId());
+        if (!reservation.isSuccessful()) {
+            String outOfStock = reservation.failedLines().stream()
+                    .map(line -> "'" + products.get(line.productId()).getName() + "'")
+                    .collect(Collectors.joining(", "));
+            throw new ApiException(409, "Sản phẩm " + outOfStock + " không đủ hàng!");
+        }
+        salesRollupService.recordOrderPlaced(savedOrder);
+        eventPublisher.publishEvent(new OrderPlacedEvent(savedOrder.getId()));
+        return savedOrder;
+    }
+
+    // Hủy các đơn hết hạn giữ hàng mà vẫn chưa thanh toán, hoàn kho cho tất cả trong một lần.
+    // Thanh toán được khóa (PESSIMISTIC_WRITE) nên cập nhật PAID đồng thời phải chờ và không bị ghi đè.
+    @Transactional
+    public ExpiryResult cancelExpiredOrders(Collection<Long> orderIds) {
+        Map<Long, Payment> payments = new HashMap<>();
+        paymentRepository.findByOrderIdInForUpdate(orderIds).forEach(payment -> payments.put(payment.getOrder().getId(), payment));
+
+        List<StockReservationService.ReleaseLine> lines = new ArrayList<>();
+        Map<Long, Long> deferred = new HashMap<>();
+        long now = System.currentTimeMillis();
+        int cancelled = 0;
+        for (Order order : orderRepository.findAllById(orderIds)) {
+            Payment payment = payments.get(order.getId());
+            boolean settled = payment != null
+                    && (payment.getStatus() == PaymentStatus.PAID || payment.getStatus() == PaymentStatus.AWAITING_DELIVERY);
+            if (order.getStatus() != OrderStatus.PENDING || settled) {
+                continue;
+            }
+            if (awaitingGateway(payment)) {
+                long gatewayDeadline = gatewayDeadline(order);
+                if (now < gatewayDeadline) {
+                    deferred.put(order.getId(), gatewayDeadline);
+                    continue;
+                }
+            }
+
+            order.setStatus(OrderStatus.CANCELLED);
+            salesRollupService.recordStatusChange(order, OrderStatus.PENDING, OrderStatus.CANCELLED);
+            if (payment != null) {
+                payment.setStatus(PaymentStatus.FAILED);
+            }
+            Long userId = order.getCustomer().getUser().getId();
+            for (OrderDetail detail : order.getOrderDetails()) {
+                lines.add(new StockReservationService.ReleaseLine(detail.getProduct().getId(), detail.getQuantity(), userId));
+            }
+            cancelled++;
+        }
+
+        stockReservationService.release(lines, "Hết hạn giữ hàng");
+        if (cancelled > 0) {
+            logger.info("Đã hủy {} đơn hết hạn giữ hàng", cancelled);
+        }
+        return new ExpiryResult(cancelled, deferred);
+    }
+
+    // Khách đã chuyển sang cổng thanh toán nhưng hệ thống chưa nhận được kết quả: có thể khách đã trả tiền
+    private boolean awaitingGateway(Payment payment) {
+        return payment != null
+                && payment.getStatus() == PaymentStatus.PENDING
+                && payment.getPaymentMethod() != PaymentMethod.COD;
+    }
+
+    private long gatewayDeadline(Order order) {
+        if (order.getCreatedAt() == null) {
+            return 0;
+        }
+        return order.getCreatedAt().atZone(ZoneId.systemDefault()).toInstant().toEpochMilli() + gatewayTtl.toMillis();
     }
 }
@@ -1,6 +1,8 @@
 package com.sondv.phone.service;
 
+import com.sondv.phone.exception.ApiException;
 import com.sondv.phone.model.Order;
+import com.sondv.phone.model.OrderStatus;
 import com.sondv.phone.model.Payment;
 import com.sondv.phone.model.PaymentMethod;
 import com.sondv.phone.model.PaymentStatus;
@@ -10,6 +12,7 @@ import com.sondv.phone.repository.PaymentRepository;
 import com.sondv.phone.repository.UserRepository;
 import lombok.RequiredArgsConstructor;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.util.Optional;
 
@@ -20,6 +23,7 @@ public class PaymentService {
     private final PaymentRepository paymentRepository;
     private final OrderRepository orderRepository;
     private final UserRepository userRepository;
+    private final StockHoldService stockHoldService;
 
     public User getUserByEmail(String email) {
         return userRepository.findByEmail(email)
@@ -37,18 +41,34 @@ public class PaymentService {
 
     public Payment createPayment(Long orderId, PaymentMethod method) {
         Order order = getOrderById(orderId);
+        if (order.getStatus() != OrderStatus.PENDING) {
+            throw new ApiException(409, "Đơn hàng không còn chờ thanh toán!");
+        }
         Payment payment = new Payment();
         payment.setOrder(order);
         payment.setPaymentMethod(method);
         payment.setStatus(PaymentStatus.PENDING); // Sử dụng Enum thay vì String
-        return paymentRepository.save(payment);
+        Payment savedPayment = paymentRepository.save(payment);
+        if (method == PaymentMethod.VNPAY || method == PaymentMethod.MOMO) {
+            // Gia hạn giữ hàng tính từ lúc khách chuyển sang cổng thanh toán
+            stockHoldService.hold(orderId);
+        }
+        return savedPayment;
     }
 
+    // Đọc có khóa để không ghi đè lên lượt hủy đơn hết hạn đang chạy song song (và ngược lại)
+    @Transactional
     public Payment updatePaymentStatus(Long orderId, PaymentStatus status, String transactionId) {
-        Payment payment = getPaymentByOrderId(orderId)
+        Payment payment = paymentRepository.findByOrderIdForUpdate(orderId)
                 .orElseThrow(() -> new RuntimeException("Không tìm thấy thanh toán!"));
         payment.setStatus(status);
         payment.setTransactionId(transactionId);
-        return paymentRepository.save(payment);
+        Payment savedPayment = paymentRepository.save(payment);
+        if (status == PaymentStatus.PAID || status == PaymentStatus.AWAITING_DELIVERY) {
+            stockHoldService.release(orderId);
+        } else if (status == PaymentStatus.FAILED) {
+            stockHoldService.expireNow(orderId);
+        }
+        return savedPayment;
     }
 }
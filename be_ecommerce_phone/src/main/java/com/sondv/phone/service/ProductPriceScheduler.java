@@ -0,0 +1,85 @@
+package com.sondv.phone.service;
+
+import com.sondv.phone.event.ProductChangedEvent;
+import com.sondv.phone.repository.ProductRepository;
+import lombok.RequiredArgsConstructor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.Objects;
+import java.util.concurrent.ScheduledFuture;
+
+// Lên lịch cập nhật effective_price đúng vào mốc bắt đầu/kết thúc giảm giá gần nhất thay vì chạy cron mỗi phút
+@Component
+@RequiredArgsConstructor
+public class ProductPriceScheduler {
+
+    private static final Logger logger = LoggerFactory.getLogger(ProductPriceScheduler.class);
+
+    private final ProductService productService;
+    private final ProductRepository productRepository;
+    private final TaskScheduler taskScheduler;
+
+    private ScheduledFuture<?> nextRun;
+    private LocalDateTime nextBoundary;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        runBoundary();
+    }
+
+    // Giảm giá có thể đã thay đổi -> tính lại mốc gần nhất (thay đổi tồn kho không ảnh hưởng tới giá)
+    @EventListener
+    public void onProductChanged(ProductChangedEvent event) {
+        if (event.type() != ProductChangedEvent.ChangeType.STOCK) {
+            reschedule();
+        }
+    }
+
+    public synchronized void reschedule() {
+        LocalDateTime now = LocalDateTime.now();
+        LocalDateTime nextStart = productRepository.findNextDiscountStart(now);
+        LocalDateTime nextEnd = productRepository.findNextDiscountEnd(now);
+        // Giảm giá còn hiệu lực đến hết discountEndDate nên chạy sau mốc kết thúc 1 giây
+        LocalDateTime next = earliest(nextStart, nextEnd != null ? nextEnd.plusSeconds(1) : null);
+
+        if (Objects.equals(next, nextBoundary) && nextRun != null && !nextRun.isDone()) {
+            return;
+        }
+        if (nextRun != null) {
+            nextRun.cancel(false);
+            nextRun = null;
+        }
+        nextBoundary = next;
+        if (next != null) {
+            nextRun = taskScheduler.schedule(this::runBoundary, next.atZone(ZoneId.systemDefault()).toInstant());
+            logger.debug("Lần cập nhật giá tiếp theo: {}", next);
+        }
+    }
+
+    private void runBoundary() {
+        try {
+            productService.refreshEffectivePrices();
+            productService.clearExpiredDiscounts();
+        } catch (Exception e) {
+            logger.error("Lỗi khi cập nhật giá hiện tại: {}", e.getMessage(), e);
+        } finally {
+            synchronized (this) {
+                nextBoundary = null;
+            }
+            reschedule();
+        }
+    }
+
+    private LocalDateTime earliest(LocalDateTime a, LocalDateTime b) {
+        if (a == null) return b;
+        if (b == null) return a;
+        return a.isBefore(b) ? a : b;
+    }
+}
@@ -1,17 +1,31 @@
 package com.sondv.phone.service;
 
+import com.sondv.phone.config.CacheConfig;
 import com.sondv.phone.dto.*;
+import com.sondv.phone.event.ProductChangedEvent;
 import com.sondv.phone.model.*;
 import com.sondv.phone.repository.*;
+import com.sondv.phone.search.FacetIndex;
+import com.sondv.phone.search.FacetSelection;
+import com.sondv.phone.search.ProductDocument;
+import com.sondv.phone.search.ProductIndexer;
+import com.sondv.phone.search.ProductSearchIndex;
+import com.sondv.phone.search.SuggestionIndex;
+import com.sondv.phone.util.CursorUtil;
 import lombok.RequiredArgsConstructor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.cache.annotation.Cacheable;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.core.io.ByteArrayResource;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
 import org.springframework.http.*;
-import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 import org.springframework.util.LinkedMultiValueMap;
 import org.springframework.util.MultiValueMap;
@@ -21,10 +35,15 @@ import org.springframework.web.multipart.MultipartFile;
 import java.io.IOException;
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
+import java.util.Comparator;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.function.Function;
+import java.util.function.Predicate;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 @Service
 @RequiredArgsConstructor
@@ -37,88 +56,209 @@ public class ProductService {
     private final CategoryRepository categoryRepository;
     private final SupplierRepository supplierRepository;
     private final InventoryRepository inventoryRepository;
+    private final ApplicationEventPublisher eventPublisher;
+    private final ProductSearchIndex productSearchIndex;
+    private final ProductIndexer productIndexer;
+    private final SuggestionIndex suggestionIndex;
+    private final FacetIndex facetIndex;
     private final RestTemplate restTemplate = new RestTemplate();
     private static final String CLOUDINARY_UPLOAD_URL = "https://api.cloudinary.com/v1_1/dxopjponu/image/upload";
     private static final String CLOUDINARY_UPLOAD_PRESET = "Phone_Store";
 
-    public Page<ProductDTO> getAllProducts(String searchKeyword, Pageable pageable) {
+    public Page<ProductSummaryDTO> getAllProducts(String searchKeyword, Pageable pageable) {
         Page<Product> productPage;
-        if (searchKeyword != null && !searchKeyword.isEmpty()) {
+        if (searchKeyword != null && !searchKeyword.isEmpty() && productSearchIndex.isReady()) {
+            productPage = findPageByRankedIds(productSearchIndex.search(searchKeyword), pageable);
+        } else if (searchKeyword != null && !searchKeyword.isEmpty()) {
+            // Chỉ mục chưa nạp xong thì quay về LIKE
             productPage = productRepository.findByNameContainingIgnoreCase(searchKeyword, pageable);
         } else {
             productPage = productRepository.findAll(pageable);
         }
-        return productPage.map(this::mapToDTOWithDiscountCheck);
+        return productPage.map(this::mapToSummaryDTO);
+    }
+
+    // Gợi ý cho ô tìm kiếm, đọc thẳng từ trie trong bộ nhớ
+    public List<SuggestionDTO> suggest(String prefix, int limit) {
+        return suggestionIndex.suggest(prefix, limit);
+    }
+
+    // Phân trang keyset theo id giảm dần (mới nhất trước), không chạy count(*)
+    public CursorPage<ProductSummaryDTO> getProductsAfter(String after, int size) {
+        CursorUtil.Cursor cursor = CursorUtil.decode(after);
+        List<Product> products = cursor == null
+                ? productRepository.findByOrderByIdDesc(CursorUtil.limitFor(size))
+                : productRepository.findByIdLessThanOrderByIdDesc(cursor.id(), CursorUtil.limitFor(size));
+        CursorPage<Product> page = CursorUtil.toPage(products, size, product -> CursorUtil.encode(null, product.getId()));
+        return page.map(this::mapToSummaryDTO);
     }
 
     // Lấy sản phẩm nổi bật
-    public List<ProductDTO> getFeaturedProducts() {
+    @Cacheable(cacheNames = CacheConfig.PRODUCT_LISTS, key = "'featured'")
+    public List<ProductSummaryDTO> getFeaturedProducts() {
         List<Product> products = productRepository.findByIsFeaturedTrue();
-        return products.stream().map(this::mapToDTOWithDiscountCheck).collect(Collectors.toList());
+        return products.stream().map(this::mapToSummaryDTO).collect(Collectors.toList());
     }
 
     // Lấy sản phẩm mới nhất
-    public List<ProductDTO> getNewestProducts(int limit) {
-        List<Product> products = productRepository.findAllByOrderByIdDesc().stream()
-                .limit(limit)
-                .collect(Collectors.toList());
-        return products.stream().map(this::mapToDTOWithDiscountCheck).collect(Collectors.toList());
+    @Cacheable(cacheNames = CacheConfig.PRODUCT_LISTS, key = "'newest:' + #limit")
+    public List<ProductSummaryDTO> getNewestProducts(int limit) {
+        List<Product> products = productRepository.findByOrderByIdDesc(Limit.of(limit));
+        return products.stream().map(this::mapToSummaryDTO).collect(Collectors.toList());
     }
 
     // Lấy sản phẩm bán chạy
-    public List<ProductDTO> getBestSellingProducts(int limit) {
-        List<Product> products = productRepository.findTop5ByOrderBySoldQuantityDesc().stream()
-                .limit(limit)
-                .collect(Collectors.toList());
-        return products.stream().map(this::mapToDTOWithDiscountCheck).collect(Collectors.toList());
+    @Cacheable(cacheNames = CacheConfig.PRODUCT_LISTS, key = "'bestselling:' + #limit")
+    public List<ProductSummaryDTO> getBestSellingProducts(int limit) {
+        List<Product> products = productRepository.findByOrderBySoldQuantityDesc(Limit.of(limit));
+        return products.stream().map(this::mapToSummaryDTO).collect(Collectors.toList());
     }
 
     // Lấy sản phẩm theo ID
+    @Cacheable(cacheNames = CacheConfig.PRODUCT, key = "#id", unless = "#result == null")
     public Optional<ProductDTO> getProductById(Long id) {
-        return productRepository.findById(id).map(this::mapToDTOWithDiscountCheck);
+        return productRepository.findDetailById(id).map(this::mapToDTOWithDiscountCheck);
     }
 
-    // Lấy sản phẩm phân trang với bộ lọc
-    public Page<ProductDTO> getFilteredProducts(String searchKeyword, BigDecimal minPrice, BigDecimal maxPrice, String sortBy, Pageable pageable) {
-        List<Product> products = productRepository.findAllWithCategoryAndSupplier();
-        if (searchKeyword != null && !searchKeyword.isEmpty()) {
-            products = products.stream()
-                    .filter(p -> p.getName().toLowerCase().contains(searchKeyword.toLowerCase()))
-                    .collect(Collectors.toList());
+    // Lấy sản phẩm phân trang với bộ lọc (lọc, sắp xếp và phân trang đều chạy trong SQL)
+    public Page<ProductSummaryDTO> getFilteredProducts(String searchKeyword, BigDecimal minPrice, BigDecimal maxPrice, String sortBy, Pageable pageable) {
+        boolean hasKeyword = searchKeyword != null && !searchKeyword.isBlank();
+        boolean hasSortBy = sortBy != null && !sortBy.isEmpty();
+
+        Specification<Product> keywordSpec = ProductSpecification.nameContains(searchKeyword);
+        if (hasKeyword && productSearchIndex.isReady()) {
+            List<Long> rankedIds = productSearchIndex.search(searchKeyword);
+            boolean byRelevance = !hasSortBy && pageable.getSort().isUnsorted();
+            Comparator<ProductDocument> order = hasSortBy ? documentOrder(sortBy) : documentOrder(pageable.getSort());
+            if (byRelevance || order != null) {
+                // Lọc giá và sắp xếp trên dữ liệu của chỉ mục, SQL chỉ nạp đúng các id của trang cần trả về
+                List<Long> filteredIds = sortByDocument(rankedIds,
+                        document -> matchesPrice(document, minPrice, maxPrice), order);
+                return findPageByRankedIds(filteredIds, pageable).map(this::mapToSummaryDTO);
+            }
+            if (rankedIds.isEmpty()) {
+                return Page.empty(pageable);
+            }
+            // Kiểu sắp xếp không có trong chỉ mục: để SQL sắp xếp trên toàn bộ kết quả
+            keywordSpec = ProductSpecification.idIn(rankedIds);
         }
-        LocalDateTime now = LocalDateTime.now();
-        if (minPrice != null) {
-            products = products.stream()
-                    .filter(p -> getCurrentPrice(p, now).compareTo(minPrice) >= 0)
-                    .collect(Collectors.toList());
+
+        Specification<Product> spec = Specification.where(keywordSpec)
+                .and(ProductSpecification.currentPriceGreaterThanOrEqual(minPrice))
+                .and(ProductSpecification.currentPriceLessThanOrEqual(maxPrice));
+
+        Pageable pageRequest = pageable;
+        if (hasSortBy) {
+            // Sort của Pageable sẽ ghi đè ORDER BY của Specification nên bỏ đi khi client chọn sortBy
+            spec = spec.and(ProductSpecification.orderBy(sortBy));
+            pageRequest = PageRequest.of(pageable.getPageNumber(), pageable.getPageSize());
+        }
+
+        return productRepository.findAll(spec, pageRequest).map(this::mapToSummaryDTO);
+    }
+
+    // Tìm kiếm có facet: trang sản phẩm lấy từ SQL, số lượng facet đếm trên bitset trong bộ nhớ
+    public FacetedProductsDTO getFacetedProducts(String searchKeyword, FacetSelection selection, Pageable pageable) {
+        boolean hasKeyword = searchKeyword != null && !searchKeyword.isBlank();
+        List<Long> rankedIds = hasKeyword && productSearchIndex.isReady() ? productSearchIndex.search(searchKeyword) : null;
+
+        // Có từ khóa nhưng chỉ mục tìm kiếm chưa sẵn sàng thì không đếm được facet chính xác
+        FacetIndex.FacetCounts counts = facetIndex.isReady() && (!hasKeyword || rankedIds != null)
+                ? facetIndex.count(rankedIds, selection)
+                : FacetIndex.FacetCounts.empty();
+
+        Page<Product> productPage;
+        Comparator<ProductDocument> order = documentOrder(pageable.getSort());
+        if (rankedIds != null && (pageable.getSort().isUnsorted() || order != null)) {
+            List<Long> filteredIds = facetIndex.filter(rankedIds, selection);
+            productPage = findPageByRankedIds(order != null ? sortByDocument(filteredIds, document -> true, order) : filteredIds, pageable);
+        } else if (rankedIds != null && rankedIds.isEmpty()) {
+            productPage = Page.empty(pageable);
+        } else {
+            Specification<Product> spec = Specification
+                    .where(rankedIds != null ? ProductSpecification.idIn(rankedIds) : ProductSpecification.nameContains(searchKeyword))
+                    .and(ProductSpecification.categoryIdIn(selection.categoryIds()))
+                    .and(ProductSpecification.supplierIdIn(selection.supplierIds()))
+                    .and(ProductSpecification.priceInBands(selection.priceBands()));
+            productPage = productRepository.findAll(spec, pageable);
         }
-        if (maxPrice != null) {
-            products = products.stream()
-                    .filter(p -> getCurrentPrice(p, now).compareTo(maxPrice) <= 0)
-                    .collect(Collectors.toList());
+
+        return new FacetedProductsDTO(productPage.map(this::mapToSummaryDTO),
+                counts.categories(), counts.suppliers(), counts.priceBands());
+    }
+
+    // Nạp một trang sản phẩm theo danh sách id đã sắp xếp sẵn: chỉ các id của trang đi vào IN, thứ tự giữ nguyên theo danh sách
+    private Page<Product> findPageByRankedIds(List<Long> rankedIds, Pageable pageable) {
+        if (rankedIds.isEmpty()) {
+            return Page.empty(pageable);
         }
+        int from = (int) Math.min(pageable.getOffset(), rankedIds.size());
+        int to = Math.min(from + pageable.getPageSize(), rankedIds.size());
+        List<Long> pageIds = rankedIds.subList(from, to);
+
+        Map<Long, Product> byId = productRepository.findByIdIn(pageIds).stream()
+                .collect(Collectors.toMap(Product::getId, Function.identity()));
+        List<Product> content = pageIds.stream()
+                .map(byId::get)
+                .filter(Objects::nonNull)
+                .toList();
+        return new PageImpl<>(content, pageable, rankedIds.size());
+    }
 
-        switch (sortBy != null ? sortBy.toLowerCase() : "") {
-            case "newest":
-                products.sort((a, b) -> b.getId().compareTo(a.getId()));
-                break;
-            case "bestselling":
-                products.sort((a, b) -> b.getSoldQuantity().compareTo(a.getSoldQuantity()));
-                break;
-            case "priceasc":
-                products.sort((a, b) -> getCurrentPrice(a, now).compareTo(getCurrentPrice(b, now)));
-                break;
-            case "pricedesc":
-                products.sort((a, b) -> getCurrentPrice(b, now).compareTo(getCurrentPrice(a, now)));
-                break;
+    // Giữ các id có trong chỉ mục và thỏa điều kiện; order = null thì giữ thứ tự theo độ liên quan
+    private List<Long> sortByDocument(List<Long> ids, Predicate<ProductDocument> filter, Comparator<ProductDocument> order) {
+        Stream<ProductDocument> documents = ids.stream()
+                .map(productIndexer::getDocument)
+                .flatMap(Optional::stream)
+                .filter(filter);
+        if (order != null) {
+            documents = documents.sorted(order);
         }
+        return documents.map(ProductDocument::id).toList();
+    }
 
-        int start = (int) pageable.getOffset();
-        int end = Math.min(start + pageable.getPageSize(), products.size());
-        List<ProductDTO> productDTOs = products.subList(start, end).stream()
-                .map(this::mapToDTOWithDiscountCheck)
-                .collect(Collectors.toList());
-        return new PageImpl<>(productDTOs, pageable, products.size());
+    // Cùng thứ tự với ProductSpecification.orderBy nhưng chạy trên ProductDocument; null nếu không hỗ trợ
+    private Comparator<ProductDocument> documentOrder(String sortBy) {
+        Comparator<ProductDocument> byId = Comparator.comparing(ProductDocument::id);
+        Comparator<ProductDocument> byPrice = Comparator.comparing(ProductDocument::price, Comparator.nullsLast(Comparator.naturalOrder()));
+        return switch (sortBy.toLowerCase()) {
+            case "newest" -> byId.reversed();
+            case "bestselling" -> Comparator.comparingInt(ProductDocument::popularity).reversed().thenComparing(byId.reversed());
+            case "priceasc" -> byPrice.thenComparing(byId);
+            case "pricedesc" -> byPrice.reversed().thenComparing(byId.reversed());
+            default -> null;
+        };
+    }
+
+    // Sort của Pageable (?sort=...) trên các thuộc tính có trong chỉ mục; null nếu không sắp xếp hoặc không hỗ trợ
+    private Comparator<ProductDocument> documentOrder(Sort sort) {
+        Comparator<ProductDocument> result = null;
+        for (Sort.Order sortOrder : sort) {
+            Comparator<ProductDocument> comparator = switch (sortOrder.getProperty()) {
+                case "id" -> Comparator.comparing(ProductDocument::id);
+                case "name" -> Comparator.comparing(ProductDocument::name, Comparator.nullsLast(Comparator.naturalOrder()));
+                case "effectivePrice", "sellingPrice" ->
+                        Comparator.comparing(ProductDocument::price, Comparator.nullsLast(Comparator.naturalOrder()));
+                case "soldQuantity" -> Comparator.comparingInt(ProductDocument::popularity);
+                default -> null;
+            };
+            if (comparator == null) {
+                return null;
+            }
+            if (sortOrder.isDescending()) {
+                comparator = comparator.reversed();
+            }
+            result = result == null ? comparator : result.thenComparing(comparator);
+        }
+        return result;
+    }
+
+    private boolean matchesPrice(ProductDocument document, BigDecimal minPrice, BigDecimal maxPrice) {
+        BigDecimal price = document.price();
+        if (minPrice != null && (price == null || price.compareTo(minPrice) < 0)) {
+            return false;
+        }
+        return maxPrice == null || (price != null && price.compareTo(maxPrice) <= 0);
     }
 
     // Tạo sản phẩm
@@ -133,6 +273,7 @@ public class ProductService {
         inventoryRepository.save(inventory);
 
         saveProductImages(savedProduct, product.getImages());
+        eventPublisher.publishEvent(ProductChangedEvent.updated(savedProduct.getId()));
         return mapToDTOWithDiscountCheck(savedProduct);
     }
 
@@ -163,12 +304,14 @@ public class ProductService {
             inventory.setQuantity(savedProduct.getStock() != null ? savedProduct.getStock() : 0);
             inventoryRepository.save(inventory);
 
+            eventPublisher.publishEvent(ProductChangedEvent.updated(id));
             return mapToDTOWithDiscountCheck(savedProduct);
         }).orElseThrow(() -> new RuntimeException("Sản phẩm không tồn tại!"));
     }
 
     public void deleteProduct(Long id) {
         productRepository.deleteById(id);
+        eventPublisher.publishEvent(ProductChangedEvent.deleted(id));
     }
 
     // Áp dụng giảm giá cho tất cả sản phẩm
@@ -193,6 +336,7 @@ public class ProductService {
         try {
             productRepository.saveAll(products);
             logger.info("Đã áp dụng giảm giá cho {} sản phẩm", products.size());
+            eventPublisher.publishEvent(ProductChangedEvent.all());
         } catch (Exception e) {
             logger.error("Lỗi khi lưu sản phẩm: {}", e.getMessage(), e);
             throw e; // Ném lại để controller xử lý
@@ -209,10 +353,11 @@ public class ProductService {
             product.setDiscountEndDate(endDateTime);
         }
         productRepository.saveAll(products);
+        eventPublisher.publishEvent(ProductChangedEvent.updated(
+                products.stream().map(Product::getId).collect(Collectors.toList())));
     }
 
-    // Tự động xóa giảm giá khi hết hạn (chạy mỗi phút)
-    @Scheduled(cron = "0 * * * * *") // Chạy mỗi phút
+    // Xóa giảm giá đã hết hạn (ProductPriceScheduler gọi khi tới mốc kết thúc giảm giá)
     public void clearExpiredDiscounts() {
         LocalDateTime now = LocalDateTime.now();
         List<Product> expiredProducts = productRepository.findByDiscountEndDateBefore(now);
@@ -224,6 +369,17 @@ public class ProductService {
             }
             productRepository.saveAll(expiredProducts);
             logger.info("Đã xóa giảm giá cho {} sản phẩm hết hạn", expiredProducts.size());
+            eventPublisher.publishEvent(ProductChangedEvent.updated(
+                    expiredProducts.stream().map(Product::getId).collect(Collectors.toList())));
+        }
+    }
+
+    // Tính lại effective_price cho các sản phẩm vừa vào/ra khỏi thời gian giảm giá
+    public void refreshEffectivePrices() {
+        int updated = productRepository.refreshEffectivePrices(LocalDateTime.now());
+        if (updated > 0) {
+            logger.info("Đã cập nhật giá hiện tại cho {} sản phẩm", updated);
+            eventPublisher.publishEvent(ProductChangedEvent.all());
         }
     }
 
@@ -290,7 +446,9 @@ public class ProductService {
             ProductImage productImage = new ProductImage();
             productImage.setImageUrl(imageUrl);
             productImage.setProduct(product);
-            return mapProductImageToDTO(productImageRepository.save(productImage));
+            ProductImageDTO saved = mapProductImageToDTO(productImageRepository.save(productImage));
+            eventPublisher.publishEvent(ProductChangedEvent.updated(productId));
+            return saved;
         }
         throw new RuntimeException("Không thể upload ảnh");
     }
@@ -299,11 +457,13 @@ public class ProductService {
         ProductImage productImage = productImageRepository.findById(imageId)
                 .orElseThrow(() -> new RuntimeException("Ảnh sản phẩm không tồn tại"));
         productImageRepository.delete(productImage);
+        eventPublisher.publishEvent(ProductChangedEvent.updated(productImage.getProduct().getId()));
     }
 
     private ProductDTO mapToDTOWithDiscountCheck(Product product) {
-        LocalDateTime now = LocalDateTime.now();
-        BigDecimal currentPrice = getCurrentPrice(product, now);
+        BigDecimal currentPrice = product.getEffectivePrice() != null
+                ? product.getEffectivePrice()
+                : product.resolvePrice(LocalDateTime.now());
 
         return ProductDTO.builder()
                 .id(product.getId())
@@ -321,19 +481,30 @@ public class ProductService {
                 .supplier(mapSupplierToDTO(product.getSupplier()))
                 .images(product.getImages().stream().map(this::mapProductImageToDTO).collect(Collectors.toList()))
                 .inventory(product.getInventory())
-                .inventoryLogs(product.getInventoryLogs())
                 .build();
     }
 
-    private BigDecimal getCurrentPrice(Product product, LocalDateTime now) {
-        if (product.getDiscountedPrice() != null &&
-                product.getDiscountStartDate() != null &&
-                product.getDiscountEndDate() != null &&
-                !now.isBefore(product.getDiscountStartDate()) &&
-                !now.isAfter(product.getDiscountEndDate())) {
-            return product.getDiscountedPrice();
-        }
-        return product.getSellingPrice();
+    private ProductSummaryDTO mapToSummaryDTO(Product product) {
+        BigDecimal currentPrice = product.getEffectivePrice() != null
+                ? product.getEffectivePrice()
+                : product.resolvePrice(LocalDateTime.now());
+
+        return ProductSummaryDTO.builder()
+                .id(product.getId())
+                .name(product.getName())
+                .description(product.getDescription())
+                .costPrice(product.getCostPrice())
+                .sellingPrice(product.getSellingPrice())
+                .discountedPrice(currentPrice.compareTo(product.getSellingPrice()) < 0 ? currentPrice : null)
+                .discountStartDate(product.getDiscountStartDate())
+                .discountEndDate(product.getDiscountEndDate())
+                .isFeatured(product.isFeatured())
+                .stock(product.getStock())
+                .soldQuantity(product.getSoldQuantity())
+                .category(mapCategoryToDTO(product.getCategory()))
+                .supplier(mapSupplierToDTO(product.getSupplier()))
+                .images(product.getImages().stream().map(this::mapProductImageToDTO).collect(Collectors.toList()))
+                .build();
     }
 
     private CategoryDTO mapCategoryToDTO(Category category) {
@@ -1,7 +1,8 @@
 package com.sondv.phone.service;
 
-import com.sondv.phone.model.Order;
-import com.sondv.phone.model.OrderDetail;
+import com.sondv.phone.dto.OrderExportRow;
+import com.sondv.phone.dto.OrderLineExportRow;
+import com.sondv.phone.dto.TopSellingProductDTO;
 import com.sondv.phone.model.OrderStatus;
 import com.sondv.phone.model.Product;
 import com.sondv.phone.repository.OrderDetailRepository;
@@ -9,67 +10,50 @@ import com.sondv.phone.repository.OrderRepository;
 import com.sondv.phone.repository.ProductRepository;
 import lombok.RequiredArgsConstructor;
 import org.apache.poi.ss.usermodel.*;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
 import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.springframework.data.domain.Limit;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
 import java.math.BigDecimal;
+import java.math.RoundingMode;
 import java.time.LocalDateTime;
 import java.util.*;
-import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 @Service
 @RequiredArgsConstructor
 public class ReportService {
+    private static final int STREAMING_WINDOW = 500;
+    private static final int MAX_ROWS_PER_SHEET = 1_000_000;
+
     private final OrderRepository orderRepository;
     private final OrderDetailRepository orderDetailRepository;
     private final ProductRepository productRepository;
 
-    // Tính tổng doanh thu theo khoảng thời gian
+    // Tính tổng doanh thu theo khoảng thời gian (SUM trong DB)
     public BigDecimal getRevenue(LocalDateTime startDate, LocalDateTime endDate) {
-        return orderRepository.findByCreatedAtBetweenAndStatus(startDate, endDate, OrderStatus.COMPLETED)
-                .stream()
-                .map(Order::getTotalPrice)
-                .reduce(BigDecimal.ZERO, BigDecimal::add)
-                .setScale(2, BigDecimal.ROUND_HALF_UP);
+        return orderRepository.sumTotalPriceByStatusAndCreatedAtBetween(OrderStatus.COMPLETED, startDate, endDate)
+                .setScale(2, RoundingMode.HALF_UP);
     }
 
-    // Lấy danh sách sản phẩm bán chạy nhất theo khoảng thời gian
-    public List<Map<String, Object>> getTopSellingProducts(LocalDateTime startDate, LocalDateTime endDate, int limit) {
-        List<OrderDetail> orderDetails = orderDetailRepository.findByOrderCreatedAtBetweenAndOrderStatus(
-                startDate, endDate, OrderStatus.COMPLETED);
-        Map<Product, Integer> productSales = new HashMap<>();
-        Map<Product, BigDecimal> productRevenue = new HashMap<>();
-
-        for (OrderDetail detail : orderDetails) {
-            Product product = detail.getProduct();
-            int quantity = detail.getQuantity();
-            BigDecimal revenue = detail.getPrice().multiply(BigDecimal.valueOf(quantity));
-
-            productSales.put(product, productSales.getOrDefault(product, 0) + quantity);
-            productRevenue.put(product, productRevenue.getOrDefault(product, BigDecimal.ZERO).add(revenue));
-        }
-
-        return productSales.entrySet().stream()
-                .sorted((a, b) -> b.getValue().compareTo(a.getValue()))
-                .limit(limit)
-                .map(entry -> {
-                    Map<String, Object> result = new HashMap<>();
-                    result.put("name", entry.getKey().getName());
-                    result.put("quantitySold", entry.getValue());
-                    result.put("revenue", productRevenue.get(entry.getKey()));
-                    return result;
-                })
-                .collect(Collectors.toList());
+    // Lấy danh sách sản phẩm bán chạy nhất theo khoảng thời gian (GROUP BY sản phẩm, chỉ lấy `limit` dòng)
+    public List<TopSellingProductDTO> getTopSellingProducts(LocalDateTime startDate, LocalDateTime endDate, int limit) {
+        return orderDetailRepository.findTopSellingProducts(startDate, endDate, OrderStatus.COMPLETED, Limit.of(limit));
     }
 
-    // Số lượng đơn hàng theo trạng thái
+    // Số lượng đơn hàng theo trạng thái: một câu GROUP BY, trạng thái không có đơn nào trả về 0
     public Map<String, Long> getOrderCountByStatus() {
-        return Arrays.stream(OrderStatus.values())
-                .collect(Collectors.toMap(
-                        OrderStatus::name,
-                        status -> orderRepository.countByStatus(status)
-                ));
+        Map<String, Long> counts = new LinkedHashMap<>();
+        for (OrderStatus status : OrderStatus.values()) {
+            counts.put(status.name(), 0L);
+        }
+        orderRepository.countGroupByStatus().forEach(row -> counts.put(row.getStatus().name(), row.getCount()));
+        return counts;
     }
 
     // Thống kê sản phẩm tồn kho thấp
@@ -80,7 +64,7 @@ public class ReportService {
     // Xuất báo cáo doanh thu ra Excel
     public byte[] exportRevenueReport(LocalDateTime startDate, LocalDateTime endDate) throws Exception {
         BigDecimal revenue = getRevenue(startDate, endDate);
-        List<Map<String, Object>> topProducts = getTopSellingProducts(startDate, endDate, 5);
+        List<TopSellingProductDTO> topProducts = getTopSellingProducts(startDate, endDate, 5);
 
         Workbook workbook = new XSSFWorkbook();
         Sheet revenueSheet = workbook.createSheet("Revenue Report");
@@ -102,11 +86,11 @@ public class ReportService {
         productHeader.createCell(1).setCellValue("Số lượng bán");
         productHeader.createCell(2).setCellValue("Doanh thu (VNĐ)");
         int rowNum = 1;
-        for (Map<String, Object> product : topProducts) {
+        for (TopSellingProductDTO product : topProducts) {
             Row row = productsSheet.createRow(rowNum++);
-            row.createCell(0).setCellValue((String) product.get("name"));
-            row.createCell(1).setCellValue((Integer) product.get("quantitySold"));
-            row.createCell(2).setCellValue(((BigDecimal) product.get("revenue")).doubleValue());
+            row.createCell(0).setCellValue(product.getName());
+            row.createCell(1).setCellValue(product.getQuantitySold());
+            row.createCell(2).setCellValue(product.getRevenue().doubleValue());
         }
 
         ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
@@ -114,4 +98,91 @@ public class ReportService {
         workbook.close();
         return outputStream.toByteArray();
     }
+
+    // Xuất toàn bộ đơn hàng trong khoảng thời gian, ghi thẳng ra output stream (không giữ cả file trong bộ nhớ)
+    @Transactional(readOnly = true)
+    public void exportOrders(LocalDateTime startDate, LocalDateTime endDate, OrderStatus status, OutputStream out) throws IOException {
+        try (Stream<OrderExportRow> rows = orderRepository.streamExportRows(startDate, endDate, status)) {
+            writeStreamingWorkbook(out, "Orders",
+                    new String[]{"Mã đơn", "Ngày tạo", "Trạng thái", "Khách hàng", "Email", "Tổng tiền (VNĐ)"},
+                    rows, (row, order, dateStyle) -> {
+                        row.createCell(0).setCellValue(order.getOrderId());
+                        setDate(row.createCell(1), order.getCreatedAt(), dateStyle);
+                        row.createCell(2).setCellValue(order.getStatus().name());
+                        row.createCell(3).setCellValue(order.getCustomerName());
+                        row.createCell(4).setCellValue(order.getCustomerEmail());
+                        row.createCell(5).setCellValue(order.getTotalPrice().doubleValue());
+                    });
+        }
+    }
+
+    // Xuất từng dòng chi tiết đơn hàng trong khoảng thời gian
+    @Transactional(readOnly = true)
+    public void exportOrderLines(LocalDateTime startDate, LocalDateTime endDate, OrderStatus status, OutputStream out) throws IOException {
+        try (Stream<OrderLineExportRow> rows = orderDetailRepository.streamExportRows(startDate, endDate, status)) {
+            writeStreamingWorkbook(out, "Order Lines",
+                    new String[]{"Mã đơn", "Ngày tạo", "Trạng thái", "Mã sản phẩm", "Tên sản phẩm", "Số lượng", "Đơn giá (VNĐ)", "Thành tiền (VNĐ)"},
+                    rows, (row, line, dateStyle) -> {
+                        row.createCell(0).setCellValue(line.getOrderId());
+                        setDate(row.createCell(1), line.getCreatedAt(), dateStyle);
+                        row.createCell(2).setCellValue(line.getStatus().name());
+                        row.createCell(3).setCellValue(line.getProductId());
+                        row.createCell(4).setCellValue(line.getProductName());
+                        row.createCell(5).setCellValue(line.getQuantity());
+                        row.createCell(6).setCellValue(line.getPrice().doubleValue());
+                        row.createCell(7).setCellValue(line.getPrice().multiply(BigDecimal.valueOf(line.getQuantity())).doubleValue());
+                    });
+        }
+    }
+
+    @FunctionalInterface
+    private interface RowWriter<T> {
+        void write(Row row, T item, CellStyle dateStyle);
+    }
+
+    // SXSSF chỉ giữ STREAMING_WINDOW dòng trong bộ nhớ, các dòng cũ hơn được đẩy ra file tạm (nén) trên đĩa.
+    // Một sheet Excel tối đa ~1 triệu dòng nên tự sang sheet mới khi đầy.
+    private <T> void writeStreamingWorkbook(OutputStream out, String sheetName, String[] headers,
+                                            Stream<T> rows, RowWriter<T> writer) throws IOException {
+        SXSSFWorkbook workbook = new SXSSFWorkbook(STREAMING_WINDOW);
+        workbook.setCompressTempFiles(true);
+        try {
+            CellStyle dateStyle = workbook.createCellStyle();
+            dateStyle.setDataFormat(workbook.getCreationHelper().createDataFormat().getFormat("yyyy-mm-dd hh:mm:ss"));
+
+            int sheetCount = 1;
+            Sheet sheet = workbook.createSheet(sheetName);
+            writeHeader(sheet, headers);
+            int rowNum = 1;
+            Iterator<T> iterator = rows.iterator();
+            while (iterator.hasNext()) {
+                if (rowNum >= MAX_ROWS_PER_SHEET) {
+                    sheet = workbook.createSheet(sheetName + " (" + (++sheetCount) + ")");
+                    writeHeader(sheet, headers);
+                    rowNum = 1;
+                }
+                writer.write(sheet.createRow(rowNum++), iterator.next(), dateStyle);
+            }
+
+            workbook.write(out);
+            out.flush();
+        } finally {
+            workbook.dispose();
+            workbook.close();
+        }
+    }
+
+    private static void writeHeader(Sheet sheet, String[] headers) {
+        Row header = sheet.createRow(0);
+        for (int i = 0; i < headers.length; i++) {
+            header.createCell(i).setCellValue(headers[i]);
+        }
+    }
+
+    private static void setDate(Cell cell, LocalDateTime value, CellStyle dateStyle) {
+        if (value != null) {
+            cell.setCellValue(value);
+            cell.setCellStyle(dateStyle);
+        }
+    }
 }
@@ -0,0 +1,84 @@
+package com.sondv.phone.service;
+
+import com.sondv.phone.model.*;
+import com.sondv.phone.repository.DailySalesRollupRepository;
+import lombok.RequiredArgsConstructor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.List;
+
+// Duy trì bảng daily_sales_rollup: mỗi thay đổi chỉ là một câu upsert cộng dồn vào ngày tạo đơn / ngày đăng ký,
+// chạy trong cùng transaction với thay đổi gốc nên số liệu không lệch khi rollback.
+// Đơn đã hủy không tính vào doanh thu; hủy rồi mở lại thì cộng lại.
+@Service
+@RequiredArgsConstructor
+public class SalesRollupService {
+
+    private static final Logger logger = LoggerFactory.getLogger(SalesRollupService.class);
+
+    private final DailySalesRollupRepository rollupRepository;
+
+    @Transactional
+    public void recordOrderPlaced(Order order) {
+        apply(order, 1);
+    }
+
+    @Transactional
+    public void recordOrderRemoved(Order order) {
+        apply(order, -1);
+    }
+
+    // Chỉ các chuyển trạng thái vào / ra CANCELLED làm thay đổi số liệu
+    @Transactional
+    public void recordStatusChange(Order order, OrderStatus oldStatus, OrderStatus newStatus) {
+        boolean wasCounted = oldStatus != OrderStatus.CANCELLED;
+        boolean isCounted = newStatus != OrderStatus.CANCELLED;
+        if (wasCounted && !isCounted) {
+            apply(order, -1);
+        } else if (!wasCounted && isCounted) {
+            apply(order, 1);
+        }
+    }
+
+    @Transactional
+    public void recordUserRegistered(User user) {
+        LocalDate date = user.getCreatedAt() != null ? user.getCreatedAt().toLocalDate() : LocalDate.now();
+        rollupRepository.increment(date, BigDecimal.ZERO, 0, 0, 1);
+    }
+
+    public List<DailySalesRollup> getRange(LocalDate startDate, LocalDate endDate) {
+        return rollupRepository.findByDateBetweenOrderByDateAsc(startDate, endDate);
+    }
+
+    // Lần đầu chạy (bảng rỗng) thì dựng lại toàn bộ từ orders và users
+    @EventListener(ApplicationReadyEvent.class)
+    @Transactional
+    public void backfillIfEmpty() {
+        if (rollupRepository.count() > 0) {
+            return;
+        }
+        int orderDays = rollupRepository.backfillOrders();
+        int userDays = rollupRepository.backfillUsers();
+        logger.info("Đã dựng bảng daily_sales_rollup từ dữ liệu cũ ({} dòng đơn hàng, {} dòng người dùng)", orderDays, userDays);
+    }
+
+    private void apply(Order order, int sign) {
+        BigDecimal revenue = BigDecimal.ZERO;
+        long items = 0;
+        if (order.getOrderDetails() != null) {
+            for (OrderDetail detail : order.getOrderDetails()) {
+                revenue = revenue.add(detail.getPrice().multiply(BigDecimal.valueOf(detail.getQuantity())));
+                items += detail.getQuantity();
+            }
+        }
+        LocalDate date = order.getCreatedAt().toLocalDate();
+        rollupRepository.increment(date, sign > 0 ? revenue : revenue.negate(), sign, sign * items, 0);
+    }
+}
@@ -0,0 +1,141 @@
+package com.sondv.phone.service;
+
+import com.sondv.phone.event.OrderPlacedEvent;
+import com.sondv.phone.model.Order;
+import com.sondv.phone.repository.OrderRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.time.Duration;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+// Giữ hàng có thời hạn cho đơn chưa thanh toán.
+// Mỗi lượt giữ là một phần tử trong Redis sorted set (member = orderId, score = thời điểm hết hạn),
+// reaper định kỳ lấy các lượt đã hết hạn, "nhận" từng đơn bằng ZREM (chỉ một node nhận được) rồi hủy đơn và hoàn kho theo lô.
+// Đơn thanh toán qua VNPay/MoMo chưa có kết quả được giữ tới stock.hold.gateway-ttl rồi mới hủy.
+@Service
+public class StockHoldService {
+
+    private static final Logger logger = LoggerFactory.getLogger(StockHoldService.class);
+    private static final String HOLDS_KEY = "stock:holds";
+    // Khi hủy đơn lỗi thì trả lượt giữ về để thử lại sau khoảng này
+    private static final Duration RETRY_DELAY = Duration.ofMinutes(1);
+
+    private final RedisTemplate<String, String> redisTemplate;
+    private final OrderService orderService;
+    private final OrderRepository orderRepository;
+    private final Duration ttl;
+    private final int batchSize;
+
+    public StockHoldService(RedisTemplate<String, String> redisTemplate,
+                            OrderService orderService,
+                            OrderRepository orderRepository,
+                            @Value("${stock.hold.ttl:15m}") Duration ttl,
+                            @Value("${stock.hold.batch-size:100}") int batchSize) {
+        this.redisTemplate = redisTemplate;
+        this.orderService = orderService;
+        this.orderRepository = orderRepository;
+        this.ttl = ttl;
+        this.batchSize = batchSize;
+    }
+
+    // Giữ hàng ngay sau khi đơn được commit
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onOrderPlaced(OrderPlacedEvent event) {
+        hold(event.orderId());
+    }
+
+    // Đặt (hoặc gia hạn) lượt giữ hàng của đơn tính từ bây giờ
+    public void hold(Long orderId) {
+        schedule(orderId, System.currentTimeMillis() + ttl.toMillis());
+    }
+
+    // Đơn đã thanh toán / chọn COD: bỏ lượt giữ, hàng đã trừ được giữ nguyên
+    public void release(Long orderId) {
+        try {
+            redisTemplate.opsForZSet().remove(HOLDS_KEY, orderId.toString());
+        } catch (Exception e) {
+            logger.warn("Không bỏ được lượt giữ hàng của đơn {}: {}", orderId, e.getMessage());
+        }
+    }
+
+    // Thanh toán thất bại: cho hết hạn ngay để reaper hủy đơn và hoàn kho ở lượt chạy kế tiếp
+    public void expireNow(Long orderId) {
+        schedule(orderId, 0);
+    }
+
+    @Scheduled(fixedDelayString = "${stock.hold.reap-interval-ms:30000}")
+    public void reapExpiredHolds() {
+        List<Long> claimed;
+        try {
+            claimed = claimExpired(System.currentTimeMillis());
+        } catch (Exception e) {
+            logger.warn("Không đọc được danh sách giữ hàng từ Redis: {}", e.getMessage());
+            return;
+        }
+        if (claimed.isEmpty()) {
+            return;
+        }
+
+        try {
+            // Đơn chờ cổng thanh toán chưa quá hạn riêng: trả lượt giữ về với hạn đó thay vì bỏ đi
+            orderService.cancelExpiredOrders(claimed).deferredUntil().forEach(this::schedule);
+        } catch (Exception e) {
+            logger.error("Lỗi khi hủy các đơn hết hạn giữ hàng {}: {}", claimed, e.getMessage(), e);
+            long retryAt = System.currentTimeMillis() + RETRY_DELAY.toMillis();
+            claimed.forEach(orderId -> schedule(orderId, retryAt));
+        }
+    }
+
+    // Redis có thể mất dữ liệu hoặc node có thể chết giữa ZREM và commit: khi khởi động, khôi phục lượt giữ cho mọi đơn chưa thanh toán
+    @EventListener(ApplicationReadyEvent.class)
+    public void restoreHolds() {
+        try {
+            List<Order> pending = orderRepository.findPendingUnpaid();
+            for (Order order : pending) {
+                long expiresAt = order.getCreatedAt().atZone(ZoneId.systemDefault()).toInstant().toEpochMilli() + ttl.toMillis();
+                redisTemplate.opsForZSet().addIfAbsent(HOLDS_KEY, order.getId().toString(), expiresAt);
+            }
+            if (!pending.isEmpty()) {
+                logger.info("Đã khôi phục lượt giữ hàng cho {} đơn chưa thanh toán", pending.size());
+            }
+        } catch (Exception e) {
+            logger.warn("Không khôi phục được lượt giữ hàng: {}", e.getMessage());
+        }
+    }
+
+    private List<Long> claimExpired(long now) {
+        Set<String> expired = redisTemplate.opsForZSet().rangeByScore(HOLDS_KEY, 0, now, 0, batchSize);
+        List<Long> claimed = new ArrayList<>();
+        if (expired == null) {
+            return claimed;
+        }
+        for (String member : expired) {
+            // ZREM trả về 1 cho đúng một node, các node khác bỏ qua đơn này
+            Long removed = redisTemplate.opsForZSet().remove(HOLDS_KEY, member);
+            if (removed != null && removed > 0) {
+                claimed.add(Long.valueOf(member));
+            }
+        }
+        return claimed;
+    }
+
+    private void schedule(Long orderId, long expiresAt) {
+        try {
+            redisTemplate.opsForZSet().add(HOLDS_KEY, orderId.toString(), expiresAt);
+        } catch (Exception e) {
+            // Đơn vẫn sẽ được khôi phục lượt giữ ở lần khởi động tiếp theo
+            logger.warn("Không ghi được lượt giữ hàng của đơn {}: {}", orderId, e.getMessage());
+        }
+    }
+}
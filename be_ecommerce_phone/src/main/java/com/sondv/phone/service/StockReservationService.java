@@ -0,0 +1,116 @@
+package com.sondv.phone.service;
+
+import com.sondv.phone.event.ProductChangedEvent;
+import com.sondv.phone.repository.InventoryJdbcRepository;
+import lombok.RequiredArgsConstructor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.*;
+
+// Giữ hàng cho đơn: mỗi dòng là một câu UPDATE có điều kiện (quantity >= số lượng), gửi theo JDBC batch,
+// không đọc-kiểm tra-ghi trong Java nên hai checkout đồng thời không thể bán quá số tồn.
+@Service
+@RequiredArgsConstructor
+public class StockReservationService {
+
+    private static final Logger logger = LoggerFactory.getLogger(StockReservationService.class);
+
+    private final InventoryJdbcRepository inventoryJdbcRepository;
+    private final InventoryJournal inventoryJournal;
+    private final ApplicationEventPublisher eventPublisher;
+
+    public record LineResult(Long productId, int requested, boolean reserved, Integer remaining) {
+    }
+
+    // Một dòng hoàn kho: userId là người sở hữu đơn (ghi vào InventoryLog)
+    public record ReleaseLine(Long productId, int quantity, Long userId) {
+    }
+
+    public record Reservation(List<LineResult> lines) {
+        public boolean isSuccessful() {
+            return lines.stream().allMatch(LineResult::reserved);
+        }
+
+        public List<LineResult> failedLines() {
+            return lines.stream().filter(line -> !line.reserved()).toList();
+        }
+    }
+
+    // Phải chạy trong transaction của đơn hàng: nếu có dòng thất bại, caller ném exception để rollback cả các dòng đã trừ.
+    // Nên gọi ở cuối transaction để khóa dòng do UPDATE chỉ giữ đến lúc commit.
+    // Cả giỏ hàng chỉ tốn 3 round trip: batch trừ kho, đọc tồn còn lại, batch cập nhật products.stock; log ghi bất đồng bộ qua journal.
+    @Transactional(propagation = Propagation.MANDATORY)
+    public Reservation reserve(Map<Long, Integer> quantities, String reason, Long userId) {
+        LocalDateTime now = LocalDateTime.now(ZoneOffset.of("+07:00"));
+        // Trừ theo thứ tự productId để các checkout đồng thời luôn khóa dòng theo cùng một thứ tự (tránh deadlock)
+        Map<Long, Integer> ordered = new TreeMap<>(quantities);
+        List<Long> productIds = new ArrayList<>(ordered.keySet());
+        List<Integer> requested = new ArrayList<>(ordered.values());
+
+        boolean[] reserved = inventoryJdbcRepository.reserveAll(productIds, requested, now);
+        Map<Long, Integer> remaining = inventoryJdbcRepository.findQuantities(productIds);
+
+        List<LineResult> results = new ArrayList<>();
+        for (int i = 0; i < productIds.size(); i++) {
+            results.add(new LineResult(productIds.get(i), requested.get(i), reserved[i], remaining.get(productIds.get(i))));
+        }
+        Reservation reservation = new Reservation(results);
+        if (!reservation.isSuccessful()) {
+            logger.warn("Không giữ được hàng cho các dòng: {}", reservation.failedLines());
+            return reservation;
+        }
+
+        Map<Long, Integer> stocks = new HashMap<>();
+        List<InventoryJdbcRepository.LogRow> logs = new ArrayList<>();
+        for (LineResult line : results) {
+            stocks.put(line.productId(), line.remaining());
+            logs.add(new InventoryJdbcRepository.LogRow(line.productId(), line.remaining() + line.requested(),
+                    line.remaining(), reason, userId, now));
+        }
+        inventoryJdbcRepository.updateProductStocks(stocks);
+        inventoryJournal.append(logs);
+
+        eventPublisher.publishEvent(ProductChangedEvent.stockChanged(productIds));
+        return reservation;
+    }
+
+    // Hoàn kho cho nhiều đơn cùng lúc (hủy đơn, hết hạn giữ hàng): cộng kho theo lô, ghi một log cho mỗi dòng
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void release(List<ReleaseLine> lines, String reason) {
+        if (lines.isEmpty()) {
+            return;
+        }
+        LocalDateTime now = LocalDateTime.now(ZoneOffset.of("+07:00"));
+        Map<Long, Integer> totals = new TreeMap<>();
+        lines.forEach(line -> totals.merge(line.productId(), line.quantity(), Integer::sum));
+        List<Long> productIds = new ArrayList<>(totals.keySet());
+
+        inventoryJdbcRepository.releaseAll(productIds, new ArrayList<>(totals.values()), now);
+        Map<Long, Integer> current = new HashMap<>(inventoryJdbcRepository.findQuantities(productIds));
+        inventoryJdbcRepository.updateProductStocks(current);
+
+        // Tính ngược từ số tồn cuối cùng để mỗi log có old/new khớp nhau
+        List<InventoryJdbcRepository.LogRow> logs = new ArrayList<>();
+        for (int i = lines.size() - 1; i >= 0; i--) {
+            ReleaseLine line = lines.get(i);
+            Integer newQuantity = current.get(line.productId());
+            if (newQuantity == null) {
+                continue;
+            }
+            int oldQuantity = newQuantity - line.quantity();
+            current.put(line.productId(), oldQuantity);
+            logs.add(new InventoryJdbcRepository.LogRow(line.productId(), oldQuantity, newQuantity, reason, line.userId(), now));
+        }
+        Collections.reverse(logs);
+        inventoryJournal.append(logs);
+
+        eventPublisher.publishEvent(ProductChangedEvent.stockChanged(productIds));
+    }
+}
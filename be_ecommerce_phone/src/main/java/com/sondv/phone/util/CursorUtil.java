@@ -0,0 +1,63 @@
+package com.sondv.phone.util;
+
+import com.sondv.phone.dto.CursorPage;
+import com.sondv.phone.exception.ApiException;
+import org.springframework.data.domain.Limit;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.Base64;
+import java.util.List;
+import java.util.function.Function;
+
+// Mã hóa / giải mã cursor cho phân trang keyset: Base64("<khóa sắp xếp>|<id>") của bản ghi cuối trang trước
+public class CursorUtil {
+    public static final int DEFAULT_SIZE = 20;
+    public static final int MAX_SIZE = 100;
+
+    public record Cursor(String key, Long id) {
+        public LocalDateTime keyAsDateTime() {
+            try {
+                return LocalDateTime.parse(key);
+            } catch (RuntimeException e) {
+                throw new ApiException(400, "Cursor không hợp lệ");
+            }
+        }
+    }
+
+    public static String encode(Object key, Long id) {
+        String raw = (key != null ? key.toString() : "") + "|" + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    // Trả về null khi chưa có cursor (trang đầu)
+    public static Cursor decode(String token) {
+        if (token == null || token.isBlank()) {
+            return null;
+        }
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+            int separator = raw.lastIndexOf('|');
+            return new Cursor(raw.substring(0, separator), Long.parseLong(raw.substring(separator + 1)));
+        } catch (RuntimeException e) {
+            throw new ApiException(400, "Cursor không hợp lệ");
+        }
+    }
+
+    // Lấy dư một bản ghi để biết còn trang sau hay không mà không cần count(*)
+    public static Limit limitFor(int size) {
+        return Limit.of(clampSize(size) + 1);
+    }
+
+    public static int clampSize(int size) {
+        return size <= 0 ? DEFAULT_SIZE : Math.min(size, MAX_SIZE);
+    }
+
+    public static <T> CursorPage<T> toPage(List<T> rows, int size, Function<T, String> cursorOf) {
+        int pageSize = clampSize(size);
+        boolean hasNext = rows.size() > pageSize;
+        List<T> content = hasNext ? rows.subList(0, pageSize) : rows;
+        String nextCursor = hasNext ? cursorOf.apply(content.get(content.size() - 1)) : null;
+        return new CursorPage<>(content, nextCursor, hasNext);
+    }
+}
@@ -0,0 +1,155 @@
+package com.sondv.phone.util;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.UUID;
+
+// Sinh id 64 bit kiểu Snowflake trong bộ nhớ: 41 bit mili giây tính từ EPOCH, 10 bit worker, 12 bit số thứ tự.
+// Id tăng dần theo thời gian nên vẫn sắp xếp được theo id, và không cần hỏi DB trước khi dùng.
+// Worker id phải khác nhau giữa các node: đặt cố định bằng snowflake.worker-id (0-1023), hoặc để -1 để node thuê
+// một worker id trống trong Redis (key snowflake:worker:{id} có TTL, gia hạn định kỳ). Không thuê được thì không khởi động.
+@Component
+public class SnowflakeIdGenerator {
+    private static final Logger logger = LoggerFactory.getLogger(SnowflakeIdGenerator.class);
+    private static final long EPOCH = 1704067200000L; // 2024-01-01T00:00:00Z
+    private static final int WORKER_BITS = 10;
+    private static final int SEQUENCE_BITS = 12;
+    private static final long MAX_WORKER = (1L << WORKER_BITS) - 1;
+    private static final long SEQUENCE_MASK = (1L << SEQUENCE_BITS) - 1;
+    // Đồng hồ lùi ít hơn khoảng này (NTP chỉnh giờ) thì chờ, lùi nhiều hơn thì báo lỗi thay vì sinh id có thể trùng
+    private static final long MAX_CLOCK_DRIFT_MS = 5;
+    private static final String LEASE_PREFIX = "snowflake:worker:";
+    private static final String LEASE_COUNTER = "snowflake:worker:next";
+    private static final DefaultRedisScript<Long> RENEW_LEASE = new DefaultRedisScript<>(
+            "if redis.call('get', KEYS[1]) == ARGV[1] then return redis.call('pexpire', KEYS[1], ARGV[2]) else return 0 end", Long.class);
+    private static final DefaultRedisScript<Long> RELEASE_LEASE = new DefaultRedisScript<>(
+            "if redis.call('get', KEYS[1]) == ARGV[1] then return redis.call('del', KEYS[1]) else return 0 end", Long.class);
+
+    private final RedisTemplate<String, String> redisTemplate;
+    private final long configuredWorkerId;
+    private final Duration leaseTtl;
+    private final String leaseToken = UUID.randomUUID().toString();
+
+    private volatile long workerId = -1;
+    // Hết hạn thuê mà chưa gia hạn được thì ngừng sinh id: node khác có thể đã nhận worker id này
+    private volatile long leaseValidUntil = Long.MAX_VALUE;
+    private long lastTimestamp = -1;
+    private long sequence = 0;
+
+    public SnowflakeIdGenerator(RedisTemplate<String, String> redisTemplate,
+                                @Value("${snowflake.worker-id:-1}") long workerId,
+                                @Value("${snowflake.lease-ttl:5m}") Duration leaseTtl) {
+        if (workerId > MAX_WORKER) {
+            throw new IllegalArgumentException("snowflake.worker-id phải trong khoảng 0-" + MAX_WORKER);
+        }
+        this.redisTemplate = redisTemplate;
+        this.configuredWorkerId = workerId;
+        this.leaseTtl = leaseTtl;
+    }
+
+    @PostConstruct
+    public void init() {
+        if (configuredWorkerId >= 0) {
+            workerId = configuredWorkerId;
+            return;
+        }
+        acquireLease();
+        logger.info("Đã thuê Snowflake worker id {}", workerId);
+    }
+
+    public long nextId() {
+        while (true) {
+            long id = tryNextId(System.currentTimeMillis());
+            if (id >= 0) {
+                return id;
+            }
+            // Hết số thứ tự trong mili giây này hoặc đồng hồ lùi chút ít: chờ ngoài khóa để không chặn các thread khác
+            Thread.onSpinWait();
+        }
+    }
+
+    // -1 nghĩa là phải chờ sang mili giây kế tiếp
+    private synchronized long tryNextId(long now) {
+        if (now > leaseValidUntil) {
+            throw new IllegalStateException("Snowflake worker id " + workerId + " đã hết hạn thuê, chưa sinh được id");
+        }
+        if (now < lastTimestamp) {
+            if (lastTimestamp - now > MAX_CLOCK_DRIFT_MS) {
+                throw new IllegalStateException("Đồng hồ hệ thống bị lùi " + (lastTimestamp - now) + "ms, từ chối sinh id");
+            }
+            return -1;
+        }
+        if (now == lastTimestamp) {
+            if (sequence == SEQUENCE_MASK) {
+                return -1;
+            }
+            sequence++;
+        } else {
+            sequence = 0;
+            lastTimestamp = now;
+        }
+        return ((now - EPOCH) << (WORKER_BITS + SEQUENCE_BITS)) | (workerId << SEQUENCE_BITS) | sequence;
+    }
+
+    @Scheduled(fixedDelayString = "${snowflake.lease-renew-ms:60000}")
+    public void renewLease() {
+        if (configuredWorkerId >= 0) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        try {
+            Long renewed = redisTemplate.execute(RENEW_LEASE, List.of(LEASE_PREFIX + workerId),
+                    leaseToken, String.valueOf(leaseTtl.toMillis()));
+            if (renewed != null && renewed > 0) {
+                leaseValidUntil = now + leaseTtl.toMillis();
+                return;
+            }
+            logger.error("Mất quyền thuê Snowflake worker id {}, thuê worker id mới", workerId);
+            synchronized (this) {
+                acquireLease();
+            }
+            logger.info("Đã thuê Snowflake worker id {}", workerId);
+        } catch (Exception e) {
+            logger.warn("Không gia hạn được Snowflake worker id {} (còn hiệu lực tới {}): {}",
+                    workerId, leaseValidUntil, e.getMessage());
+        }
+    }
+
+    @PreDestroy
+    public void releaseLease() {
+        if (configuredWorkerId >= 0) {
+            return;
+        }
+        try {
+            redisTemplate.execute(RELEASE_LEASE, List.of(LEASE_PREFIX + workerId), leaseToken);
+        } catch (Exception e) {
+            logger.warn("Không trả được Snowflake worker id {}: {}", workerId, e.getMessage());
+        }
+    }
+
+    // Thử lần lượt các worker id bắt đầu từ bộ đếm chung, SET NX đảm bảo mỗi id chỉ một node giữ
+    private void acquireLease() {
+        long now = System.currentTimeMillis();
+        Long start = redisTemplate.opsForValue().increment(LEASE_COUNTER);
+        for (long i = 0; i <= MAX_WORKER; i++) {
+            long candidate = ((start != null ? start : 0) + i) & MAX_WORKER;
+            Boolean acquired = redisTemplate.opsForValue().setIfAbsent(LEASE_PREFIX + candidate, leaseToken, leaseTtl);
+            if (Boolean.TRUE.equals(acquired)) {
+                workerId = candidate;
+                leaseValidUntil = now + leaseTtl.toMillis();
+                return;
+            }
+        }
+        throw new IllegalStateException("Không còn Snowflake worker id trống (tối đa " + (MAX_WORKER + 1) + " node)");
+    }
+}
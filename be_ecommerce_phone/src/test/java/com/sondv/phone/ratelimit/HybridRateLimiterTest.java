@@ -0,0 +1,137 @@
+package com.sondv.phone.ratelimit;
+
+import com.sondv.phone.ratelimit.RateLimitProperties.Policy;
+import com.sondv.phone.ratelimit.TokenBucketLimiter.Decision;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.redis.RedisConnectionFailureException;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class HybridRateLimiterTest {
+
+    private static final String KEY = "rate_limit:default:ip:127.0.0.1";
+
+    @Mock
+    private TokenBucketLimiter tokenBucketLimiter;
+
+    // limit 1000 * lease-fraction 0.05 = lô 50 token
+    private final Policy policy = new Policy("default", "/**", 1000, Duration.ofMinutes(1));
+    private HybridRateLimiter rateLimiter;
+
+    @BeforeEach
+    void setUp() {
+        RateLimitProperties properties = new RateLimitProperties();
+        properties.setDefaultPolicy(policy);
+        rateLimiter = new HybridRateLimiter(tokenBucketLimiter, properties);
+    }
+
+    @Test
+    void leasedTokensAreSpentLocallyBeforeCallingRedisAgain() {
+        when(tokenBucketLimiter.acquire(eq(KEY), eq(1000L), eq(Duration.ofMinutes(1)), eq(50L), eq(0L)))
+                .thenReturn(new Decision(50, 900, 0));
+
+        Decision first = rateLimiter.tryAcquire(KEY, policy);
+        assertThat(first.allowed()).isTrue();
+        assertThat(first.remaining()).isEqualTo(49 + 900);
+        for (int i = 1; i < 50; i++) {
+            assertThat(rateLimiter.tryAcquire(KEY, policy).allowed()).isTrue();
+        }
+        verify(tokenBucketLimiter, times(1)).acquire(anyString(), anyLong(), any(), anyLong(), anyLong());
+
+        // Lô đã hết: request thứ 51 lấy lô mới
+        rateLimiter.tryAcquire(KEY, policy);
+        verify(tokenBucketLimiter, times(2)).acquire(anyString(), anyLong(), any(), anyLong(), anyLong());
+    }
+
+    @Test
+    void unusedTokensOfExpiredLeaseAreReturnedWithNextRefill() throws Exception {
+        RateLimitProperties properties = new RateLimitProperties();
+        properties.setDefaultPolicy(policy);
+        properties.getLocal().setLeaseTtl(Duration.ofMillis(50));
+        rateLimiter = new HybridRateLimiter(tokenBucketLimiter, properties);
+        when(tokenBucketLimiter.acquire(anyString(), anyLong(), any(), anyLong(), anyLong()))
+                .thenReturn(new Decision(50, 900, 0));
+
+        for (int i = 0; i < 10; i++) {
+            assertThat(rateLimiter.tryAcquire(KEY, policy).allowed()).isTrue();
+        }
+        Thread.sleep(100);
+        assertThat(rateLimiter.tryAcquire(KEY, policy).allowed()).isTrue();
+
+        // Lô đầu dùng 10/50 rồi hết hạn: 40 token được trả về khi lấy lô mới
+        verify(tokenBucketLimiter).acquire(KEY, 1000L, Duration.ofMinutes(1), 50L, 0L);
+        verify(tokenBucketLimiter).acquire(KEY, 1000L, Duration.ofMinutes(1), 50L, 40L);
+    }
+
+    @Test
+    void rejectionFromRedisIsCachedUntilRetryAfter() {
+        when(tokenBucketLimiter.acquire(anyString(), anyLong(), any(), anyLong(), anyLong()))
+                .thenReturn(new Decision(0, 0, 30_000));
+
+        assertThat(rateLimiter.tryAcquire(KEY, policy).allowed()).isFalse();
+        Decision again = rateLimiter.tryAcquire(KEY, policy);
+
+        assertThat(again.allowed()).isFalse();
+        assertThat(again.retryAfterMillis()).isPositive();
+        verify(tokenBucketLimiter, times(1)).acquire(anyString(), anyLong(), any(), anyLong(), anyLong());
+    }
+
+    @Test
+    void redisDownFallsBackToLocalBucketWithSameLimit() {
+        when(tokenBucketLimiter.acquire(anyString(), anyLong(), any(), anyLong(), anyLong()))
+                .thenThrow(new RedisConnectionFailureException("down"));
+        Policy small = new Policy("login", "/**/auth/login", 3, Duration.ofMinutes(1));
+
+        assertThat(rateLimiter.tryAcquire(KEY, small).allowed()).isTrue();
+        assertThat(rateLimiter.tryAcquire(KEY, small).allowed()).isTrue();
+        assertThat(rateLimiter.tryAcquire(KEY, small).allowed()).isTrue();
+        Decision denied = rateLimiter.tryAcquire(KEY, small);
+
+        assertThat(denied.allowed()).isFalse();
+        assertThat(denied.retryAfterMillis()).isPositive();
+        // Trong redis-retry-backoff không gọi lại Redis
+        verify(tokenBucketLimiter, times(1)).acquire(anyString(), anyLong(), any(), anyLong(), anyLong());
+    }
+
+    @Test
+    void concurrentRequestsShareOneRefill() throws Exception {
+        CountDownLatch inRedis = new CountDownLatch(1);
+        when(tokenBucketLimiter.acquire(anyString(), anyLong(), any(), anyLong(), anyLong())).thenAnswer(invocation -> {
+            inRedis.countDown();
+            Thread.sleep(50);
+            return new Decision(50, 900, 0);
+        });
+
+        ExecutorService pool = Executors.newFixedThreadPool(10);
+        try {
+            List<Future<Decision>> results = new ArrayList<>();
+            results.add(pool.submit(() -> rateLimiter.tryAcquire(KEY, policy)));
+            assertThat(inRedis.await(1, TimeUnit.SECONDS)).isTrue();
+            for (int i = 0; i < 9; i++) {
+                results.add(pool.submit(() -> rateLimiter.tryAcquire(KEY, policy)));
+            }
+            for (Future<Decision> result : results) {
+                assertThat(result.get(1, TimeUnit.SECONDS).allowed()).isTrue();
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+        verify(tokenBucketLimiter, times(1)).acquire(anyString(), anyLong(), any(), anyLong(), anyLong());
+    }
+}
@@ -0,0 +1,45 @@
+package com.sondv.phone.search;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ProductSearchIndexTest {
+
+    private ProductSearchIndex index;
+
+    @BeforeEach
+    void setUp() {
+        index = new ProductSearchIndex();
+        index.rebuild(List.of(
+                document(1L, "iPhone 15 Pro Max", 10),
+                document(2L, "iPhone 15", 50),
+                document(3L, "Điện thoại Samsung Galaxy", 5),
+                document(4L, "Ipad Pro", 1)));
+    }
+
+    @Test
+    void lastWordMatchesByPrefix() {
+        assertThat(index.search("iphone 15 pr")).containsExactly(1L);
+        assertThat(index.search("iph")).containsExactlyInAnyOrder(1L, 2L);
+    }
+
+    @Test
+    void earlierWordsMustMatchWholeWords() {
+        // "ip" chỉ là tiền tố của iphone/ipad, không phải từ cuối nên không khớp
+        assertThat(index.search("ip pro")).isEmpty();
+    }
+
+    @Test
+    void diacriticsAreFolded() {
+        assertThat(index.search("dien tho")).containsExactly(3L);
+    }
+
+    private static ProductDocument document(Long id, String name, int soldQuantity) {
+        return new ProductDocument(id, name, null, null, null, null, null, BigDecimal.TEN, soldQuantity);
+    }
+}
@@ -0,0 +1,41 @@
+package com.sondv.phone.search;
+
+import com.sondv.phone.dto.SuggestionDTO;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SuggestionIndexTest {
+
+    private SuggestionIndex index;
+
+    @BeforeEach
+    void setUp() {
+        index = new SuggestionIndex();
+        index.rebuild(List.of(
+                document(1L, "iPhone 15 Pro Max", 10),
+                document(2L, "iPhone 15", 50)));
+    }
+
+    @Test
+    void suggestionsAreRankedBySoldQuantity() {
+        assertThat(index.suggest("iph", 10)).extracting(SuggestionDTO::getId).containsExactly(2L, 1L);
+    }
+
+    @Test
+    void popularityUpdateReordersSuggestions() {
+        index.updatePopularity(1L, 80);
+
+        assertThat(index.suggest("iph", 10)).extracting(SuggestionDTO::getId).containsExactly(1L, 2L);
+        // Hậu tố của tên cũng được cập nhật trọng số
+        assertThat(index.suggest("pro max", 10)).extracting(SuggestionDTO::getId).containsExactly(1L);
+    }
+
+    private static ProductDocument document(Long id, String name, int soldQuantity) {
+        return new ProductDocument(id, name, null, null, null, null, null, BigDecimal.TEN, soldQuantity);
+    }
+}
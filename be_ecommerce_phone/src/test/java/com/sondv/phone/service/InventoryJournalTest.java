@@ -0,0 +1,175 @@
+package com.sondv.phone.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.sondv.phone.repository.InventoryJdbcRepository;
+import com.sondv.phone.repository.InventoryJdbcRepository.LogRow;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class InventoryJournalTest {
+
+    @Mock
+    private InventoryJdbcRepository inventoryJdbcRepository;
+    @TempDir
+    private Path walDir;
+
+    private final ObjectMapper objectMapper = new ObjectMapper().registerModule(new JavaTimeModule());
+    private InventoryJournal journal;
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        if (journal != null) {
+            journal.stop();
+        }
+    }
+
+    @Test
+    void appendedRowsReachDatabaseAndWalIsDeleted() throws Exception {
+        journal = new InventoryJournal(inventoryJdbcRepository, objectMapper, InventoryJournal.Durability.WAL,
+                walDir.toString(), 100, 10, 50);
+        // Flusher dùng lại list sau mỗi lần ghi nên phải chép ra
+        List<LogRow> inserted = new CopyOnWriteArrayList<>();
+        doAnswer(invocation -> inserted.addAll(invocation.getArgument(0))).when(inventoryJdbcRepository).insertLogs(anyList());
+        journal.start();
+
+        journal.append(List.of(row(1L), row(2L)));
+
+        verify(inventoryJdbcRepository, timeout(5000).atLeastOnce()).insertLogs(anyList());
+        assertThat(inserted).extracting(LogRow::productId).containsExactly(1L, 2L);
+        assertThat(inserted).allSatisfy(row -> assertThat(row.journalId()).isNotNull());
+        // File WAL được xóa sau khi mọi bản ghi của nó đã vào DB
+        long deadline = System.currentTimeMillis() + 5000;
+        while (walFileCount() > 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+        }
+        assertThat(walFileCount()).isZero();
+    }
+
+    @Test
+    void leftoverWalIsReplayedOnStart() throws Exception {
+        LogRow pending = row(7L).withJournalId("journal-7");
+        Files.writeString(walDir.resolve("inventory-1-0.wal"), objectMapper.writeValueAsString(pending) + "\n{broken");
+        journal = new InventoryJournal(inventoryJdbcRepository, objectMapper, InventoryJournal.Durability.WAL,
+                walDir.toString(), 100, 10, 50);
+
+        journal.start();
+
+        verify(inventoryJdbcRepository).insertLogs(List.of(pending));
+        assertThat(walFileCount()).isZero();
+    }
+
+    @Test
+    void walIsSyncedBeforeCommitAndRowsAreFlushedAfterCommit() throws Exception {
+        journal = new InventoryJournal(inventoryJdbcRepository, objectMapper, InventoryJournal.Durability.WAL,
+                walDir.toString(), 100, 10, 50);
+        journal.start();
+
+        TransactionSynchronizationManager.initSynchronization();
+        List<TransactionSynchronization> synchronizations;
+        try {
+            journal.append(List.of(row(3L)));
+            synchronizations = TransactionSynchronizationManager.getSynchronizations();
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+        synchronizations.forEach(synchronization -> synchronization.beforeCommit(false));
+
+        // Đã fsync vào WAL trước khi commit, nhưng chưa được đưa đi ghi DB
+        assertThat(walLines()).anyMatch(line -> line.contains("\"productId\":3"));
+        Thread.sleep(200);
+        verify(inventoryJdbcRepository, never()).insertLogs(anyList());
+
+        synchronizations.forEach(synchronization -> synchronization.afterCompletion(TransactionSynchronization.STATUS_COMMITTED));
+        verify(inventoryJdbcRepository, timeout(5000)).insertLogs(anyList());
+    }
+
+    @Test
+    void rolledBackRowsAreNotReplayed() throws Exception {
+        LogRow committed = row(7L).withJournalId("journal-7");
+        LogRow rolledBack = row(8L).withJournalId("journal-8");
+        Files.writeString(walDir.resolve("inventory-1-0.wal"),
+                objectMapper.writeValueAsString(committed) + "\n" + objectMapper.writeValueAsString(rolledBack) + "\n");
+        Files.writeString(walDir.resolve("inventory-2-1.wal"), "ABORT journal-8\n");
+        journal = new InventoryJournal(inventoryJdbcRepository, objectMapper, InventoryJournal.Durability.WAL,
+                walDir.toString(), 100, 10, 50);
+
+        journal.start();
+
+        verify(inventoryJdbcRepository).insertLogs(List.of(committed));
+        assertThat(walFileCount()).isZero();
+    }
+
+    @Test
+    void poisonRowIsDeadLetteredAndLaterRowsStillFlow() throws Exception {
+        journal = new InventoryJournal(inventoryJdbcRepository, objectMapper, InventoryJournal.Durability.MEMORY,
+                walDir.toString(), 100, 10, 50);
+        List<LogRow> inserted = new CopyOnWriteArrayList<>();
+        doAnswer(invocation -> {
+            List<LogRow> rows = invocation.getArgument(0);
+            if (rows.stream().anyMatch(row -> row.productId() == 99L)) {
+                throw new DataIntegrityViolationException("FK product_id");
+            }
+            return inserted.addAll(rows);
+        }).when(inventoryJdbcRepository).insertLogs(anyList());
+        journal.start();
+
+        journal.append(List.of(row(1L), row(99L)));
+        long deadline = System.currentTimeMillis() + 10000;
+        while (inserted.isEmpty() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+        }
+        journal.append(List.of(row(2L)));
+        while (inserted.size() < 2 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+        }
+
+        assertThat(inserted).extracting(LogRow::productId).containsExactly(1L, 2L);
+        List<String> deadLetters = Files.readAllLines(walDir.resolve("inventory-dead-letter.jsonl"));
+        assertThat(deadLetters).hasSize(1);
+        assertThat(objectMapper.readValue(deadLetters.get(0), LogRow.class).productId()).isEqualTo(99L);
+    }
+
+    private List<String> walLines() throws Exception {
+        try (Stream<Path> files = Files.list(walDir)) {
+            return files.filter(path -> path.toString().endsWith(".wal"))
+                    .flatMap(path -> {
+                        try {
+                            return Files.readAllLines(path).stream();
+                        } catch (Exception e) {
+                            throw new IllegalStateException(e);
+                        }
+                    })
+                    .toList();
+        }
+    }
+
+    private long walFileCount() throws Exception {
+        try (Stream<Path> files = Files.list(walDir)) {
+            return files.filter(path -> path.toString().endsWith(".wal")).count();
+        }
+    }
+
+    private static LogRow row(Long productId) {
+        return new LogRow(productId, 10, 9, "Đặt hàng", 1L, LocalDateTime.of(2024, 5, 1, 10, 0));
+    }
+}
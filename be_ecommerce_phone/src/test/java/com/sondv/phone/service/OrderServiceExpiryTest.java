@@ -0,0 +1,147 @@
+package com.sondv.phone.service;
+
+import com.sondv.phone.model.*;
+import com.sondv.phone.repository.*;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class OrderServiceExpiryTest {
+
+    @Mock
+    private OrderRepository orderRepository;
+    @Mock
+    private CustomerRepository customerRepository;
+    @Mock
+    private ProductRepository productRepository;
+    @Mock
+    private OrderDetailRepository orderDetailRepository;
+    @Mock
+    private PaymentRepository paymentRepository;
+    @Mock
+    private StockReservationService stockReservationService;
+    @Mock
+    private SalesRollupService salesRollupService;
+    @Mock
+    private ApplicationEventPublisher eventPublisher;
+
+    @InjectMocks
+    private OrderService orderService;
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(orderService, "gatewayTtl", Duration.ofHours(24));
+    }
+
+    @Test
+    void expiredUnpaidOrderIsCancelledAndRestocked() {
+        Order order = order(1L, 10L, 3);
+        when(paymentRepository.findByOrderIdInForUpdate(List.of(1L))).thenReturn(List.of());
+        when(orderRepository.findAllById(List.of(1L))).thenReturn(List.of(order));
+
+        int cancelled = orderService.cancelExpiredOrders(List.of(1L)).cancelled();
+
+        assertThat(cancelled).isEqualTo(1);
+        assertThat(order.getStatus()).isEqualTo(OrderStatus.CANCELLED);
+        verify(stockReservationService).release(
+                List.of(new StockReservationService.ReleaseLine(10L, 3, 100L)), "Hết hạn giữ hàng");
+        verify(salesRollupService).recordStatusChange(order, OrderStatus.PENDING, OrderStatus.CANCELLED);
+    }
+
+    @Test
+    void paidOrderIsNotReaped() {
+        Order order = order(2L, 10L, 1);
+        Payment payment = payment(order, PaymentMethod.VNPAY, PaymentStatus.PAID);
+        when(paymentRepository.findByOrderIdInForUpdate(List.of(2L))).thenReturn(List.of(payment));
+        when(orderRepository.findAllById(List.of(2L))).thenReturn(List.of(order));
+
+        int cancelled = orderService.cancelExpiredOrders(List.of(2L)).cancelled();
+
+        assertThat(cancelled).isZero();
+        assertThat(order.getStatus()).isEqualTo(OrderStatus.PENDING);
+        assertThat(payment.getStatus()).isEqualTo(PaymentStatus.PAID);
+        verify(stockReservationService).release(List.of(), "Hết hạn giữ hàng");
+    }
+
+    @Test
+    void gatewayPaymentWithinGatewayTtlIsDeferred() {
+        Order order = order(3L, 10L, 1);
+        LocalDateTime createdAt = LocalDateTime.now().minusHours(1);
+        order.setCreatedAt(createdAt);
+        Payment payment = payment(order, PaymentMethod.MOMO, PaymentStatus.PENDING);
+        when(paymentRepository.findByOrderIdInForUpdate(List.of(3L))).thenReturn(List.of(payment));
+        when(orderRepository.findAllById(List.of(3L))).thenReturn(List.of(order));
+
+        OrderService.ExpiryResult result = orderService.cancelExpiredOrders(List.of(3L));
+
+        assertThat(result.cancelled()).isZero();
+        long deadline = createdAt.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli() + Duration.ofHours(24).toMillis();
+        assertThat(result.deferredUntil()).containsEntry(3L, deadline);
+        assertThat(order.getStatus()).isEqualTo(OrderStatus.PENDING);
+        assertThat(payment.getStatus()).isEqualTo(PaymentStatus.PENDING);
+    }
+
+    @Test
+    void gatewayPaymentIsReapedAfterGatewayTtl() {
+        Order order = order(4L, 10L, 2);
+        order.setCreatedAt(LocalDateTime.now().minusHours(25));
+        Payment payment = payment(order, PaymentMethod.VNPAY, PaymentStatus.PENDING);
+        when(paymentRepository.findByOrderIdInForUpdate(List.of(4L))).thenReturn(List.of(payment));
+        when(orderRepository.findAllById(List.of(4L))).thenReturn(List.of(order));
+
+        OrderService.ExpiryResult result = orderService.cancelExpiredOrders(List.of(4L));
+
+        assertThat(result.cancelled()).isEqualTo(1);
+        assertThat(result.deferredUntil()).isEmpty();
+        assertThat(payment.getStatus()).isEqualTo(PaymentStatus.FAILED);
+        ArgumentCaptor<List<StockReservationService.ReleaseLine>> lines = ArgumentCaptor.forClass(List.class);
+        verify(stockReservationService).release(lines.capture(), eq("Hết hạn giữ hàng"));
+        assertThat(lines.getValue()).containsExactly(new StockReservationService.ReleaseLine(10L, 2, 100L));
+    }
+
+    private static Order order(Long id, Long productId, int quantity) {
+        User user = new User();
+        user.setId(100L);
+        Customer customer = new Customer();
+        customer.setUser(user);
+        Product product = new Product();
+        product.setId(productId);
+
+        Order order = new Order();
+        order.setId(id);
+        order.setCustomer(customer);
+        order.setStatus(OrderStatus.PENDING);
+        OrderDetail detail = new OrderDetail();
+        detail.setOrder(order);
+        detail.setProduct(product);
+        detail.setQuantity(quantity);
+        detail.setPrice(BigDecimal.TEN);
+        order.setOrderDetails(List.of(detail));
+        return order;
+    }
+
+    private static Payment payment(Order order, PaymentMethod method, PaymentStatus status) {
+        Payment payment = new Payment();
+        payment.setOrder(order);
+        payment.setPaymentMethod(method);
+        payment.setStatus(status);
+        return payment;
+    }
+}
@@ -0,0 +1,107 @@
+package com.sondv.phone.service;
+
+import com.sondv.phone.repository.OrderRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.ZSetOperations;
+
+import java.time.Duration;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class StockHoldServiceTest {
+
+    private static final String HOLDS_KEY = "stock:holds";
+
+    @Mock
+    private RedisTemplate<String, String> redisTemplate;
+    @Mock
+    private ZSetOperations<String, String> zSetOperations;
+    @Mock
+    private OrderService orderService;
+    @Mock
+    private OrderRepository orderRepository;
+
+    private StockHoldService stockHoldService;
+
+    @BeforeEach
+    void setUp() {
+        when(redisTemplate.opsForZSet()).thenReturn(zSetOperations);
+        stockHoldService = new StockHoldService(redisTemplate, orderService, orderRepository, Duration.ofMinutes(15), 100);
+    }
+
+    @Test
+    void holdSchedulesExpiryAfterTtl() {
+        long before = System.currentTimeMillis();
+
+        stockHoldService.hold(42L);
+
+        ArgumentCaptor<Double> score = ArgumentCaptor.forClass(Double.class);
+        verify(zSetOperations).add(eq(HOLDS_KEY), eq("42"), score.capture());
+        assertThat(score.getValue().longValue())
+                .isBetween(before + Duration.ofMinutes(15).toMillis(), System.currentTimeMillis() + Duration.ofMinutes(15).toMillis());
+    }
+
+    @Test
+    void reaperCancelsOnlyHoldsItClaimed() {
+        when(zSetOperations.rangeByScore(eq(HOLDS_KEY), eq(0.0), anyDouble(), eq(0L), eq(100L)))
+                .thenReturn(new LinkedHashSet<>(List.of("1", "2")));
+        when(zSetOperations.remove(HOLDS_KEY, "1")).thenReturn(1L);
+        // Node khác đã nhận đơn 2 trước
+        when(zSetOperations.remove(HOLDS_KEY, "2")).thenReturn(0L);
+        when(orderService.cancelExpiredOrders(List.of(1L))).thenReturn(new OrderService.ExpiryResult(1, Map.of()));
+
+        stockHoldService.reapExpiredHolds();
+
+        verify(orderService).cancelExpiredOrders(List.of(1L));
+    }
+
+    @Test
+    void failedCancellationIsRescheduled() {
+        when(zSetOperations.rangeByScore(eq(HOLDS_KEY), eq(0.0), anyDouble(), eq(0L), eq(100L)))
+                .thenReturn(Set.of("7"));
+        when(zSetOperations.remove(HOLDS_KEY, "7")).thenReturn(1L);
+        when(orderService.cancelExpiredOrders(List.of(7L))).thenThrow(new RuntimeException("db down"));
+
+        stockHoldService.reapExpiredHolds();
+
+        verify(zSetOperations).add(eq(HOLDS_KEY), eq("7"), doubleThat(score -> score > System.currentTimeMillis()));
+    }
+
+    @Test
+    void deferredGatewayOrderIsHeldUntilGatewayDeadline() {
+        long gatewayDeadline = System.currentTimeMillis() + Duration.ofHours(23).toMillis();
+        when(zSetOperations.rangeByScore(eq(HOLDS_KEY), eq(0.0), anyDouble(), eq(0L), eq(100L)))
+                .thenReturn(Set.of("5"));
+        when(zSetOperations.remove(HOLDS_KEY, "5")).thenReturn(1L);
+        when(orderService.cancelExpiredOrders(List.of(5L)))
+                .thenReturn(new OrderService.ExpiryResult(0, Map.of(5L, gatewayDeadline)));
+
+        stockHoldService.reapExpiredHolds();
+
+        verify(zSetOperations).add(HOLDS_KEY, "5", (double) gatewayDeadline);
+    }
+
+    @Test
+    void releasedHoldIsNotReaped() {
+        stockHoldService.release(9L);
+        when(zSetOperations.rangeByScore(eq(HOLDS_KEY), eq(0.0), anyDouble(), eq(0L), eq(100L))).thenReturn(Set.of());
+
+        stockHoldService.reapExpiredHolds();
+
+        verify(zSetOperations).remove(HOLDS_KEY, "9");
+        verify(orderService, never()).cancelExpiredOrders(any());
+    }
+}